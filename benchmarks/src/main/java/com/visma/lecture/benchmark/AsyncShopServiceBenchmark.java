@@ -0,0 +1,74 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.repository.ColumnarShopRepository;
+import com.visma.lecture.service.AsyncShopService;
+import com.visma.lecture.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The average stock of all five locations, one query after the other through ShopService against all five at once
+ * through AsyncShopService. The columnar repository scans for every average, so each query has work to overlap.
+ * The coalesced benchmark runs four threads asking for the same answer, identical queries in flight run once.
+ * Run on Java 21 or later to get virtual threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class AsyncShopServiceBenchmark {
+
+	@Param({"100000", "1000000"})
+	public int size;
+
+	private ShopService shopService;
+	private AsyncShopService asyncShopService;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<Item> items = CatalogGenerator.generate(size);
+		shopService = new ShopService(new ColumnarShopRepository(items));
+		asyncShopService = new AsyncShopService(shopService);
+	}
+
+	@Benchmark
+	public Map<ItemLocation, OptionalDouble> averagePerLocationSerial() {
+		Map<ItemLocation, OptionalDouble> averages = new EnumMap<>(ItemLocation.class);
+		for (ItemLocation location : ItemLocation.values()) {
+			averages.put(location, shopService.findAverageItemStockForLocationX(location));
+		}
+		return averages;
+	}
+
+	@Benchmark
+	public Map<ItemLocation, OptionalDouble> averagePerLocationAsync() {
+		return asyncShopService.findAverageItemStockPerLocation().join();
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Map<ItemLocation, OptionalDouble> averagePerLocationCoalesced() {
+		return asyncShopService.findAverageItemStockPerLocation().join();
+	}
+}
@@ -0,0 +1,88 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.CachingShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The repeated catalog-wide queries of ShopServiceBenchmark through CachingShopService, compare the two to see
+ * what a hit saves. The afterWrite benchmarks create or delete an item first, so they pay for that write,
+ * the invalidation and a miss every time. The cache statistics are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class CachingShopServiceBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int size;
+
+	private ShopRepository shopRepository;
+	private CachingShopService shopService;
+	private Item extra;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		shopRepository = new ShopRepository(CatalogGenerator.generate(size));
+		shopService = new CachingShopService(shopRepository);
+		extra = new Item(size + 1, "PRODUCER_0 PRODUCT_0", ItemLocation.DRAMMEN, ItemType.CLOTHING, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println(shopService.getCacheStats());
+	}
+
+	@Benchmark
+	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocation() {
+		return shopService.getMapOfAllItemsPerLocation();
+	}
+
+	@Benchmark
+	public Map<ItemType, List<Item>> getMapOfAllItemsPerType() {
+		return shopService.getMapOfAllItemsPerType();
+	}
+
+	@Benchmark
+	public String getStringOfAllProducers() {
+		return shopService.getStringOfAllProducers();
+	}
+
+	@Benchmark
+	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocationAfterWrite() {
+		if (!shopRepository.delete(extra.getItemID())) {
+			shopRepository.create(extra);
+		}
+		return shopService.getMapOfAllItemsPerLocation();
+	}
+
+	@Benchmark
+	public String getStringOfAllProducersAfterWrite() {
+		if (!shopRepository.delete(extra.getItemID())) {
+			shopRepository.create(extra);
+		}
+		return shopService.getStringOfAllProducers();
+	}
+}
@@ -0,0 +1,45 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic catalogs shaped like Database.itemTable.
+ * Ids run from 1 to size, names are "PRODUCER_p PRODUCT_q" and stock is uniform in [0, MAX_STOCK).
+ */
+public final class CatalogGenerator {
+
+	public static final int PRODUCERS = 1000;
+	public static final int PRODUCTS = 5000;
+	public static final int MAX_STOCK = 10000;
+
+	private static final long SEED = 42L;
+
+	private CatalogGenerator() {
+	}
+
+	public static List<Item> generate(int size) {
+		Random random = new Random(SEED);
+		ItemLocation[] locations = ItemLocation.values();
+		ItemType[] types = ItemType.values();
+
+		List<Item> items = new ArrayList<>(size);
+		for (int id = 1; id <= size; id++) {
+			items.add(new Item(id,
+					producer(random.nextInt(PRODUCERS)) + " PRODUCT_" + random.nextInt(PRODUCTS),
+					locations[random.nextInt(locations.length)],
+					types[random.nextInt(types.length)],
+					random.nextInt(MAX_STOCK)));
+		}
+		return items;
+	}
+
+	public static String producer(int index) {
+		return "PRODUCER_" + index;
+	}
+}
@@ -0,0 +1,89 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.metrics.ShopMetrics;
+import com.visma.lecture.repository.InstrumentedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.InstrumentedShopService;
+import com.visma.lecture.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics on cheap calls, where it shows the most. metrics is none for a plain ShopService and
+ * ShopRepository, disabled and enabled for instrumented ones sharing one ShopMetrics. The difference between none
+ * and disabled is what instrumentation costs when it is switched off, between none and enabled what it costs per call.
+ *
+ * java -jar benchmarks/target/benchmarks.jar MetricsBenchmark -t 4
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MetricsBenchmark {
+
+	private static final int PROBES = 1024;
+
+	@Param({"100000"})
+	public int size;
+
+	@Param({"none", "disabled", "enabled"})
+	public String metrics;
+
+	private ShopService shopService;
+	private int[] ids;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ShopRepository shopRepository = new ShopRepository(CatalogGenerator.generate(size));
+		if (metrics.equals("none")) {
+			shopService = new ShopService(shopRepository);
+		} else {
+			ShopMetrics shopMetrics = new ShopMetrics(metrics.equals("enabled"));
+			shopService = new InstrumentedShopService(
+					new ShopService(new InstrumentedShopRepository(shopRepository, shopMetrics)), shopMetrics);
+		}
+		Random random = new Random(42);
+		ids = new int[PROBES];
+		for (int i = 0; i < PROBES; i++) {
+			ids[i] = 1 + random.nextInt(size);
+		}
+	}
+
+	@Benchmark
+	public int getTotalStock() {
+		return shopService.getTotalStock();
+	}
+
+	@Benchmark
+	public Item getItemById() {
+		return shopService.getItemById(ids[probe()]);
+	}
+
+	@Benchmark
+	public List<Item> getItemsSortedByStock() {
+		return shopService.getItemsSortedByStock(0, 10);
+	}
+
+	private int probe() {
+		next = (next + 1) & (PROBES - 1);
+		return next;
+	}
+}
@@ -0,0 +1,111 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups where most probes find nothing, through the throwing get methods and the find methods of ShopService.
+ * missPercent of the probe ids and stock limits miss. The noStackTraces benchmarks run the get methods in a fork
+ * started with -Dshop.exceptions.stackTraces=false, so the difference to the plain get benchmarks is the cost
+ * of filling in the stack trace. Run with -prof gc to see the allocation per miss.
+ *
+ * java -jar benchmarks/target/benchmarks.jar MissBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class MissBenchmark {
+
+	private static final int PROBES = 1024;
+
+	@Param({"100000"})
+	public int size;
+
+	@Param({"50", "90", "100"})
+	public int missPercent;
+
+	private ShopService shopService;
+	private int[] ids;
+	private int[] stocks;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		shopService = new ShopService(new ShopRepository(CatalogGenerator.generate(size)));
+		Random random = new Random(42);
+		ids = new int[PROBES];
+		stocks = new int[PROBES];
+		for (int i = 0; i < PROBES; i++) {
+			boolean miss = random.nextInt(100) < missPercent;
+			ids[i] = miss ? size + 1 + random.nextInt(size) : 1 + random.nextInt(size);
+			stocks[i] = miss ? CatalogGenerator.MAX_STOCK + random.nextInt(100) : random.nextInt(CatalogGenerator.MAX_STOCK);
+		}
+	}
+
+	@Benchmark
+	public Item getItemById() {
+		try {
+			return shopService.getItemById(ids[probe()]);
+		} catch (NoItemFoundForCriteriaException e) {
+			return null;
+		}
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dshop.exceptions.stackTraces=false"})
+	public Item getItemByIdNoStackTraces() {
+		return getItemById();
+	}
+
+	@Benchmark
+	public Item findItemById() {
+		return shopService.findItemById(ids[probe()]).orElse(null);
+	}
+
+	@Benchmark
+	public List<Item> getItemsInLocationXWithMoreThanYInStock() {
+		try {
+			return shopService.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, stocks[probe()]);
+		} catch (NoItemFoundForCriteriaException e) {
+			return null;
+		}
+	}
+
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-Dshop.exceptions.stackTraces=false"})
+	public List<Item> getItemsInLocationXWithMoreThanYInStockNoStackTraces() {
+		return getItemsInLocationXWithMoreThanYInStock();
+	}
+
+	@Benchmark
+	public List<Item> findItemsInLocationXWithMoreThanYInStock() {
+		return shopService.findItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, stocks[probe()]);
+	}
+
+	private int probe() {
+		next = (next + 1) & (PROBES - 1);
+		return next;
+	}
+}
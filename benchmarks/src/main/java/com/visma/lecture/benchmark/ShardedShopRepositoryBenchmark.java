@@ -0,0 +1,112 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ConcurrentShopRepository;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ShardedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The location-sharded repository against ConcurrentShopRepository. The write benchmark runs four threads that
+ * each create and delete an item in their own location, which contend for one lock in the concurrent repository
+ * and for none in the sharded one. The queries show the cost of one shard against all of them merged.
+ * Backend parallel is the sharded repository querying its shards on a pool of one worker per shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ShardedShopRepositoryBenchmark {
+
+	@Param({"10000", "100000", "1000000"})
+	public int size;
+
+	@Param({"concurrent", "sharded", "parallel"})
+	public String backend;
+
+	private ForkJoinPool pool;
+	private ShopRepository shopRepository;
+	private ItemQuery locationQuery;
+	private ItemQuery globalQuery;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		List<Item> items = CatalogGenerator.generate(size);
+		pool = new ForkJoinPool(ItemLocation.values().length);
+		if (backend.equals("concurrent")) {
+			shopRepository = new ConcurrentShopRepository(items);
+		} else {
+			shopRepository = new ShardedShopRepository(items, backend.equals("parallel") ? pool : null);
+		}
+		locationQuery = ItemQuery.builder().location(ItemLocation.OSLO).stockAbove(CatalogGenerator.MAX_STOCK - 100).build();
+		globalQuery = ItemQuery.builder().stockAbove(CatalogGenerator.MAX_STOCK - 100).build();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@State(Scope.Thread)
+	public static class Writer {
+
+		private Item item;
+
+		@Setup(Level.Trial)
+		public void setUp(ShardedShopRepositoryBenchmark benchmark, ThreadParams thread) {
+			ItemLocation[] locations = ItemLocation.values();
+			item = new Item(benchmark.size + 1 + thread.getThreadIndex(), "PRODUCER_0 PRODUCT_0",
+					locations[thread.getThreadIndex() % locations.length], ItemType.CLOTHING, 1);
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Boolean createAndDeleteInOwnLocation(Writer writer) {
+		shopRepository.create(writer.item);
+		return shopRepository.delete(writer.item.getItemID());
+	}
+
+	@Benchmark
+	public List<Item> findItemsInOneLocation() {
+		return shopRepository.findItems(locationQuery);
+	}
+
+	@Benchmark
+	public List<Item> findItemsInAllLocations() {
+		return shopRepository.findItems(globalQuery);
+	}
+
+	@Benchmark
+	public List<Item> findTopItemsByStock() {
+		return shopRepository.findItemsSortedByStock(0, 10);
+	}
+
+	@Benchmark
+	public int getTotalStock() {
+		return shopRepository.getTotalStock();
+	}
+}
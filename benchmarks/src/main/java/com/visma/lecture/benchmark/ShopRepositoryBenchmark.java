@@ -0,0 +1,116 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ShopRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShopRepository CRUD and lookup calls over synthetic catalogs of 10^3 to 10^7 items.
+ * Mutating benchmarks put the catalog back the way they found it, so its size stays constant.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ShopRepositoryBenchmark {
+
+	private static final int BATCH = 10000;
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	public int size;
+
+	private ShopRepository shopRepository;
+
+	private Item existing;
+	private Item extra;
+
+	/* A batch of BATCH new items and their ids, for the batch writes */
+	private List<Item> batch;
+	private List<Integer> batchIds;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		shopRepository = new ShopRepository(CatalogGenerator.generate(size));
+		existing = shopRepository.findItemById(size / 2);
+		extra = new Item(size + 1, "PRODUCER_0 PRODUCT_0", ItemLocation.DRAMMEN, ItemType.CLOTHING, 1);
+		batch = new ArrayList<>();
+		batchIds = new ArrayList<>();
+		for (Item item : CatalogGenerator.generate(BATCH)) {
+			int id = size + 1 + item.getItemID();
+			batch.add(new Item(id, item.getItemName(), item.getItemLocation(), item.getItemType(), item.getStock()));
+			batchIds.add(id);
+		}
+	}
+
+	@Benchmark
+	public Item findItemById() {
+		return shopRepository.findItemById(existing.getItemID());
+	}
+
+	@Benchmark
+	public Item findItemByIdMiss() {
+		return shopRepository.findItemById(-1);
+	}
+
+	@Benchmark
+	public Boolean createAndDelete() {
+		shopRepository.create(extra);
+		return shopRepository.delete(extra.getItemID());
+	}
+
+	/* Compare with BATCH times createAndDelete */
+	@Benchmark
+	public Boolean createAllAndDeleteAll() {
+		shopRepository.createAll(batch);
+		return shopRepository.deleteAll(batchIds);
+	}
+
+	@Benchmark
+	public Boolean update() {
+		return shopRepository.update(existing);
+	}
+
+	@Benchmark
+	public List<Item> getAllItems() {
+		return shopRepository.getAllItems();
+	}
+
+	@Benchmark
+	public List<Item> getItemsInRange() {
+		return shopRepository.getItemsInRange(existing.getItemID(), existing.getItemID() + 100);
+	}
+
+	@Benchmark
+	public List<Item> getItemsPerLocation() {
+		return shopRepository.getItemsPerLocation(ItemLocation.OSLO);
+	}
+
+	@Benchmark
+	public List<Item> getItemsPerType() {
+		return shopRepository.getItemsPerType(ItemType.BEVERAGE);
+	}
+
+	@Benchmark
+	public List<Item> getItemsPerProducer() {
+		return shopRepository.getItemsPerProducer(CatalogGenerator.producer(1));
+	}
+}
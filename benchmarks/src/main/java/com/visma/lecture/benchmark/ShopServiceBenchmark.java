@@ -0,0 +1,202 @@
+package com.visma.lecture.benchmark;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per ShopService query, ex 1 to ex 22, over synthetic catalogs of 10^3 to 10^7 items.
+ * The larger sizes need a big heap, eg -jvmArgs -Xmx8g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ShopServiceBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000", "10000000"})
+	public int size;
+
+	private ShopService shopService;
+
+	/* Probe values that always hit, so no benchmark measures the exception path by accident */
+	private int existingId;
+	private int highStock;
+	private int lowStock;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		shopService = new ShopService(new ShopRepository(CatalogGenerator.generate(size)));
+		existingId = size / 2;
+		highStock = CatalogGenerator.MAX_STOCK - 100;
+		lowStock = 100;
+	}
+
+	@Benchmark
+	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocation() {
+		return shopService.getMapOfAllItemsPerLocation();
+	}
+
+	@Benchmark
+	public Map<ItemType, List<Item>> getMapOfAllItemsPerType() {
+		return shopService.getMapOfAllItemsPerType();
+	}
+
+	@Benchmark
+	public Map<String, List<Item>> getMapOfAllItemsPerProducer() {
+		return shopService.getMapOfAllItemsPerProducer();
+	}
+
+	@Benchmark
+	public Map<Boolean, List<Item>> getMapOfAllItemsPerStock() {
+		return shopService.getMapOfAllItemsPerStock();
+	}
+
+	@Benchmark
+	public Item getItemById() {
+		return shopService.getItemById(existingId);
+	}
+
+	@Benchmark
+	public String getStringOfAllProducers() {
+		return shopService.getStringOfAllProducers();
+	}
+
+	@Benchmark
+	public List<ItemLocation> getListOfAllLocationsWithMoreThanXInStock() {
+		return shopService.getListOfAllLocationsWithMoreThanXInStock(highStock);
+	}
+
+	@Benchmark
+	public List<ItemLocation> getListOfAllLocationsWithLessThanXInStock() {
+		return shopService.getListOfAllLocationsWithLessThanXInStock(lowStock);
+	}
+
+	@Benchmark
+	public List<Item> getItemsInLocationXWithMoreThanYInStock() {
+		return shopService.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, highStock);
+	}
+
+	@Benchmark
+	public List<Item> getTopTwentyItemsInLocationXWithMoreThanYInStock() {
+		return shopService.getMostStockedItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, highStock, 20);
+	}
+
+	@Benchmark
+	public List<Item> getItemsByQuery() {
+		return shopService.getItems(ItemQuery.builder()
+				.location(ItemLocation.OSLO)
+				.type(ItemType.CLOTHING)
+				.stockAbove(highStock)
+				.orderBy(ItemQuery.Order.STOCK_HIGH_TO_LOW)
+				.limit(20)
+				.build());
+	}
+
+	@Benchmark
+	public List<Item> getItemsAfter() {
+		return shopService.getItemsAfter(existingId, 20);
+	}
+
+	@Benchmark
+	public List<Item> getItemsInLocationXWithLessThanYInStock() {
+		return shopService.getItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, lowStock);
+	}
+
+	@Benchmark
+	public List<Item> getItemsWithNameStartingWith() {
+		return shopService.getItemsWithNameStartingWith("PRODUCT_1");
+	}
+
+	@Benchmark
+	public List<Item> getItemsWithNameContaining() {
+		return shopService.getItemsWithNameContaining("UCT_4242");
+	}
+
+	@Benchmark
+	public List<Item> searchItems() {
+		return shopService.searchItems("PRODUCER_17 PRODUCT_4224", 1);
+	}
+
+	@Benchmark
+	public double getAverageItemStockForLocationX() {
+		return shopService.getAverageItemStockForLocationX(ItemLocation.OSLO);
+	}
+
+	@Benchmark
+	public Item getItemWithMostInStock() {
+		return shopService.getItemWithMostInStock();
+	}
+
+	@Benchmark
+	public Item getItemWithLeastInStock() {
+		return shopService.getItemWithLeastInStock();
+	}
+
+	@Benchmark
+	public List<Item> getItemsInLocationXStockHigherThan() {
+		return shopService.getItemsInLocationXStockHigherThan(ItemLocation.HAMAR, highStock);
+	}
+
+	@Benchmark
+	public List<Item> getItemsSortedByProducer() {
+		return shopService.getItemsSortedByProducer();
+	}
+
+	@Benchmark
+	public List<Item> getItemsSortedByName() {
+		return shopService.getItemsSortedByName();
+	}
+
+	@Benchmark
+	public List<Item> getItemsSortedByStock() {
+		return shopService.getItemsSortedByStock();
+	}
+
+	@Benchmark
+	public List<Item> getTopTenItemsByStock() {
+		return shopService.getItemsSortedByStock(0, 10);
+	}
+
+	@Benchmark
+	public List<Item> getAllDistinctItems() {
+		return shopService.getAllDistinctItems();
+	}
+
+	@Benchmark
+	public List<Item> getListFromTwoSublistByIndexValues() {
+		return shopService.getListFromTwoSublistByIndexValues(1, 100, existingId, existingId + 100);
+	}
+
+	@Benchmark
+	public List<Item> getListOfItmesByLocationTypeAndProducer() {
+		return shopService.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.BEVERAGE,
+				CatalogGenerator.producer(1));
+	}
+
+	@Benchmark
+	public int getTotalStock() {
+		return shopService.getTotalStock();
+	}
+}
@@ -5,6 +5,7 @@ import com.visma.lecture.common.domain.support.ItemLocation;
 import com.visma.lecture.common.exception.InvalidCriteriaException;
 import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +24,18 @@ public class Validator extends Throwable{
         }
     }
 
+    public static void validateInputOffset(int offset){
+        if (offset < 0){
+            throw new InvalidCriteriaException("Offset must not be negative.");
+        }
+    }
+
+    public static void validateInputEditDistance(int maxEdits){
+        if (maxEdits < 0 || maxEdits > 2){
+            throw new InvalidCriteriaException("Edit distance must be between 0 and 2.");
+        }
+    }
+
     public static void validateInputLocation(ItemLocation location){
         if (location == null){
             throw new InvalidCriteriaException("Input was null, empty or lower than 0.");
@@ -45,6 +58,17 @@ public class Validator extends Throwable{
         }
     }
 
+    /**
+     * Checks an item before it is written, so a repository can reject a whole batch before it changes anything.
+     */
+    public static void validateInputItem(Item item){
+        validateOutputItem(item);
+        if (item.getItemID() == null || item.getItemName() == null || item.getItemLocation() == null
+                || item.getItemType() == null || item.getStock() == null){
+            throw new IllegalArgumentException("Item fields must not be null.");
+        }
+    }
+
     public static void validateOutputString(String outputString){
         if (outputString.length() == 0 || outputString.equals("") || outputString == null){
             throw new NoItemFoundForCriteriaException("No items were found for the given search criteria.");
@@ -57,6 +81,18 @@ public class Validator extends Throwable{
         }
     }
 
+    public static void validateOutputCount(int count){
+        if (count <= 0){
+            throw new NoItemFoundForCriteriaException("No items were found for one of the given search criteria.");
+        }
+    }
+
+    public static void validateOutputNoneMissing(Collection<?> missing){
+        if (!missing.isEmpty()){
+            throw new NoItemFoundForCriteriaException("No items were found for the given search criteria.");
+        }
+    }
+
     public static void validateOutputDouble(double number){
         if (number < 0){
             throw new NoItemFoundForCriteriaException("No items were found for the given search criteria.");
@@ -0,0 +1,253 @@
+package com.visma.lecture.common.database;
+
+import com.visma.lecture.Validators.Validator;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Catalog file read and written through memory mappings.
+ *
+ * The record file starts with a 16 byte header (magic, version, record count, bytes used in the string heap)
+ * followed by fixed-width 16 byte records: itemID, stock, name offset, name length, location and type ordinal.
+ * A deleted record keeps its slot with location -1. The item names live in a side string heap, the same
+ * path with ".names" appended, as UTF-8 bytes.
+ *
+ * Opening a file only maps it, the records are read straight from the mapping when asked for.
+ * Not thread-safe.
+ *
+ * @see com.visma.lecture.repository.MappedShopRepository
+ */
+public final class ItemFile implements Closeable {
+
+	public static final int RECORD_SIZE = 16;
+
+	private static final int MAGIC = 0x53484F50;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+	private static final byte DELETED = -1;
+
+	private static final ItemLocation[] LOCATIONS = ItemLocation.values();
+	private static final ItemType[] TYPES = ItemType.values();
+
+	private final FileChannel recordChannel;
+	private final FileChannel nameChannel;
+	private MappedByteBuffer records;
+	private MappedByteBuffer names;
+
+	private int count;
+	private int namesUsed;
+
+	/* Offsets of the names appended through this instance, so repeated names are stored once */
+	private final Map<String, Integer> appendedNames = new HashMap<>();
+
+	private ItemFile(FileChannel recordChannel, FileChannel nameChannel) throws IOException {
+		this.recordChannel = recordChannel;
+		this.nameChannel = nameChannel;
+		this.records = recordChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(HEADER_SIZE, recordChannel.size()));
+		this.names = nameChannel.map(FileChannel.MapMode.READ_WRITE, 0, nameChannel.size());
+	}
+
+	/**
+	 * Creates a new file, replacing any existing one, holding the given items.
+	 */
+	public static ItemFile create(Path path, List<Item> items) throws IOException {
+		ItemFile file = new ItemFile(
+				FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						StandardOpenOption.READ, StandardOpenOption.WRITE),
+				FileChannel.open(namesPath(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+						StandardOpenOption.READ, StandardOpenOption.WRITE));
+		file.ensureRecordCapacity(items.size());
+		file.records.putInt(0, MAGIC);
+		file.records.putInt(4, VERSION);
+		items.forEach(file::append);
+		file.writeHeader();
+		return file;
+	}
+
+	/**
+	 * Opens an existing file. Only the header is read, records stay in the mapping.
+	 */
+	public static ItemFile open(Path path) throws IOException {
+		ItemFile file = new ItemFile(
+				FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE),
+				FileChannel.open(namesPath(path), StandardOpenOption.READ, StandardOpenOption.WRITE));
+		if (file.records.getInt(0) != MAGIC || file.records.getInt(4) != VERSION) {
+			file.close();
+			throw new IOException("Not an item file: " + path);
+		}
+		file.count = file.records.getInt(8);
+		file.namesUsed = file.records.getInt(12);
+		return file;
+	}
+
+	/**
+	 * Number of record slots, deleted records included.
+	 */
+	public int size() {
+		return count;
+	}
+
+	public boolean isDeleted(int row) {
+		return records.get(offset(row) + 14) == DELETED;
+	}
+
+	public int getItemID(int row) {
+		return records.getInt(offset(row));
+	}
+
+	public int getStock(int row) {
+		return records.getInt(offset(row) + 4);
+	}
+
+	public ItemLocation getItemLocation(int row) {
+		return LOCATIONS[records.get(offset(row) + 14)];
+	}
+
+	public ItemType getItemType(int row) {
+		return TYPES[records.get(offset(row) + 15)];
+	}
+
+	public String getItemName(int row) {
+		int offset = offset(row);
+		int nameOffset = records.getInt(offset + 8);
+		byte[] bytes = new byte[records.getShort(offset + 12) & 0xFFFF];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = names.get(nameOffset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks the producer part of the stored name, see Item.getProducer(), without decoding the name.
+	 * @param producer UTF-8 bytes of a producer, which never contains a space
+	 */
+	public boolean hasProducer(int row, byte[] producer) {
+		int offset = offset(row);
+		int nameOffset = records.getInt(offset + 8);
+		int nameLength = records.getShort(offset + 12) & 0xFFFF;
+		if (nameLength < producer.length) {
+			return false;
+		}
+		for (int i = 0; i < producer.length; i++) {
+			if (names.get(nameOffset + i) != producer[i]) {
+				return false;
+			}
+		}
+		return nameLength == producer.length || names.get(nameOffset + producer.length) == ' ';
+	}
+
+	public Item get(int row) {
+		return new Item(getItemID(row), getItemName(row), getItemLocation(row), getItemType(row), getStock(row));
+	}
+
+	/**
+	 * Throws IllegalArgumentException when item has a field that is null or a name that does not fit in a record.
+	 */
+	public static void validateStorable(Item item) {
+		Validator.validateInputItem(item);
+		if (item.getItemName().getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+			throw new IllegalArgumentException("Item name is longer than 65535 bytes");
+		}
+	}
+
+	/**
+	 * Appends a record and returns its row.
+	 */
+	public int append(Item item) {
+		validateStorable(item);
+		byte[] name = item.getItemName().getBytes(StandardCharsets.UTF_8);
+		Integer nameOffset = appendedNames.get(item.getItemName());
+		if (nameOffset == null) {
+			nameOffset = appendName(name);
+			appendedNames.put(item.getItemName(), nameOffset);
+		}
+		ensureRecordCapacity(count + 1);
+		int offset = offset(count);
+		records.putInt(offset, item.getItemID());
+		records.putInt(offset + 4, item.getStock());
+		records.putInt(offset + 8, nameOffset);
+		records.putShort(offset + 12, (short) name.length);
+		records.put(offset + 14, (byte) item.getItemLocation().ordinal());
+		records.put(offset + 15, (byte) item.getItemType().ordinal());
+		count++;
+		writeHeader();
+		return count - 1;
+	}
+
+	public void delete(int row) {
+		records.put(offset(row) + 14, DELETED);
+	}
+
+	/**
+	 * Writes the mapped changes to disk.
+	 */
+	public void force() {
+		records.force();
+		names.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			recordChannel.close();
+		} finally {
+			nameChannel.close();
+		}
+	}
+
+	private int appendName(byte[] name) {
+		int offset = namesUsed;
+		if (names.capacity() < namesUsed + name.length) {
+			names = map(nameChannel, Math.max(namesUsed + name.length, 2L * names.capacity() + 4096));
+		}
+		for (int i = 0; i < name.length; i++) {
+			names.put(offset + i, name[i]);
+		}
+		namesUsed += name.length;
+		return offset;
+	}
+
+	private void ensureRecordCapacity(int rows) {
+		long needed = HEADER_SIZE + (long) rows * RECORD_SIZE;
+		if (records.capacity() < needed) {
+			records = map(recordChannel, Math.max(needed, 2L * records.capacity()));
+		}
+	}
+
+	private void writeHeader() {
+		records.putInt(8, count);
+		records.putInt(12, namesUsed);
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long size) {
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("Item file is larger than 2 GB");
+		}
+		try {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static int offset(int row) {
+		return HEADER_SIZE + row * RECORD_SIZE;
+	}
+
+	private static Path namesPath(Path path) {
+		return path.resolveSibling(path.getFileName() + ".names");
+	}
+}
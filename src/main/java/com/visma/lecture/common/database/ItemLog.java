@@ -0,0 +1,266 @@
+package com.visma.lecture.common.database;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of catalog mutations.
+ *
+ * Every entry is framed as payload length, CRC32 of the payload and the payload itself:
+ * operation, itemID and for creates and updates the stock, location, type and UTF-8 name.
+ * A torn or corrupt tail, left behind by a crash in the middle of a write, ends the log and is cut off on open.
+ * Entries between a BEGIN and a COMMIT entry form a batch, replay only passes them on once the COMMIT is read,
+ * so a batch without one at the end of the log is cut off as a whole.
+ *
+ * Appends are cheap, durability comes from sync(position). Threads that sync at the same time share one fsync,
+ * the first one in forces everything appended so far and the ones queued behind it find their entries already on disk.
+ */
+public final class ItemLog implements Closeable {
+
+	public enum Operation {
+		CREATE,
+		UPDATE,
+		DELETE,
+		BEGIN,
+		COMMIT,
+	}
+
+	/**
+	 * One replayed log entry, item is null for a delete. BEGIN and COMMIT are never passed to a consumer.
+	 */
+	public static final class Entry {
+
+		private final Operation operation;
+		private final int itemID;
+		private final Item item;
+
+		private Entry(Operation operation, int itemID, Item item) {
+			this.operation = operation;
+			this.itemID = itemID;
+			this.item = item;
+		}
+
+		public Operation getOperation() {
+			return operation;
+		}
+
+		public int getItemID() {
+			return itemID;
+		}
+
+		public Item getItem() {
+			return item;
+		}
+	}
+
+	private static final int FRAME_HEADER = 8;
+	private static final Operation[] OPERATIONS = Operation.values();
+	private static final ItemLocation[] LOCATIONS = ItemLocation.values();
+	private static final ItemType[] TYPES = ItemType.values();
+
+	private final FileChannel channel;
+	private final Object syncLock = new Object();
+
+	private long size;
+	private volatile long durableSize;
+
+	private ItemLog(FileChannel channel, long size) {
+		this.channel = channel;
+		this.size = size;
+		this.durableSize = size;
+	}
+
+	/**
+	 * Opens a log for appending, creating it if it does not exist.
+	 * Existing entries are passed to replay in order, a torn tail is truncated.
+	 */
+	public static ItemLog open(Path path, Consumer<Entry> replay) throws IOException {
+		long validSize = Files.exists(path) ? replay(path, replay) : 0;
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() > validSize) {
+			channel.truncate(validSize);
+			channel.force(true);
+		}
+		channel.position(validSize);
+		return new ItemLog(channel, validSize);
+	}
+
+	/**
+	 * Passes every valid entry of a log to the consumer and returns the length of the valid part,
+	 * which ends before a batch that was not committed.
+	 */
+	public static long replay(Path path, Consumer<Entry> consumer) throws IOException {
+		long validSize = 0;
+		long position = 0;
+		List<Entry> batch = null;
+		try (InputStream file = Files.newInputStream(path);
+			 DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+			CRC32 crc = new CRC32();
+			while (true) {
+				int length;
+				int checksum;
+				byte[] payload;
+				try {
+					length = in.readInt();
+					checksum = in.readInt();
+					if (length <= 0 || length > (1 << 20)) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+				} catch (EOFException e) {
+					break;
+				}
+				crc.reset();
+				crc.update(payload, 0, payload.length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				Entry entry = decode(ByteBuffer.wrap(payload));
+				position += FRAME_HEADER + length;
+				if (entry.operation == Operation.BEGIN) {
+					batch = new ArrayList<>();
+				} else if (entry.operation == Operation.COMMIT) {
+					if (batch != null) {
+						batch.forEach(consumer);
+					}
+					batch = null;
+					validSize = position;
+				} else if (batch != null) {
+					batch.add(entry);
+				} else {
+					consumer.accept(entry);
+					validSize = position;
+				}
+			}
+		}
+		return validSize;
+	}
+
+	/**
+	 * Appends a create and returns the log position sync must reach for it to be durable.
+	 */
+	public long appendCreate(Item item) {
+		return append(Operation.CREATE, item.getItemID(), item);
+	}
+
+	public long appendUpdate(Item item) {
+		return append(Operation.UPDATE, item.getItemID(), item);
+	}
+
+	public long appendDelete(int itemID) {
+		return append(Operation.DELETE, itemID, null);
+	}
+
+	/**
+	 * Starts a batch, the entries appended until appendCommit() are replayed all together or not at all.
+	 * The caller must keep other appends out of the log until the batch is committed.
+	 */
+	public long appendBegin() {
+		return append(Operation.BEGIN, 0, null);
+	}
+
+	public long appendCommit() {
+		return append(Operation.COMMIT, 0, null);
+	}
+
+	/**
+	 * Blocks until everything up to position is on disk.
+	 */
+	public void sync(long position) {
+		if (durableSize >= position) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durableSize >= position) {
+				return;
+			}
+			long appended;
+			synchronized (this) {
+				appended = size;
+			}
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			durableSize = appended;
+		}
+	}
+
+	public synchronized long size() {
+		return size;
+	}
+
+	/**
+	 * Syncs everything appended and closes the log.
+	 */
+	@Override
+	public void close() throws IOException {
+		sync(size());
+		channel.close();
+	}
+
+	private synchronized long append(Operation operation, int itemID, Item item) {
+		byte[] name = item == null ? new byte[0] : item.getItemName().getBytes(StandardCharsets.UTF_8);
+		int length = item == null ? 5 : 15 + name.length;
+		ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + length);
+		frame.position(FRAME_HEADER);
+		frame.put((byte) operation.ordinal());
+		frame.putInt(itemID);
+		if (item != null) {
+			frame.putInt(item.getStock());
+			frame.put((byte) item.getItemLocation().ordinal());
+			frame.put((byte) item.getItemType().ordinal());
+			frame.putInt(name.length);
+			frame.put(name);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(frame.array(), FRAME_HEADER, length);
+		frame.putInt(0, length);
+		frame.putInt(4, (int) crc.getValue());
+		frame.flip();
+		try {
+			while (frame.hasRemaining()) {
+				channel.write(frame);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		size += frame.limit();
+		return size;
+	}
+
+	private static Entry decode(ByteBuffer payload) {
+		Operation operation = OPERATIONS[payload.get()];
+		int itemID = payload.getInt();
+		if (operation == Operation.DELETE || operation == Operation.BEGIN || operation == Operation.COMMIT) {
+			return new Entry(operation, itemID, null);
+		}
+		int stock = payload.getInt();
+		ItemLocation location = LOCATIONS[payload.get()];
+		ItemType type = TYPES[payload.get()];
+		byte[] name = new byte[payload.getInt()];
+		payload.get(name);
+		return new Entry(operation, itemID, new Item(itemID, new String(name, StandardCharsets.UTF_8), location, type, stock));
+	}
+}
@@ -16,12 +16,36 @@ public class Item {
 	private final ItemType itemType;
 	private final Integer stock;
 
+	/**
+	 * The item name split on its first space, parsed once here instead of in every query.
+	 * A name without a space is used as both producer and product name.
+	 */
+	private final String producer;
+	private final String productName;
+
+	/**
+	 * All fields are final, so the hash is computed once here instead of on every hashCode().
+	 */
+	private final int hash;
+
 	public Item(Integer itemID, String itemName, ItemLocation itemLocation, ItemType itemType, Integer stock) {
+		this(itemID, itemName, producerOf(itemName), productNameOf(itemName), itemLocation, itemType, stock);
+	}
+
+	/**
+	 * Item whose name is already split, for repositories that keep one copy of every name and hand the same strings
+	 * to all their items. producer and productName must be the parts of itemName, see getProducer and getProductName.
+	 */
+	public Item(Integer itemID, String itemName, String producer, String productName,
+				ItemLocation itemLocation, ItemType itemType, Integer stock) {
 		this.itemID = itemID;
 		this.itemName = itemName;
 		this.itemLocation = itemLocation;
 		this.itemType = itemType;
 		this.stock = stock;
+		this.producer = producer;
+		this.productName = productName;
+		this.hash = hash(itemID, itemName, itemLocation, itemType, stock);
 	}
 
 	public Integer getItemID() {
@@ -44,6 +68,14 @@ public class Item {
 		return stock;
 	}
 
+	public String getProducer() {
+		return producer;
+	}
+
+	public String getProductName() {
+		return productName;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -51,6 +83,7 @@ public class Item {
 
 		Item item = (Item) o;
 
+		if (hash != item.hash) return false;
 		if (itemID != null ? !itemID.equals(item.itemID) : item.itemID != null) return false;
 		if (itemName != null ? !itemName.equals(item.itemName) : item.itemName != null) return false;
 		if (itemLocation != item.itemLocation) return false;
@@ -60,6 +93,20 @@ public class Item {
 
 	@Override
 	public int hashCode() {
+		return hash;
+	}
+
+	private static String producerOf(String itemName) {
+		int separator = itemName == null ? -1 : itemName.indexOf(' ');
+		return separator < 0 ? itemName : itemName.substring(0, separator);
+	}
+
+	private static String productNameOf(String itemName) {
+		int separator = itemName == null ? -1 : itemName.indexOf(' ');
+		return separator < 0 ? itemName : itemName.substring(separator + 1);
+	}
+
+	private static int hash(Integer itemID, String itemName, ItemLocation itemLocation, ItemType itemType, Integer stock) {
 		int result = itemID != null ? itemID.hashCode() : 0;
 		result = 31 * result + (itemName != null ? itemName.hashCode() : 0);
 		result = 31 * result + (itemLocation != null ? itemLocation.hashCode() : 0);
@@ -7,8 +7,18 @@ package com.visma.lecture.common.exception;
  */
 public class NoItemFoundForCriteriaException extends RuntimeException {
 
+	/**
+	 * Captures a stack trace unless the system property shop.exceptions.stackTraces is false.
+	 */
 	public NoItemFoundForCriteriaException(String message) {
-		super(message);
+		super(message, null, true, StackTraces.CAPTURE);
+	}
+
+	/**
+	 * Skips filling in the stack trace when writableStackTrace is false, which makes the exception cheap to create.
+	 */
+	public NoItemFoundForCriteriaException(String message, boolean writableStackTrace) {
+		super(message, null, true, writableStackTrace);
 	}
 
 	public NoItemFoundForCriteriaException(String message, Throwable cause) {
@@ -0,0 +1,14 @@
+package com.visma.lecture.common.exception;
+
+/**
+ * Whether the exceptions of the shop capture a stack trace, read once from the system property
+ * shop.exceptions.stackTraces. Set it to false where misses are common and their exceptions are expected,
+ * filling in the stack trace is most of the cost of throwing one.
+ */
+final class StackTraces {
+
+	static final boolean CAPTURE = !"false".equalsIgnoreCase(System.getProperty("shop.exceptions.stackTraces"));
+
+	private StackTraces() {
+	}
+}
@@ -0,0 +1,91 @@
+package com.visma.lecture.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds, in the style of HdrHistogram.
+ *
+ * Values below 16 have a bucket each. Above that every power of two is split into 16 buckets of equal width,
+ * so a recorded value is known to within 1/16 (6.25%) of itself, from nanoseconds up to the full range of a long,
+ * in 960 counters. Recording is a few atomic additions and never allocates. Thread-safe.
+ */
+final class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(index(value));
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Counts of every bucket at one point in time, to read several percentiles from.
+	 */
+	long[] counts() {
+		long[] copy = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+		}
+		return copy;
+	}
+
+	long sum() {
+		return sum.sum();
+	}
+
+	long max() {
+		return max.get();
+	}
+
+	/**
+	 * The value that percentile percent of the counted values are at or below, reported as the highest value of its
+	 * bucket but never above max. 0 when nothing was counted.
+	 */
+	static long valueAtPercentile(long[] counts, double percentile, long max) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), max);
+			}
+		}
+		return max;
+	}
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	static long lowestValue(int index) {
+		int bucket = index / SUB_BUCKETS;
+		int subBucket = index % SUB_BUCKETS;
+		return bucket == 0 ? subBucket : (long) (SUB_BUCKETS + subBucket) << (bucket - 1);
+	}
+
+	static long highestValue(int index) {
+		return index == BUCKETS - 1 ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+	}
+}
@@ -0,0 +1,64 @@
+package com.visma.lecture.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of one repository or service method. Thread-safe.
+ */
+final class MethodMetrics {
+
+	private final String name;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder noItemFound = new LongAdder();
+	private final LongAdder invalidCriteria = new LongAdder();
+	private final LongAdder otherErrors = new LongAdder();
+	private final LongAdder rowsRead = new LongAdder();
+	private final LongAdder rowsReturned = new LongAdder();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	MethodMetrics(String name) {
+		this.name = name;
+	}
+
+	void recordSuccess(long nanos, long read, long returned) {
+		calls.increment();
+		rowsRead.add(read);
+		rowsReturned.add(returned);
+		latencies.record(nanos);
+	}
+
+	void recordNoItemFound(long nanos, long read) {
+		calls.increment();
+		noItemFound.increment();
+		rowsRead.add(read);
+		latencies.record(nanos);
+	}
+
+	void recordInvalidCriteria(long nanos, long read) {
+		calls.increment();
+		invalidCriteria.increment();
+		rowsRead.add(read);
+		latencies.record(nanos);
+	}
+
+	void recordOtherError(long nanos, long read) {
+		calls.increment();
+		otherErrors.increment();
+		rowsRead.add(read);
+		latencies.record(nanos);
+	}
+
+	MethodSnapshot snapshot() {
+		long[] counts = latencies.counts();
+		long max = latencies.max();
+		long count = calls.sum();
+		return new MethodSnapshot(name, count, noItemFound.sum(), invalidCriteria.sum(), otherErrors.sum(),
+				rowsRead.sum(), rowsReturned.sum(),
+				count == 0 ? 0 : (double) latencies.sum() / count,
+				LatencyHistogram.valueAtPercentile(counts, 50, max),
+				LatencyHistogram.valueAtPercentile(counts, 90, max),
+				LatencyHistogram.valueAtPercentile(counts, 99, max),
+				LatencyHistogram.valueAtPercentile(counts, 99.9, max),
+				max);
+	}
+}
@@ -0,0 +1,126 @@
+package com.visma.lecture.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Counters and latency percentiles of one method at one point in time. Latencies are in nanoseconds and
+ * percentiles are within 6.25% of the recorded values.
+ */
+public final class MethodSnapshot {
+
+	private final String method;
+	private final long calls;
+	private final long noItemFound;
+	private final long invalidCriteria;
+	private final long otherErrors;
+	private final long rowsRead;
+	private final long rowsReturned;
+	private final double meanNanos;
+	private final long p50Nanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+	private final long p999Nanos;
+	private final long maxNanos;
+
+	@ConstructorProperties({"method", "calls", "noItemFound", "invalidCriteria", "otherErrors", "rowsRead", "rowsReturned",
+			"meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos", "maxNanos"})
+	public MethodSnapshot(String method, long calls, long noItemFound, long invalidCriteria, long otherErrors,
+			long rowsRead, long rowsReturned, double meanNanos, long p50Nanos, long p90Nanos, long p99Nanos,
+			long p999Nanos, long maxNanos) {
+		this.method = method;
+		this.calls = calls;
+		this.noItemFound = noItemFound;
+		this.invalidCriteria = invalidCriteria;
+		this.otherErrors = otherErrors;
+		this.rowsRead = rowsRead;
+		this.rowsReturned = rowsReturned;
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * Class and method name, eg ShopService.getTotalStock, with the parameter count for overloads.
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Calls made, including the failed ones.
+	 */
+	public long getCalls() {
+		return calls;
+	}
+
+	/**
+	 * Calls that threw NoItemFoundForCriteriaException.
+	 */
+	public long getNoItemFound() {
+		return noItemFound;
+	}
+
+	/**
+	 * Calls that threw InvalidCriteriaException.
+	 */
+	public long getInvalidCriteria() {
+		return invalidCriteria;
+	}
+
+	/**
+	 * Calls that threw any other exception.
+	 */
+	public long getOtherErrors() {
+		return otherErrors;
+	}
+
+	/**
+	 * Items the calls read from an instrumented repository. For a repository method it is the items it returned.
+	 */
+	public long getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * Items the calls returned, counting every item of a list, of the lists of a map and a single or optional item.
+	 */
+	public long getRowsReturned() {
+		return rowsReturned;
+	}
+
+	public double getMeanNanos() {
+		return meanNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP90Nanos() {
+		return p90Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getP999Nanos() {
+		return p999Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "MethodSnapshot{method=" + method + ", calls=" + calls + ", noItemFound=" + noItemFound
+				+ ", invalidCriteria=" + invalidCriteria + ", otherErrors=" + otherErrors + ", rowsRead=" + rowsRead
+				+ ", rowsReturned=" + rowsReturned + ", meanNanos=" + meanNanos + ", p50Nanos=" + p50Nanos
+				+ ", p90Nanos=" + p90Nanos + ", p99Nanos=" + p99Nanos + ", p999Nanos=" + p999Nanos
+				+ ", maxNanos=" + maxNanos + "}";
+	}
+}
@@ -0,0 +1,12 @@
+package com.visma.lecture.metrics;
+
+import java.util.List;
+
+/**
+ * Receives the metrics of every method called so far, see ShopMetrics.report and ShopMetrics.scheduleReports.
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+	void report(List<MethodSnapshot> methods);
+}
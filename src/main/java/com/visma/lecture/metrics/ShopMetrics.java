@@ -0,0 +1,218 @@
+package com.visma.lecture.metrics;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.exception.InvalidCriteriaException;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Call counts, errors, latencies and rows read and returned of the methods of an InstrumentedShopRepository and an
+ * InstrumentedShopService. Share one instance between the two to see how many items each service call read.
+ *
+ * Metrics are read with getMethods, over JMX after registerMBean, or pushed to a MetricsReporter. While disabled a
+ * call costs a volatile read on top of the method itself. Thread-safe.
+ */
+public class ShopMetrics implements ShopMetricsMXBean {
+
+	private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+	private final ThreadLocal<long[]> rowsRead = ThreadLocal.withInitial(() -> new long[1]);
+	private volatile boolean enabled;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Metrics that are recorded from the start.
+	 */
+	public ShopMetrics() {
+		this(true);
+	}
+
+	public ShopMetrics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording, what was recorded so far is kept.
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Runs a repository method and records it as method. The items it returns count as read by the service call
+	 * running on the same thread.
+	 */
+	public <V> V callRepository(String method, Supplier<V> call) {
+		return enabled ? timeRepository(method, call) : call.get();
+	}
+
+	/**
+	 * Runs a service method and records it as method, with the items its repository calls on this thread returned as
+	 * the rows read.
+	 */
+	public <V> V callService(String method, Supplier<V> call) {
+		return enabled ? timeService(method, call) : call.get();
+	}
+
+	/* Kept apart from the call methods so those stay small enough to inline, and cost a volatile read while disabled */
+	private <V> V timeRepository(String method, Supplier<V> call) {
+		long[] read = rowsRead.get();
+		long start = System.nanoTime();
+		V result;
+		try {
+			result = call.get();
+		} catch (RuntimeException e) {
+			recordError(method, System.nanoTime() - start, 0, e);
+			throw e;
+		}
+		long returned = rows(result);
+		metrics(method).recordSuccess(System.nanoTime() - start, returned, returned);
+		read[0] += returned;
+		return result;
+	}
+
+	private <V> V timeService(String method, Supplier<V> call) {
+		long[] read = rowsRead.get();
+		long readBefore = read[0];
+		long start = System.nanoTime();
+		V result;
+		try {
+			result = call.get();
+		} catch (RuntimeException e) {
+			recordError(method, System.nanoTime() - start, read[0] - readBefore, e);
+			throw e;
+		}
+		metrics(method).recordSuccess(System.nanoTime() - start, read[0] - readBefore, rows(result));
+		return result;
+	}
+
+	/**
+	 * Metrics of every method called so far, by name.
+	 */
+	@Override
+	public List<MethodSnapshot> getMethods() {
+		List<MethodSnapshot> snapshots = new ArrayList<>();
+		for (MethodMetrics metrics : methods.values()) {
+			snapshots.add(metrics.snapshot());
+		}
+		snapshots.sort(Comparator.comparing(MethodSnapshot::getMethod));
+		return snapshots;
+	}
+
+	/**
+	 * Metrics of one method, eg ShopService.getTotalStock, empty when it has not been called.
+	 */
+	public Optional<MethodSnapshot> getMethod(String method) {
+		return Optional.ofNullable(methods.get(method)).map(MethodMetrics::snapshot);
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	@Override
+	public void reset() {
+		methods.clear();
+	}
+
+	public void report(MetricsReporter reporter) {
+		reporter.report(getMethods());
+	}
+
+	/**
+	 * Reports every period on a daemon thread, until the returned future is cancelled.
+	 */
+	public synchronized ScheduledFuture<?> scheduleReports(MetricsReporter reporter, long period, TimeUnit unit) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "shop-metrics-reporter");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return scheduler.scheduleAtFixedRate(() -> report(reporter), period, period, unit);
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server as com.visma.lecture:type=ShopMetrics,name=name.
+	 */
+	public ObjectName registerMBean(String name) {
+		try {
+			ObjectName objectName = objectName(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			return objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not register metrics " + name, e);
+		}
+	}
+
+	public void unregisterMBean(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = objectName(name);
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Could not unregister metrics " + name, e);
+		}
+	}
+
+	public static ObjectName objectName(String name) throws JMException {
+		return new ObjectName("com.visma.lecture:type=ShopMetrics,name=" + ObjectName.quote(name));
+	}
+
+	private void recordError(String method, long nanos, long read, RuntimeException e) {
+		MethodMetrics metrics = metrics(method);
+		if (e instanceof NoItemFoundForCriteriaException) {
+			metrics.recordNoItemFound(nanos, read);
+		} else if (e instanceof InvalidCriteriaException) {
+			metrics.recordInvalidCriteria(nanos, read);
+		} else {
+			metrics.recordOtherError(nanos, read);
+		}
+	}
+
+	private MethodMetrics metrics(String method) {
+		MethodMetrics metrics = methods.get(method);
+		return metrics != null ? metrics : methods.computeIfAbsent(method, MethodMetrics::new);
+	}
+
+	/* Items in a result: every item of a list, of the lists of a map, and a single or optional item */
+	private static long rows(Object result) {
+		if (result instanceof Collection) {
+			return ((Collection<?>) result).size();
+		}
+		if (result instanceof Map) {
+			long rows = 0;
+			for (Object value : ((Map<?, ?>) result).values()) {
+				rows += value instanceof Collection ? ((Collection<?>) value).size() : 0;
+			}
+			return rows;
+		}
+		if (result instanceof Optional) {
+			return ((Optional<?>) result).isPresent() ? 1 : 0;
+		}
+		return result instanceof Item ? 1 : 0;
+	}
+}
@@ -0,0 +1,17 @@
+package com.visma.lecture.metrics;
+
+import java.util.List;
+
+/**
+ * JMX view of ShopMetrics, registered with ShopMetrics.registerMBean.
+ */
+public interface ShopMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	List<MethodSnapshot> getMethods();
+
+	void reset();
+}
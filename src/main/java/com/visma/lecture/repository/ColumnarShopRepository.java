@@ -0,0 +1,508 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static com.visma.lecture.Validators.Validator.validateInputItem;
+
+/**
+ * Repository class for shop that stores the catalog column by column.
+ *
+ * Row i of the catalog is ids[i], stock[i], locations[i], types[i] and names[i], where location and type are
+ * enum ordinals and the name is a code into a dictionary of distinct item names.
+ * Item objects are only created when a caller asks for them, aggregates run as loops over the primitive columns.
+ * Rows keep the order they were created in, like the list behind ShopRepository.
+ */
+public class ColumnarShopRepository extends ShopRepository {
+
+	private static final ItemLocation[] LOCATIONS = ItemLocation.values();
+	private static final ItemType[] TYPES = ItemType.values();
+
+	private int size;
+	private int[] ids;
+	private int[] stock;
+	private byte[] locations;
+	private byte[] types;
+	private int[] names;
+
+	private final List<String> dictionary = new ArrayList<>();
+	private final List<String> dictionaryProducers = new ArrayList<>();
+	private final List<String> dictionaryProductNames = new ArrayList<>();
+	private final Map<String, Integer> dictionaryCodes = new HashMap<>();
+
+	/* Bitmap indexes for the select methods, built on demand and dropped on every create and delete */
+	private ItemBitmapIndex selections;
+
+	public ColumnarShopRepository(List<Item> items) {
+		super(new ArrayList<>());
+		int capacity = Math.max(16, items.size());
+		ids = new int[capacity];
+		stock = new int[capacity];
+		locations = new byte[capacity];
+		types = new byte[capacity];
+		names = new int[capacity];
+		items.forEach(this::append);
+	}
+
+	@Override
+	public Item findItemById(Integer id) {
+		int row = rowOf(id);
+		return row < 0 ? null : materialize(row);
+	}
+
+	@Override
+	public List<Item> findAllItems() {
+		return new Rows(null);
+	}
+
+	@Override
+	public List<Item> findItemsInRange(int start, int end) {
+		return findAllItems().stream()
+				.filter(item -> item.getItemID() >= start && item.getItemID() <= end)
+				.sorted(Comparator.comparingInt(Item::getItemID))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		return ItemPages.inRanges(findAllItems(), bounds);
+	}
+
+	@Override
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		return ItemPages.after(findAllItems(), afterId, limit);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		if (location == null) {
+			return Collections.emptyList();
+		}
+		int ordinal = location.ordinal();
+		int[] rows = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (locations[row] == ordinal) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerType(ItemType type) {
+		if (type == null) {
+			return Collections.emptyList();
+		}
+		int ordinal = type.ordinal();
+		int[] rows = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (types[row] == ordinal) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		if (location == null || type == null) {
+			return Collections.emptyList();
+		}
+		int locationOrdinal = location.ordinal();
+		int typeOrdinal = type.ordinal();
+		int[] rows = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (locations[row] == locationOrdinal && types[row] == typeOrdinal) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerProducer(String producer) {
+		boolean[] matches = new boolean[dictionary.size()];
+		for (int code = 0; code < matches.length; code++) {
+			matches[code] = dictionaryProducers.get(code).equals(producer);
+		}
+		int[] rows = new int[size];
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (matches[names[row]]) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public Set<String> findProducers() {
+		boolean[] used = new boolean[dictionary.size()];
+		for (int row = 0; row < size; row++) {
+			used[names[row]] = true;
+		}
+		Set<String> producers = new LinkedHashSet<>();
+		for (int code = 0; code < used.length; code++) {
+			if (used[code]) {
+				producers.add(dictionaryProducers.get(code));
+			}
+		}
+		return Collections.unmodifiableSet(producers);
+	}
+
+	@Override
+	public List<Item> findItems(ItemQuery query) {
+		return ItemPages.query(findAllItems(), query);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return ItemPages.startingWith(findAllItems(), Item::getProductName, prefix, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return ItemPages.startingWith(findAllItems(), Item::getProductName, prefix, limit);
+	}
+
+	@Override
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return ItemPages.startingWith(findAllItems(), Item::getProducer, prefix, Integer.MAX_VALUE);
+	}
+
+	/* No name index is kept, the text searches build a throwaway one, which costs a scan like any other query here */
+	@Override
+	public List<Item> findItemsWithNameContaining(String text) {
+		return new ItemNameIndex(findAllItems()).containing(text);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameToken(String token) {
+		return new ItemNameIndex(findAllItems()).withToken(token);
+	}
+
+	@Override
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return new ItemNameIndex(findAllItems()).matching(query, maxEdits);
+	}
+
+	@Override
+	public ItemSelection selectAll() {
+		return selections().all();
+	}
+
+	@Override
+	public ItemSelection selectLocation(ItemLocation location) {
+		return selections().location(location);
+	}
+
+	@Override
+	public ItemSelection selectType(ItemType type) {
+		return selections().type(type);
+	}
+
+	@Override
+	public ItemSelection selectProducer(String producer) {
+		return selections().producer(producer);
+	}
+
+	@Override
+	public ItemSelection selectStockBetween(int min, int max) {
+		return selections().stockBetween(min, max);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparing(Item::getItemName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparing(Item::getProductName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparingInt(Item::getStock).reversed(), offset, limit);
+	}
+
+	@Override
+	public List<Item> findDistinctItems() {
+		return ItemPages.distinct(findAllItems());
+	}
+
+	@Override
+	public int countCopies(Item item) {
+		return item == null ? 0 : ItemPages.copies(findItemsInRange(item.getItemID(), item.getItemID()), item);
+	}
+
+	@Override
+	public int getTotalStock() {
+		int total = 0;
+		for (int row = 0; row < size; row++) {
+			total += stock[row];
+		}
+		return total;
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		if (location == null) {
+			return OptionalDouble.empty();
+		}
+		int ordinal = location.ordinal();
+		long total = 0;
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (locations[row] == ordinal) {
+				total += stock[row];
+				count++;
+			}
+		}
+		return count == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) total / count);
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		long[] totals = getStockTotalsPerType(type);
+		return totals[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) totals[0] / totals[1]);
+	}
+
+	@Override
+	long[] getStockTotalsPerType(ItemType type) {
+		long[] totals = new long[2];
+		if (type == null) {
+			return totals;
+		}
+		int ordinal = type.ordinal();
+		for (int row = 0; row < size; row++) {
+			if (types[row] == ordinal) {
+				totals[0] += stock[row];
+				totals[1]++;
+			}
+		}
+		return totals;
+	}
+
+	@Override
+	public Item findItemWithMostInStock() {
+		if (size == 0) {
+			return null;
+		}
+		int best = 0;
+		for (int row = 1; row < size; row++) {
+			if (stock[row] > stock[best]) {
+				best = row;
+			}
+		}
+		return materialize(best);
+	}
+
+	@Override
+	public Item findItemWithLeastInStock() {
+		if (size == 0) {
+			return null;
+		}
+		int best = 0;
+		for (int row = 1; row < size; row++) {
+			if (stock[row] < stock[best]) {
+				best = row;
+			}
+		}
+		return materialize(best);
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		validateInputItem(item);
+		append(item);
+		selections = null;
+		changed();
+		return true;
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		if (itemId == null) {
+			return false;
+		}
+		int id = itemId;
+		boolean deleted = removeRows(rowId -> rowId == id);
+		if (deleted) {
+			selections = null;
+			changed();
+		}
+		return deleted;
+	}
+
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		ItemBatches.validateAll(batch);
+		batch.forEach(this::append);
+		if (!batch.isEmpty()) {
+			selections = null;
+			changed();
+		}
+		return true;
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		Set<Integer> present = presentIds(batch.stream().filter(Objects::nonNull).map(Item::getItemID).collect(Collectors.toSet()));
+		Map<Integer, Item> latest = ItemBatches.latestById(batch, present::contains);
+		if (latest.isEmpty()) {
+			return true;
+		}
+		removeRows(latest::containsKey);
+		latest.values().forEach(this::append);
+		selections = null;
+		changed();
+		return true;
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		Set<Integer> doomed = new HashSet<>(itemIds);
+		boolean deleted = removeRows(doomed::contains);
+		if (deleted) {
+			selections = null;
+			changed();
+		}
+		return deleted;
+	}
+
+	/* Shifts the rows that are kept down over the removed ones in one pass and reports whether any was removed */
+	private boolean removeRows(IntPredicate removed) {
+		int kept = 0;
+		for (int row = 0; row < size; row++) {
+			if (!removed.test(ids[row])) {
+				if (kept != row) {
+					ids[kept] = ids[row];
+					stock[kept] = stock[row];
+					locations[kept] = locations[row];
+					types[kept] = types[row];
+					names[kept] = names[row];
+				}
+				kept++;
+			}
+		}
+		boolean any = kept < size;
+		size = kept;
+		return any;
+	}
+
+	/* The ids of the set that some row has, found in one pass */
+	private Set<Integer> presentIds(Set<Integer> wanted) {
+		Set<Integer> present = new HashSet<>();
+		for (int row = 0; row < size; row++) {
+			if (wanted.contains(ids[row])) {
+				present.add(ids[row]);
+			}
+		}
+		return present;
+	}
+
+	private ItemBitmapIndex selections() {
+		if (selections == null) {
+			selections = new ItemBitmapIndex(findAllItems());
+		}
+		return selections;
+	}
+
+	private void append(Item item) {
+		if (size == ids.length) {
+			int capacity = size + (size >> 1);
+			ids = Arrays.copyOf(ids, capacity);
+			stock = Arrays.copyOf(stock, capacity);
+			locations = Arrays.copyOf(locations, capacity);
+			types = Arrays.copyOf(types, capacity);
+			names = Arrays.copyOf(names, capacity);
+		}
+		ids[size] = item.getItemID();
+		stock[size] = item.getStock();
+		locations[size] = (byte) item.getItemLocation().ordinal();
+		types[size] = (byte) item.getItemType().ordinal();
+		names[size] = encode(item);
+		size++;
+	}
+
+	private int encode(Item item) {
+		Integer code = dictionaryCodes.get(item.getItemName());
+		if (code == null) {
+			code = dictionary.size();
+			dictionary.add(item.getItemName());
+			dictionaryProducers.add(item.getProducer());
+			dictionaryProductNames.add(item.getProductName());
+			dictionaryCodes.put(item.getItemName(), code);
+		}
+		return code;
+	}
+
+	private int rowOf(Integer id) {
+		if (id == null) {
+			return -1;
+		}
+		int target = id;
+		for (int row = 0; row < size; row++) {
+			if (ids[row] == target) {
+				return row;
+			}
+		}
+		return -1;
+	}
+
+	/* Items of one name share the strings the dictionary keeps for it, nothing is parsed or copied per read */
+	private Item materialize(int row) {
+		int name = names[row];
+		return new Item(ids[row], dictionary.get(name), dictionaryProducers.get(name), dictionaryProductNames.get(name),
+				LOCATIONS[locations[row]], TYPES[types[row]], stock[row]);
+	}
+
+	/**
+	 * Read-only list over a set of rows, or over every row when rows is null. Items are created on get.
+	 * A view taken before a create or delete must not be used after it.
+	 */
+	private class Rows extends AbstractList<Item> implements RandomAccess {
+
+		private final int[] rows;
+
+		private Rows(int[] rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public Item get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			return materialize(rows == null ? index : rows[index]);
+		}
+
+		@Override
+		public int size() {
+			return rows == null ? size : rows.length;
+		}
+	}
+}
@@ -0,0 +1,323 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.Set;
+
+/**
+ * Thread-safe repository for shop.
+ *
+ * Reads never block, they go to the current snapshot, a ShopRepository that is never mutated after it is published.
+ * Writes are serialized, applied to a copy of the snapshot and then published in one volatile write,
+ * so a create, update or delete is atomic and readers see either all of it or none of it.
+ * A write costs a copy of the catalog, use it where reads dominate.
+ */
+public class ConcurrentShopRepository extends ShopRepository {
+
+	private final Object writeLock = new Object();
+
+	private volatile ShopRepository snapshot;
+
+	public ConcurrentShopRepository(List<Item> items) {
+		super(new ArrayList<>());
+		this.snapshot = new ShopRepository(new ArrayList<>(items));
+	}
+
+	/* The copy is never written again, a write replaces it with a new one */
+	@Override
+	public ShopRepository snapshot() {
+		return snapshot;
+	}
+
+	@Override
+	public Item findItemById(Integer id) {
+		return snapshot.findItemById(id);
+	}
+
+	@Override
+	public List<Item> findAllItems() {
+		return snapshot.findAllItems();
+	}
+
+	@Override
+	public List<Item> findItemsInRange(int start, int end) {
+		return snapshot.findItemsInRange(start, end);
+	}
+
+	@Override
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		return snapshot.findItemsAfter(afterId, limit);
+	}
+
+	@Override
+	public List<Item> findItemsInRanges(int... bounds) {
+		return snapshot.findItemsInRanges(bounds);
+	}
+
+	@Override
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		return snapshot.findItemsPerRange(bounds);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		return snapshot.findItemsPerLocation(location);
+	}
+
+	@Override
+	public List<Item> findItemsPerType(ItemType type) {
+		return snapshot.findItemsPerType(type);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		return snapshot.findItemsPerLocationAndType(location, type);
+	}
+
+	@Override
+	public List<Item> findItemsPerProducer(String producer) {
+		return snapshot.findItemsPerProducer(producer);
+	}
+
+	@Override
+	public Set<String> findProducers() {
+		return snapshot.findProducers();
+	}
+
+	@Override
+	public List<Item> findItems(ItemQuery query) {
+		return snapshot.findItems(query);
+	}
+
+	@Override
+	public ItemSelection selectAll() {
+		return snapshot.selectAll();
+	}
+
+	@Override
+	public ItemSelection selectLocation(ItemLocation location) {
+		return snapshot.selectLocation(location);
+	}
+
+	@Override
+	public ItemSelection selectType(ItemType type) {
+		return snapshot.selectType(type);
+	}
+
+	@Override
+	public ItemSelection selectProducer(String producer) {
+		return snapshot.selectProducer(producer);
+	}
+
+	@Override
+	public ItemSelection selectStockBetween(int min, int max) {
+		return snapshot.selectStockBetween(min, max);
+	}
+
+	/* One snapshot read for all three, selections of different snapshots can not be combined */
+	@Override
+	public List<ItemSelection> selectLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		return snapshot.selectLocationTypeAndProducer(location, type, producer);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return snapshot.findItemsWithProductNameStartingWith(prefix);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return snapshot.findItemsWithProductNameStartingWith(prefix, limit);
+	}
+
+	@Override
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return snapshot.findItemsWithProducerStartingWith(prefix);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameContaining(String text) {
+		return snapshot.findItemsWithNameContaining(text);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameToken(String token) {
+		return snapshot.findItemsWithNameToken(token);
+	}
+
+	@Override
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return snapshot.findItemsMatching(query, maxEdits);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		return snapshot.findItemsSortedByProducer(offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		return snapshot.findItemsSortedByProductName(offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		return snapshot.findItemsSortedByStock(offset, limit);
+	}
+
+	@Override
+	public List<Item> findDistinctItems() {
+		return snapshot.findDistinctItems();
+	}
+
+	@Override
+	public int countCopies(Item item) {
+		return snapshot.countCopies(item);
+	}
+
+	@Override
+	public int getTotalStock() {
+		return snapshot.getTotalStock();
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		return snapshot.getAverageStockPerLocation(location);
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		return snapshot.getAverageStockPerType(type);
+	}
+
+	@Override
+	long[] getStockTotalsPerType(ItemType type) {
+		return snapshot.getStockTotalsPerType(type);
+	}
+
+	@Override
+	public Item findItemWithMostInStock() {
+		return snapshot.findItemWithMostInStock();
+	}
+
+	@Override
+	public Item findItemWithLeastInStock() {
+		return snapshot.findItemWithLeastInStock();
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		synchronized (writeLock) {
+			ShopRepository next = copy();
+			Boolean created = next.create(item);
+			snapshot = next;
+			changed();
+			return created;
+		}
+	}
+
+	@Override
+	public Boolean update(Item item) {
+		synchronized (writeLock) {
+			ShopRepository next = copy();
+			Boolean updated = next.update(item);
+			snapshot = next;
+			changed();
+			return updated;
+		}
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		synchronized (writeLock) {
+			if (snapshot.findItemById(itemId) == null) {
+				return false;
+			}
+			ShopRepository next = copy();
+			Boolean deleted = next.delete(itemId);
+			snapshot = next;
+			changed();
+			return deleted;
+		}
+	}
+
+	/* A batch costs one copy of the catalog, like a single write, and readers see all of it or none of it */
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		ItemBatches.validateAll(batch);
+		if (batch.isEmpty()) {
+			return true;
+		}
+		synchronized (writeLock) {
+			ShopRepository next = copy();
+			Boolean created = next.createAll(batch);
+			snapshot = next;
+			changed();
+			return created;
+		}
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		synchronized (writeLock) {
+			ShopRepository current = snapshot;
+			if (ItemBatches.latestById(batch, id -> current.findItemById(id) != null).isEmpty()) {
+				return true;
+			}
+			ShopRepository next = copy();
+			Boolean updated = next.updateAll(batch);
+			snapshot = next;
+			changed();
+			return updated;
+		}
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		synchronized (writeLock) {
+			if (itemIds.stream().allMatch(id -> snapshot.findItemById(id) == null)) {
+				return false;
+			}
+			ShopRepository next = copy();
+			Boolean deleted = next.deleteAll(itemIds);
+			snapshot = next;
+			changed();
+			return deleted;
+		}
+	}
+
+	@Override
+	public List<Item> getAllItems() {
+		return snapshot.getAllItems();
+	}
+
+	@Override
+	public List<Item> getItemsInRange(int start, int end) {
+		return snapshot.getItemsInRange(start, end);
+	}
+
+	@Override
+	public List<Item> getItemsPerLocation(ItemLocation location) {
+		return snapshot.getItemsPerLocation(location);
+	}
+
+	@Override
+	public List<Item> getItemsPerType(ItemType typeName) {
+		return snapshot.getItemsPerType(typeName);
+	}
+
+	@Override
+	public List<Item> getItemsPerProducer(String producer) {
+		return snapshot.getItemsPerProducer(producer);
+	}
+
+	private ShopRepository copy() {
+		return new ShopRepository(new ArrayList<>(snapshot.findAllItems()));
+	}
+}
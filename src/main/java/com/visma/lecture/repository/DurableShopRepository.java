@@ -0,0 +1,319 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.database.ItemFile;
+import com.visma.lecture.common.database.ItemLog;
+import com.visma.lecture.common.domain.Item;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static com.visma.lecture.Validators.Validator.validateOutputItem;
+
+/**
+ * Repository class for shop whose mutations survive a restart.
+ *
+ * The directory holds a snapshot, snapshot-N.items written as an ItemFile, and the write-ahead log of everything
+ * that happened after it, log-N.wal. Every create, update and delete is appended to the log and synced before it
+ * returns, concurrent writers share their fsyncs. Opening the directory loads the newest snapshot and replays the logs.
+ *
+ * Once the log grows past compactAfterBytes the state is compacted into a new snapshot and the old files are removed.
+ * A crash at any point of compaction leaves either the old snapshot and all logs or the new snapshot to recover from.
+ *
+ * Concurrent writers are safe, reads are not safe while another thread writes, like ShopRepository.
+ */
+public class DurableShopRepository extends ShopRepository implements Closeable {
+
+	public static final long DEFAULT_COMPACT_AFTER_BYTES = 64L * 1024 * 1024;
+
+	private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.items");
+	private static final Pattern LOG = Pattern.compile("log-(\\d+)\\.wal");
+	private static final boolean SYNC_DIRECTORIES = !System.getProperty("os.name").startsWith("Windows");
+
+	private final Path directory;
+	private final long compactAfterBytes;
+
+	private long generation;
+	private ItemLog log;
+
+	/* Items loaded from the snapshot and the logs share one copy of each name */
+	private final ItemNames names = new ItemNames();
+
+	public DurableShopRepository(Path directory) throws IOException {
+		this(directory, DEFAULT_COMPACT_AFTER_BYTES);
+	}
+
+	public DurableShopRepository(Path directory, long compactAfterBytes) throws IOException {
+		super(new ArrayList<>());
+		this.directory = Files.createDirectories(directory);
+		this.compactAfterBytes = compactAfterBytes;
+		recover();
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		validateStorable(item);
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			target = log;
+			position = log.appendCreate(item);
+			super.create(item);
+		}
+		return synced(target, position);
+	}
+
+	@Override
+	public Boolean update(Item item) {
+		validateStorable(item);
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			if (findItemById(item.getItemID()) == null) {
+				return super.update(item);
+			}
+			target = log;
+			position = log.appendUpdate(item);
+			replace(item);
+		}
+		return synced(target, position);
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			if (findItemById(itemId) == null) {
+				return false;
+			}
+			target = log;
+			position = log.appendDelete(itemId);
+			super.delete(itemId);
+		}
+		return synced(target, position);
+	}
+
+	/**
+	 * Logs the batch between a begin and a commit entry, so recovery replays all of it or none of it, and applies it
+	 * with one sync. The batch is validated before anything is logged.
+	 */
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		batch.forEach(DurableShopRepository::validateStorable);
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			target = log;
+			log.appendBegin();
+			batch.forEach(log::appendCreate);
+			position = log.appendCommit();
+			super.createAll(batch);
+		}
+		return synced(target, position);
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		batch.forEach(DurableShopRepository::validateStorable);
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			Map<Integer, Item> latest = ItemBatches.latestById(batch, id -> findItemById(id) != null);
+			target = log;
+			log.appendBegin();
+			latest.values().forEach(log::appendUpdate);
+			position = log.appendCommit();
+			super.updateAll(latest.values());
+		}
+		return synced(target, position);
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		ItemLog target;
+		long position;
+		synchronized (this) {
+			List<Integer> present = new ArrayList<>(new LinkedHashSet<>(itemIds));
+			present.removeIf(id -> findItemById(id) == null);
+			if (present.isEmpty()) {
+				return false;
+			}
+			target = log;
+			log.appendBegin();
+			present.forEach(log::appendDelete);
+			position = log.appendCommit();
+			super.deleteAll(present);
+		}
+		return synced(target, position);
+	}
+
+	/**
+	 * Writes the current state to a new snapshot, starts a new log and removes the older files.
+	 */
+	public synchronized void compact() throws IOException {
+		long next = generation + 1;
+		log.close();
+		log = ItemLog.open(logPath(next), entry -> {});
+
+		Path temporary = directory.resolve("snapshot-" + next + ".items.tmp");
+		try (ItemFile snapshot = ItemFile.create(temporary, findAllItems())) {
+			snapshot.force();
+		}
+		Path snapshot = snapshotPath(next);
+		Files.move(namesPath(temporary), namesPath(snapshot), StandardCopyOption.ATOMIC_MOVE);
+		Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory();
+
+		for (long old : generations(SNAPSHOT)) {
+			if (old < next) {
+				Files.deleteIfExists(snapshotPath(old));
+				Files.deleteIfExists(namesPath(snapshotPath(old)));
+			}
+		}
+		for (long old : generations(LOG)) {
+			if (old < next) {
+				Files.deleteIfExists(logPath(old));
+			}
+		}
+		generation = next;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		log.close();
+	}
+
+	private void recover() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				if (file.getFileName().toString().contains(".tmp")) {
+					Files.delete(file);
+				}
+			}
+		}
+
+		List<Long> snapshots = generations(SNAPSHOT);
+		generation = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+		if (!snapshots.isEmpty()) {
+			try (ItemFile snapshot = ItemFile.open(snapshotPath(generation))) {
+				for (int row = 0; row < snapshot.size(); row++) {
+					if (!snapshot.isDeleted(row)) {
+						super.create(names.canonical(snapshot.get(row)));
+					}
+				}
+			}
+		}
+
+		long current = generation;
+		for (long logGeneration : generations(LOG)) {
+			if (logGeneration > current) {
+				current = logGeneration;
+			}
+		}
+		for (long logGeneration = generation; logGeneration < current; logGeneration++) {
+			if (Files.exists(logPath(logGeneration))) {
+				ItemLog.replay(logPath(logGeneration), this::apply);
+			}
+		}
+		log = ItemLog.open(logPath(current), this::apply);
+		generation = current;
+	}
+
+	private void apply(ItemLog.Entry entry) {
+		switch (entry.getOperation()) {
+			case CREATE:
+				super.create(names.canonical(entry.getItem()));
+				break;
+			case UPDATE:
+				replace(names.canonical(entry.getItem()));
+				break;
+			case DELETE:
+				super.delete(entry.getItemID());
+				break;
+		}
+	}
+
+	/* ShopRepository.update goes through the overridden delete and create, which would log the update twice */
+	private void replace(Item item) {
+		super.delete(item.getItemID());
+		super.create(item);
+	}
+
+	/*
+	 * Anything the log or a snapshot could not hold is rejected here, before it is logged, since a logged item is
+	 * replayed on every restart whether or not it was stored
+	 */
+	private static void validateStorable(Item item) {
+		validateOutputItem(item);
+		ItemFile.validateStorable(item);
+	}
+
+	/*
+	 * Renames and new files are only durable once their directory is synced, so this runs before the old files they
+	 * replace are deleted. Directories can not be opened for a sync on Windows, where this is skipped.
+	 */
+	private void syncDirectory() throws IOException {
+		if (!SYNC_DIRECTORIES) {
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	private Boolean synced(ItemLog target, long position) {
+		target.sync(position);
+		if (target.size() > compactAfterBytes) {
+			synchronized (this) {
+				if (log == target) {
+					try {
+						compact();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private List<Long> generations(Pattern pattern) throws IOException {
+		List<Long> generations = new ArrayList<>();
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				Matcher matcher = pattern.matcher(file.getFileName().toString());
+				if (matcher.matches()) {
+					generations.add(Long.parseLong(matcher.group(1)));
+				}
+			});
+		}
+		generations.sort(Long::compare);
+		return generations;
+	}
+
+	private Path snapshotPath(long generation) {
+		return directory.resolve("snapshot-" + generation + ".items");
+	}
+
+	private Path logPath(long generation) {
+		return directory.resolve("log-" + generation + ".wal");
+	}
+
+	private static Path namesPath(Path items) {
+		return items.resolveSibling(items.getFileName() + ".names");
+	}
+}
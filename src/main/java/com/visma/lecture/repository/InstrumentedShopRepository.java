@@ -0,0 +1,386 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.metrics.ShopMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.Set;
+
+/**
+ * Repository that records every call to another repository in ShopMetrics, as ShopRepository.methodName.
+ *
+ * Calls the delegate makes to itself are not recorded, so each call from outside is counted once. While the metrics
+ * are disabled calls go straight to the delegate.
+ * Thread-safe when the delegate is.
+ */
+public class InstrumentedShopRepository extends ShopRepository {
+
+	private final ShopRepository delegate;
+	private final ShopMetrics metrics;
+
+	public InstrumentedShopRepository(ShopRepository delegate, ShopMetrics metrics) {
+		super(new ArrayList<>());
+		if (delegate == null || metrics == null) {
+			throw new IllegalArgumentException("Repository and metrics must not be null.");
+		}
+		this.delegate = delegate;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public ShopRepository snapshot() {
+		ShopRepository snapshot = delegate.snapshot();
+		return snapshot == delegate ? this : new InstrumentedShopRepository(snapshot, metrics);
+	}
+
+	@Override
+	public Item findItemById(Integer id) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemById", () -> delegate.findItemById(id))
+				: delegate.findItemById(id);
+	}
+
+	@Override
+	public List<Item> findAllItems() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findAllItems", delegate::findAllItems)
+				: delegate.findAllItems();
+	}
+
+	@Override
+	public List<Item> findItemsInRange(int start, int end) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsInRange", () -> delegate.findItemsInRange(start, end))
+				: delegate.findItemsInRange(start, end);
+	}
+
+	@Override
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsAfter", () -> delegate.findItemsAfter(afterId, limit))
+				: delegate.findItemsAfter(afterId, limit);
+	}
+
+	@Override
+	public List<Item> findItemsInRanges(int... bounds) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsInRanges", () -> delegate.findItemsInRanges(bounds))
+				: delegate.findItemsInRanges(bounds);
+	}
+
+	@Override
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsPerRange", () -> delegate.findItemsPerRange(bounds))
+				: delegate.findItemsPerRange(bounds);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsPerLocation",
+						() -> delegate.findItemsPerLocation(location))
+				: delegate.findItemsPerLocation(location);
+	}
+
+	@Override
+	public List<Item> findItemsPerType(ItemType type) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsPerType", () -> delegate.findItemsPerType(type))
+				: delegate.findItemsPerType(type);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsPerLocationAndType",
+						() -> delegate.findItemsPerLocationAndType(location, type))
+				: delegate.findItemsPerLocationAndType(location, type);
+	}
+
+	@Override
+	public List<Item> findItemsPerProducer(String producer) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsPerProducer",
+						() -> delegate.findItemsPerProducer(producer))
+				: delegate.findItemsPerProducer(producer);
+	}
+
+	@Override
+	public Set<String> findProducers() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findProducers", delegate::findProducers)
+				: delegate.findProducers();
+	}
+
+	@Override
+	public List<Item> findItems(ItemQuery query) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItems", () -> delegate.findItems(query))
+				: delegate.findItems(query);
+	}
+
+	@Override
+	public ItemSelection selectAll() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectAll", delegate::selectAll)
+				: delegate.selectAll();
+	}
+
+	@Override
+	public ItemSelection selectLocation(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectLocation", () -> delegate.selectLocation(location))
+				: delegate.selectLocation(location);
+	}
+
+	@Override
+	public ItemSelection selectType(ItemType type) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectType", () -> delegate.selectType(type))
+				: delegate.selectType(type);
+	}
+
+	@Override
+	public ItemSelection selectProducer(String producer) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectProducer", () -> delegate.selectProducer(producer))
+				: delegate.selectProducer(producer);
+	}
+
+	@Override
+	public ItemSelection selectStockBetween(int min, int max) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectStockBetween",
+						() -> delegate.selectStockBetween(min, max))
+				: delegate.selectStockBetween(min, max);
+	}
+
+	@Override
+	public List<ItemSelection> selectLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.selectLocationTypeAndProducer",
+						() -> delegate.selectLocationTypeAndProducer(location, type, producer))
+				: delegate.selectLocationTypeAndProducer(location, type, producer);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsWithProductNameStartingWith",
+						() -> delegate.findItemsWithProductNameStartingWith(prefix))
+				: delegate.findItemsWithProductNameStartingWith(prefix);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsWithProductNameStartingWith/2",
+						() -> delegate.findItemsWithProductNameStartingWith(prefix, limit))
+				: delegate.findItemsWithProductNameStartingWith(prefix, limit);
+	}
+
+	@Override
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsWithProducerStartingWith",
+						() -> delegate.findItemsWithProducerStartingWith(prefix))
+				: delegate.findItemsWithProducerStartingWith(prefix);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameContaining(String text) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsWithNameContaining",
+						() -> delegate.findItemsWithNameContaining(text))
+				: delegate.findItemsWithNameContaining(text);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameToken(String token) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsWithNameToken",
+						() -> delegate.findItemsWithNameToken(token))
+				: delegate.findItemsWithNameToken(token);
+	}
+
+	@Override
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsMatching",
+						() -> delegate.findItemsMatching(query, maxEdits))
+				: delegate.findItemsMatching(query, maxEdits);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsSortedByProducer",
+						() -> delegate.findItemsSortedByProducer(offset, limit))
+				: delegate.findItemsSortedByProducer(offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsSortedByProductName",
+						() -> delegate.findItemsSortedByProductName(offset, limit))
+				: delegate.findItemsSortedByProductName(offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemsSortedByStock",
+						() -> delegate.findItemsSortedByStock(offset, limit))
+				: delegate.findItemsSortedByStock(offset, limit);
+	}
+
+	@Override
+	public List<Item> findDistinctItems() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findDistinctItems", delegate::findDistinctItems)
+				: delegate.findDistinctItems();
+	}
+
+	@Override
+	public int countCopies(Item item) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.countCopies", () -> delegate.countCopies(item))
+				: delegate.countCopies(item);
+	}
+
+	@Override
+	public int getTotalStock() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getTotalStock", delegate::getTotalStock)
+				: delegate.getTotalStock();
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getAverageStockPerLocation",
+						() -> delegate.getAverageStockPerLocation(location))
+				: delegate.getAverageStockPerLocation(location);
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getAverageStockPerType",
+						() -> delegate.getAverageStockPerType(type))
+				: delegate.getAverageStockPerType(type);
+	}
+
+	@Override
+	long[] getStockTotalsPerType(ItemType type) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getStockTotalsPerType",
+						() -> delegate.getStockTotalsPerType(type))
+				: delegate.getStockTotalsPerType(type);
+	}
+
+	@Override
+	public Item findItemWithMostInStock() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemWithMostInStock", delegate::findItemWithMostInStock)
+				: delegate.findItemWithMostInStock();
+	}
+
+	@Override
+	public Item findItemWithLeastInStock() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.findItemWithLeastInStock", delegate::findItemWithLeastInStock)
+				: delegate.findItemWithLeastInStock();
+	}
+
+	@Override
+	public long getVersion() {
+		return delegate.getVersion();
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.create", () -> delegate.create(item))
+				: delegate.create(item);
+	}
+
+	@Override
+	public Boolean update(Item item) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.update", () -> delegate.update(item))
+				: delegate.update(item);
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.delete", () -> delegate.delete(itemId))
+				: delegate.delete(itemId);
+	}
+
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.createAll", () -> delegate.createAll(batch))
+				: delegate.createAll(batch);
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.updateAll", () -> delegate.updateAll(batch))
+				: delegate.updateAll(batch);
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.deleteAll", () -> delegate.deleteAll(itemIds))
+				: delegate.deleteAll(itemIds);
+	}
+
+	@Override
+	public List<Item> getAllItems() {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getAllItems", delegate::getAllItems)
+				: delegate.getAllItems();
+	}
+
+	@Override
+	public List<Item> getItemsInRange(int start, int end) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getItemsInRange", () -> delegate.getItemsInRange(start, end))
+				: delegate.getItemsInRange(start, end);
+	}
+
+	@Override
+	public List<Item> getItemsPerLocation(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getItemsPerLocation",
+						() -> delegate.getItemsPerLocation(location))
+				: delegate.getItemsPerLocation(location);
+	}
+
+	@Override
+	public List<Item> getItemsPerType(ItemType typeName) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getItemsPerType", () -> delegate.getItemsPerType(typeName))
+				: delegate.getItemsPerType(typeName);
+	}
+
+	@Override
+	public List<Item> getItemsPerProducer(String producer) {
+		return metrics.isEnabled()
+				? metrics.callRepository("ShopRepository.getItemsPerProducer",
+						() -> delegate.getItemsPerProducer(producer))
+				: delegate.getItemsPerProducer(producer);
+	}
+}
@@ -0,0 +1,47 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static com.visma.lecture.Validators.Validator.validateInputItem;
+import static com.visma.lecture.Validators.Validator.validateOutputNoneMissing;
+
+/**
+ * Validation shared by the batch writes of the repositories, which check a whole batch before changing anything.
+ */
+final class ItemBatches {
+
+	private ItemBatches() {
+	}
+
+	/**
+	 * Checks every item of a create batch, throws before anything is written when one of them can not be stored.
+	 */
+	static void validateAll(Collection<Item> batch) {
+		batch.forEach(item -> validateInputItem(item));
+	}
+
+	/**
+	 * The items of an update batch by itemID. An id that is given more than once keeps its last item, at the
+	 * position of that last item, the same outcome as updating the items one by one.
+	 * Throws when an item is null, has a null field, or when exists is false for one of the ids.
+	 */
+	static Map<Integer, Item> latestById(Collection<Item> batch, Predicate<Integer> exists) {
+		Map<Integer, Item> latest = new LinkedHashMap<>();
+		for (Item item : batch) {
+			validateInputItem(item);
+			latest.remove(item.getItemID());
+			latest.put(item.getItemID(), item);
+		}
+		Set<Integer> missing = new HashSet<>(latest.keySet());
+		missing.removeIf(exists);
+		validateOutputNoneMissing(missing);
+		return latest;
+	}
+}
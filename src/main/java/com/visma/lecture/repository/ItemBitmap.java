@@ -0,0 +1,427 @@
+package com.visma.lecture.repository;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed bitmap of non-negative row numbers, in the style of a roaring bitmap.
+ *
+ * A row is split into its high and low 16 bits. Every high value in use has a container for the low bits,
+ * a sorted char array while it holds at most 4096 rows and a 1024 word bitset above that, so sparse and dense
+ * ranges both stay small. and, or and andNot work container by container, word by word between two bitsets,
+ * and return a new bitmap without touching either operand.
+ * Not thread-safe.
+ */
+final class ItemBitmap {
+
+	private static final int ARRAY_LIMIT = 4096;
+	private static final int WORDS = 1024;
+
+	private int[] keys = new int[4];
+	private Container[] containers = new Container[4];
+	private int size;
+
+	void add(int row) {
+		int index = find(row >>> 16);
+		if (index < 0) {
+			index = -index - 1;
+			insert(index, row >>> 16, new ArrayContainer());
+		}
+		containers[index] = containers[index].add((char) row);
+	}
+
+	void remove(int row) {
+		int index = find(row >>> 16);
+		if (index >= 0) {
+			Container container = containers[index].remove((char) row);
+			if (container.cardinality() == 0) {
+				delete(index);
+			} else {
+				containers[index] = container;
+			}
+		}
+	}
+
+	boolean contains(int row) {
+		int index = find(row >>> 16);
+		return index >= 0 && containers[index].contains((char) row);
+	}
+
+	int cardinality() {
+		int cardinality = 0;
+		for (int i = 0; i < size; i++) {
+			cardinality += containers[i].cardinality();
+		}
+		return cardinality;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Passes every row to the consumer in ascending order.
+	 */
+	void forEach(IntConsumer consumer) {
+		for (int i = 0; i < size; i++) {
+			containers[i].forEach(keys[i] << 16, consumer);
+		}
+	}
+
+	ItemBitmap copy() {
+		ItemBitmap copy = new ItemBitmap();
+		for (int i = 0; i < size; i++) {
+			copy.append(keys[i], containers[i].copy());
+		}
+		return copy;
+	}
+
+	ItemBitmap and(ItemBitmap other) {
+		ItemBitmap result = new ItemBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < size && j < other.size) {
+			if (keys[i] < other.keys[j]) {
+				i++;
+			} else if (keys[i] > other.keys[j]) {
+				j++;
+			} else {
+				result.append(keys[i], containers[i].and(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	ItemBitmap or(ItemBitmap other) {
+		ItemBitmap result = new ItemBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < size || j < other.size) {
+			if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+				result.append(keys[i], containers[i].copy());
+				i++;
+			} else if (i == size || keys[i] > other.keys[j]) {
+				result.append(other.keys[j], other.containers[j].copy());
+				j++;
+			} else {
+				result.append(keys[i], containers[i].or(other.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	ItemBitmap andNot(ItemBitmap other) {
+		ItemBitmap result = new ItemBitmap();
+		int j = 0;
+		for (int i = 0; i < size; i++) {
+			while (j < other.size && other.keys[j] < keys[i]) {
+				j++;
+			}
+			boolean overlaps = j < other.size && other.keys[j] == keys[i];
+			result.append(keys[i], overlaps ? containers[i].andNot(other.containers[j]) : containers[i].copy());
+		}
+		return result;
+	}
+
+	private int find(int key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+
+	private void insert(int index, int key, Container container) {
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			containers = Arrays.copyOf(containers, size * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, size - index);
+		System.arraycopy(containers, index, containers, index + 1, size - index);
+		keys[index] = key;
+		containers[index] = container;
+		size++;
+	}
+
+	private void delete(int index) {
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+		size--;
+		containers[size] = null;
+	}
+
+	/* Adds a container for a key larger than every key so far, empty containers are dropped */
+	private void append(int key, Container container) {
+		if (container.cardinality() > 0) {
+			insert(size, key, container);
+		}
+	}
+
+	/**
+	 * The low 16 bits of the rows sharing one high value. Operations may return a container of the other kind.
+	 */
+	private abstract static class Container {
+
+		abstract Container add(char value);
+
+		abstract Container remove(char value);
+
+		abstract boolean contains(char value);
+
+		abstract int cardinality();
+
+		abstract void forEach(int high, IntConsumer consumer);
+
+		abstract Container copy();
+
+		abstract Container and(Container other);
+
+		abstract Container or(Container other);
+
+		abstract Container andNot(Container other);
+	}
+
+	private static final class ArrayContainer extends Container {
+
+		private char[] values;
+		private int cardinality;
+
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int cardinality) {
+			this.values = values;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				return this;
+			}
+			if (cardinality == ARRAY_LIMIT) {
+				return toBitmap().add(value);
+			}
+			index = -index - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+			}
+			System.arraycopy(values, index, values, index + 1, cardinality - index);
+			values[index] = value;
+			cardinality++;
+			return this;
+		}
+
+		@Override
+		Container remove(char value) {
+			int index = Arrays.binarySearch(values, 0, cardinality, value);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+				cardinality--;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < cardinality; i++) {
+				consumer.accept(high | values[i]);
+			}
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, cardinality), cardinality);
+		}
+
+		@Override
+		Container and(Container other) {
+			char[] result = new char[cardinality];
+			int count = 0;
+			for (int i = 0; i < cardinality; i++) {
+				if (other.contains(values[i])) {
+					result[count++] = values[i];
+				}
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		@Override
+		Container or(Container other) {
+			if (other instanceof BitmapContainer) {
+				return other.or(this);
+			}
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[cardinality + array.cardinality];
+			int count = 0;
+			int i = 0;
+			int j = 0;
+			while (i < cardinality || j < array.cardinality) {
+				if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+					result[count++] = values[i++];
+				} else if (i == cardinality || values[i] > array.values[j]) {
+					result[count++] = array.values[j++];
+				} else {
+					result[count++] = values[i++];
+					j++;
+				}
+			}
+			ArrayContainer union = new ArrayContainer(result, count);
+			return count > ARRAY_LIMIT ? union.toBitmap() : union;
+		}
+
+		@Override
+		Container andNot(Container other) {
+			char[] result = new char[cardinality];
+			int count = 0;
+			for (int i = 0; i < cardinality; i++) {
+				if (!other.contains(values[i])) {
+					result[count++] = values[i];
+				}
+			}
+			return new ArrayContainer(result, count);
+		}
+
+		private BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer(new long[WORDS], 0);
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.add(values[i]);
+			}
+			return bitmap;
+		}
+	}
+
+	private static final class BitmapContainer extends Container {
+
+		private final long[] words;
+		private int cardinality;
+
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char value) {
+			long bit = 1L << value;
+			if ((words[value >>> 6] & bit) == 0) {
+				words[value >>> 6] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+
+		/* Only goes back to an array well below the limit, so rows added and removed around it do not convert every time */
+		@Override
+		Container remove(char value) {
+			clear(value);
+			return cardinality <= ARRAY_LIMIT / 2 ? toArray() : this;
+		}
+
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+
+		@Override
+		int cardinality() {
+			return cardinality;
+		}
+
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int w = 0; w < WORDS; w++) {
+				long word = words[w];
+				while (word != 0) {
+					consumer.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone(), cardinality);
+		}
+
+		@Override
+		Container and(Container other) {
+			if (other instanceof ArrayContainer) {
+				return other.and(this);
+			}
+			long[] otherWords = ((BitmapContainer) other).words;
+			long[] result = new long[WORDS];
+			int count = 0;
+			for (int w = 0; w < WORDS; w++) {
+				result[w] = words[w] & otherWords[w];
+				count += Long.bitCount(result[w]);
+			}
+			return shrink(new BitmapContainer(result, count));
+		}
+
+		@Override
+		Container or(Container other) {
+			long[] result = words.clone();
+			if (other instanceof ArrayContainer) {
+				BitmapContainer union = new BitmapContainer(result, cardinality);
+				other.forEach(0, value -> union.add((char) value));
+				return union;
+			}
+			long[] otherWords = ((BitmapContainer) other).words;
+			int count = 0;
+			for (int w = 0; w < WORDS; w++) {
+				result[w] |= otherWords[w];
+				count += Long.bitCount(result[w]);
+			}
+			return new BitmapContainer(result, count);
+		}
+
+		@Override
+		Container andNot(Container other) {
+			long[] result = words.clone();
+			int count = 0;
+			if (other instanceof ArrayContainer) {
+				BitmapContainer difference = new BitmapContainer(result, cardinality);
+				other.forEach(0, value -> difference.clear((char) value));
+				return shrink(difference);
+			}
+			long[] otherWords = ((BitmapContainer) other).words;
+			for (int w = 0; w < WORDS; w++) {
+				result[w] &= ~otherWords[w];
+				count += Long.bitCount(result[w]);
+			}
+			return shrink(new BitmapContainer(result, count));
+		}
+
+		private void clear(char value) {
+			long bit = 1L << value;
+			if ((words[value >>> 6] & bit) != 0) {
+				words[value >>> 6] &= ~bit;
+				cardinality--;
+			}
+		}
+
+		private ArrayContainer toArray() {
+			char[] values = new char[cardinality];
+			int[] count = new int[1];
+			forEach(0, value -> values[count[0]++] = (char) value);
+			return new ArrayContainer(values, cardinality);
+		}
+
+		private static Container shrink(BitmapContainer bitmap) {
+			return bitmap.cardinality <= ARRAY_LIMIT ? bitmap.toArray() : bitmap;
+		}
+	}
+}
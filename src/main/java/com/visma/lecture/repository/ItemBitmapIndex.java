@@ -0,0 +1,185 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bitmap indexes per location, type, producer and stock bucket over dense row numbers.
+ *
+ * Every added item gets the next row, so rows follow the order items were added in. A removed item leaves an empty
+ * row behind, once more than half of the rows are empty the rows are renumbered and the bitmaps rebuilt.
+ * Stock buckets are powers of two, bucket b holds stock from 2^(b-1) to 2^b - 1 and bucket 0 stock up to 0.
+ * Not thread-safe.
+ */
+final class ItemBitmapIndex {
+
+	private static final int STOCK_BUCKETS = 32;
+	private static final int COMPACT_AFTER = 1024;
+
+	private List<Item> rows = new ArrayList<>();
+
+	/**
+	 * Row of every added instance, and the later rows of an instance that was added more than once.
+	 */
+	private final Map<Item, Integer> rowOf = new IdentityHashMap<>();
+	private final Map<Item, Deque<Integer>> moreRowsOf = new IdentityHashMap<>();
+	private int emptyRows;
+
+	private final Map<ItemLocation, ItemBitmap> byLocation = new EnumMap<>(ItemLocation.class);
+	private final Map<ItemType, ItemBitmap> byType = new EnumMap<>(ItemType.class);
+	private final Map<String, ItemBitmap> byProducer = new HashMap<>();
+	private final ItemBitmap[] byStockBucket = new ItemBitmap[STOCK_BUCKETS];
+	private ItemBitmap all = new ItemBitmap();
+
+	ItemBitmapIndex() {
+		for (int bucket = 0; bucket < STOCK_BUCKETS; bucket++) {
+			byStockBucket[bucket] = new ItemBitmap();
+		}
+	}
+
+	ItemBitmapIndex(List<Item> items) {
+		this();
+		items.forEach(this::add);
+	}
+
+	void add(Item item) {
+		int row = rows.size();
+		rows.add(item);
+		if (rowOf.putIfAbsent(item, row) != null) {
+			moreRowsOf.computeIfAbsent(item, i -> new ArrayDeque<>()).push(row);
+		}
+		all.add(row);
+		byLocation.computeIfAbsent(item.getItemLocation(), l -> new ItemBitmap()).add(row);
+		byType.computeIfAbsent(item.getItemType(), t -> new ItemBitmap()).add(row);
+		byProducer.computeIfAbsent(item.getProducer(), p -> new ItemBitmap()).add(row);
+		byStockBucket[stockBucket(item.getStock())].add(row);
+	}
+
+	/**
+	 * Empties one row of item, an instance that was added twice keeps its other row.
+	 */
+	void remove(Item item) {
+		Integer row = removeRow(item);
+		if (row == null) {
+			return;
+		}
+		rows.set(row, null);
+		all.remove(row);
+		byLocation.get(item.getItemLocation()).remove(row);
+		byType.get(item.getItemType()).remove(row);
+		ItemBitmap producer = byProducer.get(item.getProducer());
+		producer.remove(row);
+		if (producer.isEmpty()) {
+			byProducer.remove(item.getProducer());
+		}
+		byStockBucket[stockBucket(item.getStock())].remove(row);
+		emptyRows++;
+	}
+
+	/**
+	 * Renumbers the rows when most of them are empty, selections taken before can no longer be combined with new ones.
+	 */
+	void compactIfSparse() {
+		if (emptyRows > COMPACT_AFTER && emptyRows > rows.size() / 2) {
+			List<Item> live = new ArrayList<>(rows.size() - emptyRows);
+			for (Item item : rows) {
+				if (item != null) {
+					live.add(item);
+				}
+			}
+			rows = new ArrayList<>();
+			rowOf.clear();
+			moreRowsOf.clear();
+			emptyRows = 0;
+			all = new ItemBitmap();
+			byLocation.clear();
+			byType.clear();
+			byProducer.clear();
+			for (int bucket = 0; bucket < STOCK_BUCKETS; bucket++) {
+				byStockBucket[bucket] = new ItemBitmap();
+			}
+			live.forEach(this::add);
+		}
+	}
+
+	ItemSelection all() {
+		return selection(all);
+	}
+
+	ItemSelection location(ItemLocation location) {
+		return selection(byLocation.get(location));
+	}
+
+	ItemSelection type(ItemType type) {
+		return selection(byType.get(type));
+	}
+
+	ItemSelection producer(String producer) {
+		return selection(byProducer.get(producer));
+	}
+
+	/**
+	 * Rows with min <= stock <= max. Buckets inside the range are used whole, the rows of the buckets at its ends are checked.
+	 */
+	ItemSelection stockBetween(int min, int max) {
+		ItemBitmap result = new ItemBitmap();
+		if (min > max) {
+			return new ItemSelection(rows, result);
+		}
+		for (int bucket = stockBucket(min); bucket <= stockBucket(max); bucket++) {
+			ItemBitmap bits = byStockBucket[bucket];
+			if (min <= lowestStock(bucket) && highestStock(bucket) <= max) {
+				result = result.or(bits);
+			} else {
+				ItemBitmap matching = new ItemBitmap();
+				bits.forEach(row -> {
+					int stock = rows.get(row).getStock();
+					if (stock >= min && stock <= max) {
+						matching.add(row);
+					}
+				});
+				result = result.or(matching);
+			}
+		}
+		return new ItemSelection(rows, result);
+	}
+
+	private Integer removeRow(Item item) {
+		Deque<Integer> more = moreRowsOf.get(item);
+		if (more == null) {
+			return rowOf.remove(item);
+		}
+		Integer row = more.pop();
+		if (more.isEmpty()) {
+			moreRowsOf.remove(item);
+		}
+		return row;
+	}
+
+	/* The selection gets its own copy, it must not change when the index does */
+	private ItemSelection selection(ItemBitmap bits) {
+		return new ItemSelection(rows, bits == null ? new ItemBitmap() : bits.copy());
+	}
+
+	private static int stockBucket(int stock) {
+		return stock <= 0 ? 0 : 32 - Integer.numberOfLeadingZeros(stock);
+	}
+
+	private static int lowestStock(int bucket) {
+		return bucket == 0 ? Integer.MIN_VALUE : 1 << (bucket - 1);
+	}
+
+	private static int highestStock(int bucket) {
+		return bucket == 0 ? 0 : bucket == STOCK_BUCKETS - 1 ? Integer.MAX_VALUE : (1 << bucket) - 1;
+	}
+}
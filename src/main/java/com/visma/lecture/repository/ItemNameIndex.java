@@ -0,0 +1,261 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index over item names for substring, token and fuzzy search.
+ *
+ * Names are case-folded like ItemPages.fold and split into trigrams, with a start and end marker so names and
+ * queries shorter than three characters still have grams. Tokens are the runs of letters and digits in the name,
+ * so "HUGO_BOSS TROUSERS" has the tokens hugo, boss and trousers. The token vocabulary has its own trigram index,
+ * which narrows a fuzzy query down to the tokens that can be within the allowed edit distance.
+ * Updated on every add and remove, not thread-safe.
+ */
+final class ItemNameIndex {
+
+	private static final char START = '\u0002';
+	private static final char END = '\u0003';
+
+	private final Map<String, List<Item>> itemsByGram = new HashMap<>();
+	private final Map<String, List<Item>> itemsByToken = new HashMap<>();
+	private final Map<String, Set<String>> tokensByGram = new HashMap<>();
+
+	ItemNameIndex() {
+	}
+
+	ItemNameIndex(List<Item> items) {
+		items.forEach(this::add);
+	}
+
+	void add(Item item) {
+		String name = ItemPages.fold(item.getItemName());
+		for (String gram : grams(name)) {
+			itemsByGram.computeIfAbsent(gram, g -> new ArrayList<>()).add(item);
+		}
+		for (String token : tokens(name)) {
+			List<Item> tokenItems = itemsByToken.computeIfAbsent(token, t -> new ArrayList<>());
+			if (tokenItems.isEmpty()) {
+				for (String gram : grams(token)) {
+					tokensByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(token);
+				}
+			}
+			tokenItems.add(item);
+		}
+	}
+
+	void remove(Item item) {
+		String name = ItemPages.fold(item.getItemName());
+		for (String gram : grams(name)) {
+			removeFrom(itemsByGram, gram, item);
+		}
+		for (String token : tokens(name)) {
+			if (removeFrom(itemsByToken, token, item)) {
+				for (String gram : grams(token)) {
+					Set<String> tokens = tokensByGram.get(gram);
+					tokens.remove(token);
+					if (tokens.isEmpty()) {
+						tokensByGram.remove(gram);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Items whose name contains text ignoring case, ranked by where the match starts, then by shorter name and itemID.
+	 */
+	List<Item> containing(String text) {
+		String query = ItemPages.fold(text);
+		List<Item> candidates;
+		if (query.length() >= 3) {
+			candidates = rarest(query);
+		} else {
+			Set<Item> union = Collections.newSetFromMap(new IdentityHashMap<>());
+			itemsByGram.forEach((gram, items) -> {
+				if (gram.contains(query)) {
+					union.addAll(items);
+				}
+			});
+			candidates = new ArrayList<>(union);
+		}
+
+		List<Item> matches = new ArrayList<>();
+		Map<Item, Integer> positions = new IdentityHashMap<>();
+		for (Item item : candidates) {
+			int position = ItemPages.fold(item.getItemName()).indexOf(query);
+			if (position >= 0) {
+				matches.add(item);
+				positions.put(item, position);
+			}
+		}
+		matches.sort(Comparator.<Item>comparingInt(positions::get)
+				.thenComparingInt(item -> item.getItemName().length())
+				.thenComparingInt(Item::getItemID));
+		return matches;
+	}
+
+	/**
+	 * Items that have token as one of their name tokens ignoring case, in the order they were added.
+	 */
+	List<Item> withToken(String token) {
+		List<Item> items = itemsByToken.get(ItemPages.fold(token));
+		return items == null ? Collections.emptyList() : new ArrayList<>(items);
+	}
+
+	/**
+	 * Items that match every token of the query with one of their name tokens within maxEdits edits,
+	 * ranked by the total edit distance, then by itemID. Exact matches have distance 0 and come first.
+	 */
+	List<Item> matching(String query, int maxEdits) {
+		if (maxEdits < 0 || maxEdits > 2) {
+			throw new IllegalArgumentException("Edit distance must be between 0 and 2.");
+		}
+		Map<Item, Integer> scores = null;
+		for (String queryToken : tokens(ItemPages.fold(query))) {
+			Map<Item, Integer> best = new IdentityHashMap<>();
+			for (String token : candidateTokens(queryToken, maxEdits)) {
+				int distance = distance(queryToken, token, maxEdits);
+				if (distance <= maxEdits) {
+					for (Item item : itemsByToken.get(token)) {
+						best.merge(item, distance, Math::min);
+					}
+				}
+			}
+			if (scores == null) {
+				scores = best;
+			} else {
+				Map<Item, Integer> both = new IdentityHashMap<>();
+				for (Map.Entry<Item, Integer> entry : scores.entrySet()) {
+					Integer distance = best.get(entry.getKey());
+					if (distance != null) {
+						both.put(entry.getKey(), entry.getValue() + distance);
+					}
+				}
+				scores = both;
+			}
+		}
+		if (scores == null) {
+			return Collections.emptyList();
+		}
+		Map<Item, Integer> ranked = scores;
+		List<Item> matches = new ArrayList<>(ranked.keySet());
+		matches.sort(Comparator.<Item>comparingInt(ranked::get).thenComparingInt(Item::getItemID));
+		return matches;
+	}
+
+	/* Items of the least common gram of the query, every item containing the query is among them */
+	private List<Item> rarest(String query) {
+		List<Item> rarest = null;
+		for (int i = 0; i + 3 <= query.length(); i++) {
+			List<Item> items = itemsByGram.get(query.substring(i, i + 3));
+			if (items == null) {
+				return Collections.emptyList();
+			}
+			if (rarest == null || items.size() < rarest.size()) {
+				rarest = items;
+			}
+		}
+		return rarest;
+	}
+
+	/*
+	 * Each edit changes at most three grams, so a token within maxEdits edits shares at least
+	 * grams - 3 * maxEdits distinct grams with the query. When that bound is not positive every token is a candidate.
+	 */
+	private Set<String> candidateTokens(String queryToken, int maxEdits) {
+		Set<String> grams = grams(queryToken);
+		int required = grams.size() - 3 * maxEdits;
+		if (required <= 0) {
+			return itemsByToken.keySet();
+		}
+		Map<String, Integer> shared = new HashMap<>();
+		for (String gram : grams) {
+			Set<String> tokens = tokensByGram.get(gram);
+			if (tokens != null) {
+				tokens.forEach(token -> shared.merge(token, 1, Integer::sum));
+			}
+		}
+		Set<String> candidates = new HashSet<>();
+		shared.forEach((token, count) -> {
+			if (count >= required) {
+				candidates.add(token);
+			}
+		});
+		return candidates;
+	}
+
+	/* Levenshtein distance, or max + 1 as soon as it is known to be larger than max */
+	private static int distance(String a, String b, int max) {
+		if (Math.abs(a.length() - b.length()) > max) {
+			return max + 1;
+		}
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if (rowMin > max) {
+				return max + 1;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[b.length()], max + 1);
+	}
+
+	/* Distinct trigrams of the folded text between the start and end markers */
+	private static Set<String> grams(String folded) {
+		String padded = START + folded + END;
+		Set<String> grams = new LinkedHashSet<>();
+		for (int i = 0; i + 3 <= padded.length(); i++) {
+			grams.add(padded.substring(i, i + 3));
+		}
+		return grams;
+	}
+
+	/* Distinct runs of letters and digits */
+	private static Set<String> tokens(String folded) {
+		Set<String> tokens = new LinkedHashSet<>();
+		int start = -1;
+		for (int i = 0; i <= folded.length(); i++) {
+			boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+			if (wordChar && start < 0) {
+				start = i;
+			} else if (!wordChar && start >= 0) {
+				tokens.add(folded.substring(start, i));
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	/* Removes the item from its bucket and reports whether the bucket is now gone */
+	private static boolean removeFrom(Map<String, List<Item>> index, String key, Item item) {
+		List<Item> bucket = index.get(key);
+		if (bucket != null && bucket.removeIf(e -> e == item) && bucket.isEmpty()) {
+			index.remove(key);
+			return true;
+		}
+		return false;
+	}
+}
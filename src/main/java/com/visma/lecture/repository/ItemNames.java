@@ -0,0 +1,50 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One copy of every item name and its producer and product name per repository, so the items it loads or reads
+ * share their strings instead of holding a copy per row. Thread-safe, reads from several threads may add names.
+ */
+final class ItemNames {
+
+	/* The first item seen with each name, whose name, producer and product name are the copies handed out */
+	private final ConcurrentHashMap<String, Item> firstByName = new ConcurrentHashMap<>();
+
+	/**
+	 * An item like the given one, with the shared copies of its name and name parts.
+	 */
+	Item canonical(Item item) {
+		if (item.getItemName() == null) {
+			return item;
+		}
+		Item first = firstByName.putIfAbsent(item.getItemName(), item);
+		return first == null || first == item ? item : copy(item.getItemID(), first, item.getItemLocation(), item.getItemType(), item.getStock());
+	}
+
+	/**
+	 * A new item with the shared copies of name and its parts.
+	 */
+	Item item(Integer itemID, String name, ItemLocation location, ItemType type, Integer stock) {
+		if (name == null) {
+			return new Item(itemID, null, location, type, stock);
+		}
+		Item first = firstByName.get(name);
+		if (first == null) {
+			Item item = new Item(itemID, name, location, type, stock);
+			first = firstByName.putIfAbsent(name, item);
+			if (first == null) {
+				return item;
+			}
+		}
+		return copy(itemID, first, location, type, stock);
+	}
+
+	private static Item copy(Integer itemID, Item named, ItemLocation location, ItemType type, Integer stock) {
+		return new Item(itemID, named.getItemName(), named.getProducer(), named.getProductName(), location, type, stock);
+	}
+}
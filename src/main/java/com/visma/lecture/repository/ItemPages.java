@@ -0,0 +1,200 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Paging and name matching helpers shared by the repository backends.
+ */
+final class ItemPages {
+
+	private ItemPages() {
+	}
+
+	/**
+	 * Reads one page from buckets that are already in order, stopping as soon as the page is full.
+	 */
+	static List<Item> page(Collection<List<Item>> buckets, int offset, int limit) {
+		List<Item> page = new ArrayList<>(Math.min(limit, 1024));
+		int skipped = 0;
+		for (List<Item> bucket : buckets) {
+			if (skipped + bucket.size() <= offset) {
+				skipped += bucket.size();
+				continue;
+			}
+			for (int i = Math.max(0, offset - skipped); i < bucket.size(); i++) {
+				if (page.size() == limit) {
+					return page;
+				}
+				page.add(bucket.get(i));
+			}
+			skipped += bucket.size();
+			if (page.size() == limit) {
+				return page;
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Keyset page for backends without an id index, with the same rules as ShopRepository.findItemsAfter.
+	 */
+	static List<Item> after(List<Item> items, int afterId, int limit) {
+		List<Item> following = items.stream()
+				.filter(item -> item.getItemID() > afterId)
+				.sorted(Comparator.comparingInt(Item::getItemID))
+				.collect(Collectors.toList());
+		int end = Math.min(limit, following.size());
+		while (end > 0 && end < following.size()
+				&& following.get(end).getItemID().equals(following.get(end - 1).getItemID())) {
+			end++;
+		}
+		return new ArrayList<>(following.subList(0, end));
+	}
+
+	/**
+	 * Case-folds a name the way String.regionMatches(true, ...) compares characters,
+	 * so a prefix of the folded name matches exactly when the name starts with the prefix ignoring case.
+	 */
+	static String fold(String name) {
+		char[] chars = name.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * The first limit items whose name starts with prefix ignoring case, ordered by folded name, for backends without
+	 * a prefix index.
+	 */
+	static List<Item> startingWith(List<Item> items, Function<Item, String> name, String prefix, int limit) {
+		return items.stream()
+				.filter(item -> name.apply(item).regionMatches(true, 0, prefix, 0, prefix.length()))
+				.sorted(Comparator.comparing(item -> fold(name.apply(item))))
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * One empty list per start and end pair of bounds, for the items of that range.
+	 */
+	static List<List<Item>> ranges(int[] bounds) {
+		if (bounds.length % 2 != 0) {
+			throw new IllegalArgumentException("Ranges must be given as start and end pairs.");
+		}
+		List<List<Item>> ranges = new ArrayList<>(bounds.length / 2);
+		for (int i = 0; i < bounds.length; i += 2) {
+			ranges.add(new ArrayList<>());
+		}
+		return ranges;
+	}
+
+	/**
+	 * Numbers of the ranges of bounds that are not empty, ordered by their start.
+	 */
+	static Integer[] rangesByStart(int[] bounds) {
+		return IntStream.range(0, bounds.length / 2)
+				.filter(range -> bounds[2 * range] <= bounds[2 * range + 1])
+				.boxed()
+				.sorted(Comparator.comparingInt(range -> bounds[2 * range]))
+				.toArray(Integer[]::new);
+	}
+
+	/**
+	 * The items of each range of bounds ordered by itemID, from one scan, for backends without an id index.
+	 */
+	static List<List<Item>> inRanges(List<Item> items, int[] bounds) {
+		List<List<Item>> found = ranges(bounds);
+		for (Item item : items) {
+			int id = item.getItemID();
+			for (int range = 0; range < found.size(); range++) {
+				if (bounds[2 * range] <= id && id <= bounds[2 * range + 1]) {
+					found.get(range).add(item);
+				}
+			}
+		}
+		found.forEach(range -> range.sort(Comparator.comparingInt(Item::getItemID)));
+		return found;
+	}
+
+	/**
+	 * Runs a query as a scan, for backends without the indexes ShopRepository.findItems plans over.
+	 */
+	static List<Item> query(List<Item> items, ItemQuery query) {
+		return items.stream()
+				.filter(query::matches)
+				.sorted(query.getOrder().comparator())
+				.limit(query.getLimit())
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Merges lists that are each in order into one list in that order, skipping the first offset items and keeping
+	 * at most limit. Items that compare equal keep the order of the lists they come from.
+	 */
+	static List<Item> merge(List<List<Item>> sorted, Comparator<Item> order, int offset, int limit) {
+		List<Item> merged = new ArrayList<>(Math.min(limit, 1024));
+		int[] next = new int[sorted.size()];
+		int skipped = 0;
+		while (merged.size() < limit) {
+			int best = -1;
+			for (int i = 0; i < next.length; i++) {
+				if (next[i] < sorted.get(i).size()
+						&& (best < 0 || order.compare(sorted.get(i).get(next[i]), sorted.get(best).get(next[best])) < 0)) {
+					best = i;
+				}
+			}
+			if (best < 0) {
+				break;
+			}
+			Item item = sorted.get(best).get(next[best]++);
+			if (skipped < offset) {
+				skipped++;
+			} else {
+				merged.add(item);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Distinct items in order of first appearance, for backends without an interning table.
+	 */
+	static List<Item> distinct(List<Item> items) {
+		return items.stream()
+				.distinct()
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Number of the items equal to item, for backends without an interning table.
+	 */
+	static int copies(List<Item> items, Item item) {
+		int count = 0;
+		for (Item candidate : items) {
+			if (candidate.equals(item)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Sorts unordered items and cuts one page out of them, for backends without an ordered index.
+	 */
+	static List<Item> sorted(List<Item> items, Comparator<Item> order, int offset, int limit) {
+		return items.stream()
+				.sorted(order)
+				.skip(offset)
+				.limit(limit)
+				.collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,228 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.Comparator;
+
+/**
+ * Query over the catalog, every criterion that is set has to match.
+ *
+ * Build one with ItemQuery.builder() and run it with ShopRepository.findItems(query), which picks the most
+ * selective index for it. Results are ordered by itemID unless another order is given.
+ * Items that are equal in the order of the query are ordered by itemID, name, location, type and stock,
+ * so the result does not depend on the index the query was answered from.
+ */
+public final class ItemQuery {
+
+	private static final Comparator<Item> TIE_BREAK = Comparator.comparingInt(Item::getItemID)
+			.thenComparing(Item::getItemName)
+			.thenComparing(Item::getItemLocation)
+			.thenComparing(Item::getItemType)
+			.thenComparingInt(Item::getStock);
+
+	public enum Order {
+		ITEM_ID(Comparator.comparingInt(Item::getItemID)),
+		PRODUCER(Comparator.comparing(Item::getItemName)),
+		PRODUCT_NAME(Comparator.comparing(Item::getProductName)),
+		STOCK_HIGH_TO_LOW(Comparator.comparingInt(Item::getStock).reversed()),
+		STOCK_LOW_TO_HIGH(Comparator.comparingInt(Item::getStock));
+
+		private final Comparator<Item> comparator;
+
+		Order(Comparator<Item> comparator) {
+			this.comparator = comparator.thenComparing(TIE_BREAK);
+		}
+
+		public Comparator<Item> comparator() {
+			return comparator;
+		}
+	}
+
+	private final int minId;
+	private final int maxId;
+	private final ItemLocation location;
+	private final ItemType type;
+	private final String producer;
+	private final String namePrefix;
+	private final int minStock;
+	private final int maxStock;
+	private final Order order;
+	private final int limit;
+
+	private ItemQuery(Builder builder) {
+		this.minId = builder.minId;
+		this.maxId = builder.maxId;
+		this.location = builder.location;
+		this.type = builder.type;
+		this.producer = builder.producer;
+		this.namePrefix = builder.namePrefix;
+		this.minStock = builder.minStock;
+		this.maxStock = builder.maxStock;
+		this.order = builder.order;
+		this.limit = builder.limit;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Checks every criterion against the item, the order and limit are not part of it.
+	 */
+	public boolean matches(Item item) {
+		return item.getItemID() >= minId && item.getItemID() <= maxId
+				&& (location == null || location == item.getItemLocation())
+				&& (type == null || type == item.getItemType())
+				&& (producer == null || producer.equals(item.getProducer()))
+				&& (namePrefix == null || item.getProductName().regionMatches(true, 0, namePrefix, 0, namePrefix.length()))
+				&& item.getStock() >= minStock && item.getStock() <= maxStock;
+	}
+
+	public boolean hasIdRange() {
+		return minId != Integer.MIN_VALUE || maxId != Integer.MAX_VALUE;
+	}
+
+	public boolean hasStockRange() {
+		return minStock != Integer.MIN_VALUE || maxStock != Integer.MAX_VALUE;
+	}
+
+	public int getMinId() {
+		return minId;
+	}
+
+	public int getMaxId() {
+		return maxId;
+	}
+
+	public ItemLocation getLocation() {
+		return location;
+	}
+
+	public ItemType getType() {
+		return type;
+	}
+
+	public String getProducer() {
+		return producer;
+	}
+
+	public String getNamePrefix() {
+		return namePrefix;
+	}
+
+	public int getMinStock() {
+		return minStock;
+	}
+
+	public int getMaxStock() {
+		return maxStock;
+	}
+
+	public Order getOrder() {
+		return order;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public static final class Builder {
+
+		private int minId = Integer.MIN_VALUE;
+		private int maxId = Integer.MAX_VALUE;
+		private ItemLocation location;
+		private ItemType type;
+		private String producer;
+		private String namePrefix;
+		private int minStock = Integer.MIN_VALUE;
+		private int maxStock = Integer.MAX_VALUE;
+		private Order order = Order.ITEM_ID;
+		private int limit = Integer.MAX_VALUE;
+
+		private Builder() {
+		}
+
+		/**
+		 * Items with start <= itemID <= end.
+		 */
+		public Builder idRange(int start, int end) {
+			this.minId = start;
+			this.maxId = end;
+			return this;
+		}
+
+		public Builder location(ItemLocation location) {
+			this.location = location;
+			return this;
+		}
+
+		public Builder type(ItemType type) {
+			this.type = type;
+			return this;
+		}
+
+		/**
+		 * Items of the producer, given as stored (eg HUGO_BOSS).
+		 */
+		public Builder producer(String producer) {
+			this.producer = producer;
+			return this;
+		}
+
+		/**
+		 * Items with a product name starting with prefix, ignoring case.
+		 */
+		public Builder namePrefix(String namePrefix) {
+			this.namePrefix = namePrefix;
+			return this;
+		}
+
+		/**
+		 * Items with min <= stock <= max.
+		 */
+		public Builder stockRange(int min, int max) {
+			this.minStock = min;
+			this.maxStock = max;
+			return this;
+		}
+
+		/**
+		 * Items with more than stock in stock.
+		 */
+		public Builder stockAbove(int stock) {
+			return stock == Integer.MAX_VALUE ? stockRange(Integer.MAX_VALUE, Integer.MIN_VALUE) : stockRange(stock + 1, maxStock);
+		}
+
+		/**
+		 * Items with less than stock in stock.
+		 */
+		public Builder stockBelow(int stock) {
+			return stock == Integer.MIN_VALUE ? stockRange(Integer.MAX_VALUE, Integer.MIN_VALUE) : stockRange(minStock, stock - 1);
+		}
+
+		public Builder orderBy(Order order) {
+			if (order == null) {
+				throw new IllegalArgumentException("Order must not be null.");
+			}
+			this.order = order;
+			return this;
+		}
+
+		/**
+		 * Returns at most limit items, the first ones in the order of the query.
+		 */
+		public Builder limit(int limit) {
+			if (limit < 0) {
+				throw new IllegalArgumentException("Limit must not be negative.");
+			}
+			this.limit = limit;
+			return this;
+		}
+
+		public ItemQuery build() {
+			return new ItemQuery(this);
+		}
+	}
+}
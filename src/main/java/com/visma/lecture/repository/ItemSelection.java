@@ -0,0 +1,72 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of items of one repository, held as a bitmap of their rows.
+ *
+ * Get one from the select methods of ShopRepository and combine it with and, or and andNot, which work on the
+ * bitmaps and never build a list of items. Only toList() reads items, in the order they were added to the repository.
+ * Selections of the same repository can be combined until it compacts its rows, which can happen on a delete.
+ */
+public final class ItemSelection {
+
+	private final List<Item> rows;
+	private final ItemBitmap bits;
+
+	ItemSelection(List<Item> rows, ItemBitmap bits) {
+		this.rows = rows;
+		this.bits = bits;
+	}
+
+	/**
+	 * Items in both selections.
+	 */
+	public ItemSelection and(ItemSelection other) {
+		return new ItemSelection(rows, bits.and(compatible(other).bits));
+	}
+
+	/**
+	 * Items in either selection, each item once.
+	 */
+	public ItemSelection or(ItemSelection other) {
+		return new ItemSelection(rows, bits.or(compatible(other).bits));
+	}
+
+	/**
+	 * Items in this selection and not in the other one.
+	 */
+	public ItemSelection andNot(ItemSelection other) {
+		return new ItemSelection(rows, bits.andNot(compatible(other).bits));
+	}
+
+	public int size() {
+		return bits.cardinality();
+	}
+
+	public boolean isEmpty() {
+		return bits.isEmpty();
+	}
+
+	public List<Item> toList() {
+		List<Item> list = new ArrayList<>();
+		bits.forEach(row -> {
+			Item item = rows.get(row);
+			if (item != null) {
+				list.add(item);
+			}
+		});
+		return list;
+	}
+
+	private ItemSelection compatible(ItemSelection other) {
+		if (other.rows != rows) {
+			throw new IllegalArgumentException("Selections of different repositories, or taken before and after "
+					+ "a compaction, can not be combined.");
+		}
+		return other;
+	}
+}
@@ -0,0 +1,461 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.database.ItemFile;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static com.visma.lecture.Validators.Validator.validateOutputItem;
+
+/**
+ * Repository class for shop backed by a memory-mapped ItemFile.
+ *
+ * The catalog stays in the file mapping, nothing is loaded onto the heap when it is opened.
+ * Queries scan the mapped records and only create Item objects for the rows they return, decoding the name
+ * again on every read. Lookups by id go through an index of the first live row of each id.
+ * Creates append a record, deletes mark records as deleted in place, call flush() to force them to disk.
+ */
+public class MappedShopRepository extends ShopRepository {
+
+	private final ItemFile file;
+
+	/* Rows that are not deleted, built on demand and dropped on every write */
+	private int[] liveRows;
+
+	/* First live row of each itemID, built on demand and dropped together with liveRows */
+	private Map<Integer, Integer> rowById;
+
+	/* Bitmap indexes for the select methods, dropped together with liveRows */
+	private ItemBitmapIndex selections;
+
+	public MappedShopRepository(ItemFile file) {
+		super(new ArrayList<>());
+		this.file = file;
+	}
+
+	@Override
+	public Item findItemById(Integer id) {
+		Integer row = id == null ? null : rowById().get(id);
+		return row == null ? null : item(row);
+	}
+
+	@Override
+	public List<Item> findAllItems() {
+		return new Rows(liveRows());
+	}
+
+	@Override
+	public List<Item> findItemsInRange(int start, int end) {
+		return findAllItems().stream()
+				.filter(item -> item.getItemID() >= start && item.getItemID() <= end)
+				.sorted(Comparator.comparingInt(Item::getItemID))
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		return ItemPages.inRanges(findAllItems(), bounds);
+	}
+
+	@Override
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		return ItemPages.after(findAllItems(), afterId, limit);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		if (location == null) {
+			return Collections.emptyList();
+		}
+		int[] rows = new int[file.size()];
+		int count = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.getItemLocation(row) == location) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerType(ItemType type) {
+		if (type == null) {
+			return Collections.emptyList();
+		}
+		int[] rows = new int[file.size()];
+		int count = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.getItemType(row) == type) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		if (location == null || type == null) {
+			return Collections.emptyList();
+		}
+		int[] rows = new int[file.size()];
+		int count = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.getItemLocation(row) == location && file.getItemType(row) == type) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public List<Item> findItemsPerProducer(String producer) {
+		if (producer == null || producer.indexOf(' ') >= 0) {
+			return Collections.emptyList();
+		}
+		byte[] bytes = producer.getBytes(StandardCharsets.UTF_8);
+		int[] rows = new int[file.size()];
+		int count = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.hasProducer(row, bytes)) {
+				rows[count++] = row;
+			}
+		}
+		return new Rows(Arrays.copyOf(rows, count));
+	}
+
+	@Override
+	public Set<String> findProducers() {
+		Set<String> producers = new LinkedHashSet<>();
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row)) {
+				producers.add(item(row).getProducer());
+			}
+		}
+		return Collections.unmodifiableSet(producers);
+	}
+
+	@Override
+	public List<Item> findItems(ItemQuery query) {
+		return ItemPages.query(findAllItems(), query);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return ItemPages.startingWith(findAllItems(), Item::getProductName, prefix, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return ItemPages.startingWith(findAllItems(), Item::getProductName, prefix, limit);
+	}
+
+	@Override
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return ItemPages.startingWith(findAllItems(), Item::getProducer, prefix, Integer.MAX_VALUE);
+	}
+
+	/* No name index is kept, the text searches build a throwaway one, which costs a scan like any other query here */
+	@Override
+	public List<Item> findItemsWithNameContaining(String text) {
+		return new ItemNameIndex(findAllItems()).containing(text);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameToken(String token) {
+		return new ItemNameIndex(findAllItems()).withToken(token);
+	}
+
+	@Override
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return new ItemNameIndex(findAllItems()).matching(query, maxEdits);
+	}
+
+	@Override
+	public ItemSelection selectAll() {
+		return selections().all();
+	}
+
+	@Override
+	public ItemSelection selectLocation(ItemLocation location) {
+		return selections().location(location);
+	}
+
+	@Override
+	public ItemSelection selectType(ItemType type) {
+		return selections().type(type);
+	}
+
+	@Override
+	public ItemSelection selectProducer(String producer) {
+		return selections().producer(producer);
+	}
+
+	@Override
+	public ItemSelection selectStockBetween(int min, int max) {
+		return selections().stockBetween(min, max);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparing(Item::getItemName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparing(Item::getProductName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		return ItemPages.sorted(findAllItems(), Comparator.comparingInt(Item::getStock).reversed(), offset, limit);
+	}
+
+	@Override
+	public List<Item> findDistinctItems() {
+		return ItemPages.distinct(findAllItems());
+	}
+
+	@Override
+	public int countCopies(Item item) {
+		return item == null ? 0 : ItemPages.copies(findItemsInRange(item.getItemID(), item.getItemID()), item);
+	}
+
+	@Override
+	public int getTotalStock() {
+		int total = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row)) {
+				total += file.getStock(row);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		long total = 0;
+		int count = 0;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.getItemLocation(row) == location) {
+				total += file.getStock(row);
+				count++;
+			}
+		}
+		return count == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) total / count);
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		long[] totals = getStockTotalsPerType(type);
+		return totals[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) totals[0] / totals[1]);
+	}
+
+	@Override
+	long[] getStockTotalsPerType(ItemType type) {
+		long[] totals = new long[2];
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && file.getItemType(row) == type) {
+				totals[0] += file.getStock(row);
+				totals[1]++;
+			}
+		}
+		return totals;
+	}
+
+	@Override
+	public Item findItemWithMostInStock() {
+		int best = -1;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && (best < 0 || file.getStock(row) > file.getStock(best))) {
+				best = row;
+			}
+		}
+		return best < 0 ? null : item(best);
+	}
+
+	@Override
+	public Item findItemWithLeastInStock() {
+		int best = -1;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && (best < 0 || file.getStock(row) < file.getStock(best))) {
+				best = row;
+			}
+		}
+		return best < 0 ? null : item(best);
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		validateOutputItem(item);
+		file.append(item);
+		rowsChanged();
+		changed();
+		return true;
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		if (itemId == null) {
+			return false;
+		}
+		int id = itemId;
+		boolean deleted = deleteRows(rowId -> rowId == id);
+		if (deleted) {
+			rowsChanged();
+			changed();
+		}
+		return deleted;
+	}
+
+	/* The whole batch is checked against what a record can hold before the first record is written */
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		batch.forEach(ItemFile::validateStorable);
+		batch.forEach(file::append);
+		if (!batch.isEmpty()) {
+			rowsChanged();
+			changed();
+		}
+		return true;
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		Set<Integer> present = presentIds(batch.stream().filter(Objects::nonNull).map(Item::getItemID).collect(Collectors.toSet()));
+		Map<Integer, Item> latest = ItemBatches.latestById(batch, present::contains);
+		if (latest.isEmpty()) {
+			return true;
+		}
+		latest.values().forEach(ItemFile::validateStorable);
+		deleteRows(latest::containsKey);
+		latest.values().forEach(file::append);
+		rowsChanged();
+		changed();
+		return true;
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		Set<Integer> doomed = new HashSet<>(itemIds);
+		boolean deleted = deleteRows(doomed::contains);
+		if (deleted) {
+			rowsChanged();
+			changed();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Forces created and deleted records to disk.
+	 */
+	public void flush() {
+		file.force();
+	}
+
+	/* Marks every live record whose id matches as deleted in one pass and reports whether any was */
+	private boolean deleteRows(IntPredicate deleted) {
+		boolean any = false;
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && deleted.test(file.getItemID(row))) {
+				file.delete(row);
+				any = true;
+			}
+		}
+		return any;
+	}
+
+	/* The ids of the set that a live record has, found in one pass */
+	private Set<Integer> presentIds(Set<Integer> wanted) {
+		Set<Integer> present = new HashSet<>();
+		for (int row = 0; row < file.size(); row++) {
+			if (!file.isDeleted(row) && wanted.contains(file.getItemID(row))) {
+				present.add(file.getItemID(row));
+			}
+		}
+		return present;
+	}
+
+	private ItemBitmapIndex selections() {
+		if (selections == null) {
+			selections = new ItemBitmapIndex(findAllItems());
+		}
+		return selections;
+	}
+
+	private void rowsChanged() {
+		liveRows = null;
+		rowById = null;
+		selections = null;
+	}
+
+	private Map<Integer, Integer> rowById() {
+		if (rowById == null) {
+			Map<Integer, Integer> rows = new HashMap<>();
+			for (int row : liveRows()) {
+				rows.putIfAbsent(file.getItemID(row), row);
+			}
+			rowById = rows;
+		}
+		return rowById;
+	}
+
+	private int[] liveRows() {
+		if (liveRows == null) {
+			int[] rows = new int[file.size()];
+			int count = 0;
+			for (int row = 0; row < file.size(); row++) {
+				if (!file.isDeleted(row)) {
+					rows[count++] = row;
+				}
+			}
+			liveRows = Arrays.copyOf(rows, count);
+		}
+		return liveRows;
+	}
+
+	private Item item(int row) {
+		return new Item(file.getItemID(row), file.getItemName(row), file.getItemLocation(row), file.getItemType(row), file.getStock(row));
+	}
+
+	/**
+	 * Read-only list over a set of rows, items are read from the mapping on get.
+	 * A view taken before a create or delete must not be used after it.
+	 */
+	private class Rows extends AbstractList<Item> implements RandomAccess {
+
+		private final int[] rows;
+
+		private Rows(int[] rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public Item get(int index) {
+			return item(rows[index]);
+		}
+
+		@Override
+		public int size() {
+			return rows.length;
+		}
+	}
+}
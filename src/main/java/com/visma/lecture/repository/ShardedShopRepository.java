@@ -0,0 +1,520 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalDouble;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import static com.visma.lecture.Validators.Validator.validateInputItem;
+import static com.visma.lecture.Validators.Validator.validateInputLocation;
+import static com.visma.lecture.Validators.Validator.validateOutputItem;
+
+/**
+ * Thread-safe repository split into one shard per location, each shard a ConcurrentShopRepository with its own
+ * write lock, snapshot and indexes.
+ *
+ * Queries for one location go to its shard only, writes to different locations do not wait for each other and
+ * a write copies only the shard it changes. Queries over all locations are sent to every shard and the answers merged:
+ * lists in order are merged in that order, pages and top k are taken after the merge, sums and averages are combined
+ * from the per-shard sums and counts. With a pool the shards are queried in parallel, without one in turn.
+ *
+ * Unordered results come shard by shard in ItemLocation order and in the order items were added within a shard,
+ * so they are not in the order of a single ShopRepository, and ties go to the first shard.
+ * A write is atomic within its shard. One that spans shards, like an update that moves an item to another location
+ * or a batch for several locations, is applied shard by shard and a concurrent reader can see part of it.
+ */
+public class ShardedShopRepository extends ShopRepository {
+
+	private static final ItemLocation[] LOCATIONS = ItemLocation.values();
+
+	private final Map<ItemLocation, ShopRepository> shards = new EnumMap<>(ItemLocation.class);
+	private final ForkJoinPool pool;
+
+	/**
+	 * The bitmap index over all shards for the select methods, rebuilt when the version has moved on.
+	 */
+	private volatile Selections selections;
+
+	/* Held while the index is rebuilt, so readers that find it out of date build it once between them */
+	private final Object selectionsLock = new Object();
+
+	public ShardedShopRepository(List<Item> items) {
+		this(items, null);
+	}
+
+	/**
+	 * Queries the shards in parallel on the pool, or in the calling thread when pool is null.
+	 */
+	public ShardedShopRepository(List<Item> items, ForkJoinPool pool) {
+		super(new ArrayList<>());
+		this.pool = pool;
+		Map<ItemLocation, List<Item>> perLocation = perLocation(items);
+		for (ItemLocation location : LOCATIONS) {
+			shards.put(location, new ConcurrentShopRepository(perLocation.getOrDefault(location, new ArrayList<>())));
+		}
+	}
+
+	private ShardedShopRepository(Map<ItemLocation, ShopRepository> shards, ForkJoinPool pool) {
+		super(new ArrayList<>());
+		this.pool = pool;
+		this.shards.putAll(shards);
+	}
+
+	/**
+	 * The current copy of every shard. Each shard is taken at one version, a write that spans shards and runs
+	 * at the same time can be in some of them and not in others.
+	 */
+	@Override
+	public ShopRepository snapshot() {
+		Map<ItemLocation, ShopRepository> snapshots = new EnumMap<>(ItemLocation.class);
+		shards.forEach((location, shard) -> snapshots.put(location, shard.snapshot()));
+		return new ShardedShopRepository(snapshots, pool);
+	}
+
+	@Override
+	public Item findItemById(Integer id) {
+		for (ShopRepository shard : shards.values()) {
+			Item item = shard.findItemById(id);
+			if (item != null) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public List<Item> findAllItems() {
+		return new Concatenation(gather(ShopRepository::findAllItems));
+	}
+
+	@Override
+	public List<Item> findItemsInRange(int start, int end) {
+		return ItemPages.merge(gather(shard -> shard.findItemsInRange(start, end)),
+				Comparator.comparingInt(Item::getItemID), 0, Integer.MAX_VALUE);
+	}
+
+	/* Each shard walks its id index once for all ranges, the shard lists of a range are merged by id */
+	@Override
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		List<List<List<Item>>> perShard = gather(shard -> shard.findItemsPerRange(bounds));
+		List<List<Item>> found = ItemPages.ranges(bounds);
+		for (int range = 0; range < found.size(); range++) {
+			List<List<Item>> shardLists = new ArrayList<>(perShard.size());
+			for (List<List<Item>> shardRanges : perShard) {
+				shardLists.add(shardRanges.get(range));
+			}
+			found.get(range).addAll(ItemPages.merge(shardLists, Comparator.comparingInt(Item::getItemID), 0, Integer.MAX_VALUE));
+		}
+		return found;
+	}
+
+	/* A shard page never splits an id, so the shard pages together hold every item of the last id of the merged page */
+	@Override
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		return ItemPages.after(new Concatenation(gather(shard -> shard.findItemsAfter(afterId, limit))), afterId, limit);
+	}
+
+	@Override
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		return location == null ? Collections.emptyList() : shards.get(location).findItemsPerLocation(location);
+	}
+
+	@Override
+	public List<Item> findItemsPerType(ItemType type) {
+		return new Concatenation(gather(shard -> shard.findItemsPerType(type)));
+	}
+
+	@Override
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		return location == null ? Collections.emptyList() : shards.get(location).findItemsPerLocationAndType(location, type);
+	}
+
+	@Override
+	public List<Item> findItemsPerProducer(String producer) {
+		return new Concatenation(gather(shard -> shard.findItemsPerProducer(producer)));
+	}
+
+	@Override
+	public Set<String> findProducers() {
+		Set<String> producers = new LinkedHashSet<>();
+		gather(ShopRepository::findProducers).forEach(producers::addAll);
+		return Collections.unmodifiableSet(producers);
+	}
+
+	@Override
+	public List<Item> findItems(ItemQuery query) {
+		if (query.getLocation() != null) {
+			return shards.get(query.getLocation()).findItems(query);
+		}
+		return ItemPages.merge(gather(shard -> shard.findItems(query)), query.getOrder().comparator(), 0, query.getLimit());
+	}
+
+	@Override
+	public ItemSelection selectAll() {
+		return selections().all();
+	}
+
+	@Override
+	public ItemSelection selectLocation(ItemLocation location) {
+		return selections().location(location);
+	}
+
+	@Override
+	public ItemSelection selectType(ItemType type) {
+		return selections().type(type);
+	}
+
+	@Override
+	public ItemSelection selectProducer(String producer) {
+		return selections().producer(producer);
+	}
+
+	@Override
+	public ItemSelection selectStockBetween(int min, int max) {
+		return selections().stockBetween(min, max);
+	}
+
+	/* All three from one index, a later call can get an index rebuilt for a newer version */
+	@Override
+	public List<ItemSelection> selectLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		ItemBitmapIndex index = selections();
+		return Arrays.asList(index.location(location), index.type(type), index.producer(producer));
+	}
+
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return ItemPages.merge(gather(shard -> shard.findItemsWithProductNameStartingWith(prefix)),
+				Comparator.comparing(item -> ItemPages.fold(item.getProductName())), 0, Integer.MAX_VALUE);
+	}
+
+	/* The first limit of the whole catalog are among the first limit of each shard */
+	@Override
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return ItemPages.merge(gather(shard -> shard.findItemsWithProductNameStartingWith(prefix, limit)),
+				Comparator.comparing(item -> ItemPages.fold(item.getProductName())), 0, limit);
+	}
+
+	@Override
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return ItemPages.merge(gather(shard -> shard.findItemsWithProducerStartingWith(prefix)),
+				Comparator.comparing(item -> ItemPages.fold(item.getProducer())), 0, Integer.MAX_VALUE);
+	}
+
+	/* The ranks of the text searches are not part of the items, searching the matches of all shards again ranks them together */
+	@Override
+	public List<Item> findItemsWithNameContaining(String text) {
+		return new ItemNameIndex(new Concatenation(gather(shard -> shard.findItemsWithNameContaining(text)))).containing(text);
+	}
+
+	@Override
+	public List<Item> findItemsWithNameToken(String token) {
+		return new ArrayList<>(new Concatenation(gather(shard -> shard.findItemsWithNameToken(token))));
+	}
+
+	@Override
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return new ItemNameIndex(new Concatenation(gather(shard -> shard.findItemsMatching(query, maxEdits)))).matching(query, maxEdits);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		int end = saturatedEnd(offset, limit);
+		return ItemPages.merge(gather(shard -> shard.findItemsSortedByProducer(0, end)),
+				Comparator.comparing(Item::getItemName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		int end = saturatedEnd(offset, limit);
+		return ItemPages.merge(gather(shard -> shard.findItemsSortedByProductName(0, end)),
+				Comparator.comparing(Item::getProductName), offset, limit);
+	}
+
+	@Override
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		int end = saturatedEnd(offset, limit);
+		return ItemPages.merge(gather(shard -> shard.findItemsSortedByStock(0, end)),
+				Comparator.comparingInt(Item::getStock).reversed(), offset, limit);
+	}
+
+	/* Equal items share their location, so no item is distinct in one shard and a duplicate in another */
+	@Override
+	public List<Item> findDistinctItems() {
+		return new Concatenation(gather(ShopRepository::findDistinctItems));
+	}
+
+	@Override
+	public int countCopies(Item item) {
+		return item == null || item.getItemLocation() == null ? 0 : shards.get(item.getItemLocation()).countCopies(item);
+	}
+
+	@Override
+	public int getTotalStock() {
+		int total = 0;
+		for (ShopRepository shard : shards.values()) {
+			total += shard.getTotalStock();
+		}
+		return total;
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		return location == null ? OptionalDouble.empty() : shards.get(location).getAverageStockPerLocation(location);
+	}
+
+	@Override
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		long[] totals = getStockTotalsPerType(type);
+		return totals[1] == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) totals[0] / totals[1]);
+	}
+
+	/* Each shard gives its exact sum and count from one snapshot, so they always belong together */
+	@Override
+	long[] getStockTotalsPerType(ItemType type) {
+		long[] totals = new long[2];
+		for (ShopRepository shard : shards.values()) {
+			long[] shardTotals = shard.getStockTotalsPerType(type);
+			totals[0] += shardTotals[0];
+			totals[1] += shardTotals[1];
+		}
+		return totals;
+	}
+
+	@Override
+	public Item findItemWithMostInStock() {
+		Item most = null;
+		for (ShopRepository shard : shards.values()) {
+			Item item = shard.findItemWithMostInStock();
+			if (item != null && (most == null || item.getStock() > most.getStock())) {
+				most = item;
+			}
+		}
+		return most;
+	}
+
+	@Override
+	public Item findItemWithLeastInStock() {
+		Item least = null;
+		for (ShopRepository shard : shards.values()) {
+			Item item = shard.findItemWithLeastInStock();
+			if (item != null && (least == null || item.getStock() < least.getStock())) {
+				least = item;
+			}
+		}
+		return least;
+	}
+
+	@Override
+	public Boolean create(Item item) {
+		validateOutputItem(item);
+		validateInputLocation(item.getItemLocation());
+		Boolean created = shards.get(item.getItemLocation()).create(item);
+		changed();
+		return created;
+	}
+
+	/**
+	 * Replaces the items with the itemID of item, which must exist, and throws a NullPointerException like
+	 * ShopRepository.update when it does not. Within one location it is a single write to its shard, an item that
+	 * changes location is created in the new shard before it is deleted from the old one.
+	 */
+	@Override
+	public Boolean update(Item item) {
+		Objects.requireNonNull(findItemById(item.getItemID()));
+		validateInputItem(item);
+		ShopRepository target = shards.get(item.getItemLocation());
+		Boolean updated = target.findItemById(item.getItemID()) == null ? target.create(item) : target.update(item);
+		for (ShopRepository shard : shards.values()) {
+			if (shard != target) {
+				shard.delete(item.getItemID());
+			}
+		}
+		changed();
+		return updated;
+	}
+
+	@Override
+	public Boolean delete(Integer itemId) {
+		boolean deleted = false;
+		for (ShopRepository shard : shards.values()) {
+			deleted |= shard.delete(itemId);
+		}
+		if (deleted) {
+			changed();
+		}
+		return deleted;
+	}
+
+	/* Every item is validated before the first shard is written, each shard then takes its part as one batch */
+	@Override
+	public Boolean createAll(Collection<Item> batch) {
+		ItemBatches.validateAll(batch);
+		perLocation(batch).forEach((location, items) -> shards.get(location).createAll(items));
+		if (!batch.isEmpty()) {
+			changed();
+		}
+		return true;
+	}
+
+	@Override
+	public Boolean updateAll(Collection<Item> batch) {
+		Map<Integer, Item> latest = ItemBatches.latestById(batch, id -> findItemById(id) != null);
+		if (latest.isEmpty()) {
+			return true;
+		}
+		Map<ItemLocation, List<Item>> perLocation = perLocation(latest.values());
+		for (Map.Entry<ItemLocation, ShopRepository> entry : shards.entrySet()) {
+			ShopRepository shard = entry.getValue();
+			List<Item> updated = new ArrayList<>();
+			List<Item> moved = new ArrayList<>();
+			for (Item item : perLocation.getOrDefault(entry.getKey(), Collections.emptyList())) {
+				(shard.findItemById(item.getItemID()) == null ? moved : updated).add(item);
+			}
+			if (!updated.isEmpty()) {
+				shard.updateAll(updated);
+			}
+			if (!moved.isEmpty()) {
+				shard.createAll(moved);
+			}
+		}
+		for (Map.Entry<ItemLocation, ShopRepository> entry : shards.entrySet()) {
+			List<Integer> left = new ArrayList<>();
+			for (Item item : latest.values()) {
+				if (item.getItemLocation() != entry.getKey()) {
+					left.add(item.getItemID());
+				}
+			}
+			entry.getValue().deleteAll(left);
+		}
+		changed();
+		return true;
+	}
+
+	@Override
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		boolean deleted = false;
+		for (ShopRepository shard : shards.values()) {
+			deleted |= shard.deleteAll(itemIds);
+		}
+		if (deleted) {
+			changed();
+		}
+		return deleted;
+	}
+
+	/**
+	 * Runs the query on every shard, in parallel on the pool if there is one, and returns the answers in shard order.
+	 */
+	private <R> List<R> gather(Function<ShopRepository, R> query) {
+		List<R> results = new ArrayList<>(shards.size());
+		if (pool == null) {
+			for (ShopRepository shard : shards.values()) {
+				results.add(query.apply(shard));
+			}
+			return results;
+		}
+		List<ForkJoinTask<R>> tasks = new ArrayList<>(shards.size());
+		for (ShopRepository shard : shards.values()) {
+			tasks.add(pool.submit(() -> query.apply(shard)));
+		}
+		for (ForkJoinTask<R> task : tasks) {
+			results.add(task.join());
+		}
+		return results;
+	}
+
+	/* An index built for a newer version than the one read here is just as good, it holds every write before it */
+	private ItemBitmapIndex selections() {
+		Selections current = selections;
+		if (current != null && current.version >= getVersion()) {
+			return current.index;
+		}
+		synchronized (selectionsLock) {
+			long version = getVersion();
+			current = selections;
+			if (current == null || current.version < version) {
+				current = new Selections(version, new ItemBitmapIndex(findAllItems()));
+				selections = current;
+			}
+			return current.index;
+		}
+	}
+
+	private static Map<ItemLocation, List<Item>> perLocation(Collection<Item> items) {
+		Map<ItemLocation, List<Item>> perLocation = new EnumMap<>(ItemLocation.class);
+		for (Item item : items) {
+			validateInputLocation(item.getItemLocation());
+			perLocation.computeIfAbsent(item.getItemLocation(), l -> new ArrayList<>()).add(item);
+		}
+		return perLocation;
+	}
+
+	/* Every shard has to give its first offset + limit items, the page is cut out after the merge */
+	private static int saturatedEnd(int offset, int limit) {
+		return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+	}
+
+	private static final class Selections {
+
+		private final long version;
+		private final ItemBitmapIndex index;
+
+		private Selections(long version, ItemBitmapIndex index) {
+			this.version = version;
+			this.index = index;
+		}
+	}
+
+	/**
+	 * Read-only list of the shard lists one after the other, without copying them.
+	 */
+	private static final class Concatenation extends AbstractList<Item> implements RandomAccess {
+
+		private final List<List<Item>> parts;
+		private final int[] ends;
+
+		private Concatenation(List<List<Item>> parts) {
+			this.parts = parts;
+			this.ends = new int[parts.size()];
+			int end = 0;
+			for (int i = 0; i < ends.length; i++) {
+				end += parts.get(i).size();
+				ends[i] = end;
+			}
+		}
+
+		@Override
+		public Item get(int index) {
+			if (index < 0 || index >= size()) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			int part = 0;
+			while (ends[part] <= index) {
+				part++;
+			}
+			return parts.get(part).get(part == 0 ? index : index - ends[part - 1]);
+		}
+
+		@Override
+		public int size() {
+			return ends.length == 0 ? 0 : ends[ends.length - 1];
+		}
+	}
+}
@@ -6,10 +6,12 @@ import com.visma.lecture.common.domain.support.ItemType;
 import static com.visma.lecture.Validators.Validator.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 /**
  * Repository class for shop
+ * Not thread-safe, use ConcurrentShopRepository when it is shared between threads.
  *
  * @author Leo-Andreas Ervik
  */
@@ -17,58 +19,546 @@ public class ShopRepository {
 
 	private final List<Item> items;
 
+	/**
+	 * Primary-key index, maps an itemID to the first item in the list with that id.
+	 */
+	private final Map<Integer, Item> itemsById = new HashMap<>();
+
+	/**
+	 * Items ordered by itemID for range queries, items sharing an id are kept in list order.
+	 */
+	private final NavigableMap<Integer, List<Item>> itemsByIdRange = new TreeMap<>();
+
+	/**
+	 * Secondary indexes, one bucket per enum value. Buckets keep the order of the item list.
+	 */
+	private final Map<ItemLocation, List<Item>> itemsByLocation = new EnumMap<>(ItemLocation.class);
+	private final Map<ItemType, List<Item>> itemsByType = new EnumMap<>(ItemType.class);
+	private final Map<ItemLocation, Map<ItemType, List<Item>>> itemsByLocationAndType = new EnumMap<>(ItemLocation.class);
+	private final Map<String, List<Item>> itemsByProducer = new HashMap<>();
+
+	/**
+	 * Ordered indexes for the sorted listings, by full item name (producer first) and by product name.
+	 */
+	private final NavigableMap<String, List<Item>> itemsByItemName = new TreeMap<>();
+	private final NavigableMap<String, List<Item>> itemsByProductName = new TreeMap<>();
+
+	/**
+	 * Prefix indexes, keyed by case-folded product name and producer so a prefix is a key range.
+	 */
+	private final NavigableMap<String, List<Item>> itemsByFoldedProductName = new TreeMap<>();
+	private final NavigableMap<String, List<Item>> itemsByFoldedProducer = new TreeMap<>();
+
+	/**
+	 * Trigram and token index over the item names for text search, built on the first search so that
+	 * repositories that are never searched, like the copies ConcurrentShopRepository makes on every write, skip it.
+	 */
+	private volatile ItemNameIndex nameIndex;
+
+	/**
+	 * Bitmap indexes over row numbers for selections, built on the first select like the name index.
+	 */
+	private volatile ItemBitmapIndex bitmapIndex;
+
+	/**
+	 * Interning table: every distinct item once, as its first stored copy, with the number of stored copies equal to it,
+	 * and the distinct items in the order they were first added. Equal items share an id, so delete removes all copies at once.
+	 */
+	private final Map<Item, int[]> copies = new HashMap<>();
+	private final List<Item> distinctItems = new ArrayList<>();
+
+	/**
+	 * Stock aggregates for all items, per location and per type.
+	 */
+	private final StockStatistics stock = new StockStatistics();
+	private final Map<ItemLocation, StockStatistics> stockByLocation = new EnumMap<>(ItemLocation.class);
+	private final Map<ItemType, StockStatistics> stockByType = new EnumMap<>(ItemType.class);
+
+	/**
+	 * Counts the changes to the catalog, see getVersion().
+	 */
+	private final AtomicLong version = new AtomicLong();
+
 	public ShopRepository(List<Item> items) {
 		this.items = items;
+		items.forEach(this::index);
 	}
 
 	public Item findItemById(Integer id) {
-		return items.stream()
-				.filter(e -> e.getItemID().equals(id))
-				.findFirst()
-				.orElse(null);
+		return itemsById.get(id);
+	}
+
+	/**
+	 * Read-only view of all items, the zero-copy alternative to getAllItems().
+	 */
+	public List<Item> findAllItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * Items with start <= itemID <= end ordered by itemID, empty if there are none.
+	 */
+	public List<Item> findItemsInRange(int start, int end) {
+		if (start > end) {
+			return Collections.emptyList();
+		}
+		List<Item> list = new ArrayList<>();
+		itemsByIdRange.subMap(start, true, end, true).values().forEach(list::addAll);
+		return list;
+	}
+
+	/**
+	 * Keyset page of the items ordered by itemID, starting after the given id.
+	 * Pass the itemID of the last item of a page to get the next one. A page never splits the items sharing an itemID,
+	 * so it can hold more than limit items when ids are duplicated.
+	 */
+	public List<Item> findItemsAfter(int afterId, int limit) {
+		List<Item> page = new ArrayList<>(Math.min(limit, 1024));
+		for (List<Item> bucket : itemsByIdRange.tailMap(afterId, false).values()) {
+			if (page.size() >= limit) {
+				break;
+			}
+			page.addAll(bucket);
+		}
+		return page;
+	}
+
+	/**
+	 * Items of several id ranges in one list, given as start and end pairs.
+	 * Each range is ordered by itemID and the ranges follow each other in the order they are given.
+	 */
+	public List<Item> findItemsInRanges(int... bounds) {
+		List<Item> list = new ArrayList<>();
+		findItemsPerRange(bounds).forEach(list::addAll);
+		return list;
+	}
+
+	/**
+	 * The items of each range of findItemsInRanges in a list of its own, in the order the ranges are given.
+	 *
+	 * The ranges are walked in order of their start, ranges that overlap or touch, like 1-3 and 4-6, as one subMap
+	 * of the id index, so every id is read once however many ranges hold it.
+	 */
+	List<List<Item>> findItemsPerRange(int... bounds) {
+		List<List<Item>> found = ItemPages.ranges(bounds);
+		Integer[] byStart = ItemPages.rangesByStart(bounds);
+		int next = 0;
+		while (next < byStart.length) {
+			int first = next;
+			int from = bounds[2 * byStart[first]];
+			int to = bounds[2 * byStart[first] + 1];
+			while (++next < byStart.length && bounds[2 * byStart[next]] <= (long) to + 1) {
+				to = Math.max(to, bounds[2 * byStart[next] + 1]);
+			}
+			for (Map.Entry<Integer, List<Item>> entry : itemsByIdRange.subMap(from, true, to, true).entrySet()) {
+				int id = entry.getKey();
+				for (int i = first; i < next; i++) {
+					int range = byStart[i];
+					if (bounds[2 * range] <= id && id <= bounds[2 * range + 1]) {
+						found.get(range).addAll(entry.getValue());
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Read-only view of the location bucket, empty if no items are stored there.
+	 */
+	public List<Item> findItemsPerLocation(ItemLocation location) {
+		return view(itemsByLocation.get(location));
+	}
+
+	/**
+	 * Read-only view of the type bucket, empty if no items have that type.
+	 */
+	public List<Item> findItemsPerType(ItemType type) {
+		return view(itemsByType.get(type));
+	}
+
+	/**
+	 * Read-only view of the composite (location, type) bucket.
+	 */
+	public List<Item> findItemsPerLocationAndType(ItemLocation location, ItemType type) {
+		Map<ItemType, List<Item>> perType = itemsByLocationAndType.get(location);
+		return view(perType == null ? null : perType.get(type));
+	}
+
+	/**
+	 * Read-only view of the producer bucket, the producer must be given as stored (eg HUGO_BOSS).
+	 */
+	public List<Item> findItemsPerProducer(String producer) {
+		return view(itemsByProducer.get(producer));
+	}
+
+	/**
+	 * Read-only view of all producers currently in stock.
+	 */
+	public Set<String> findProducers() {
+		return Collections.unmodifiableSet(itemsByProducer.keySet());
+	}
+
+	/**
+	 * Items matching the query, in the order of the query and at most its limit.
+	 *
+	 * Every index that fits a criterion is a candidate source: the location, type, location and type,
+	 * producer, id range, name prefix and stock range buckets. The one with the fewest items is read and its items
+	 * are checked against the remaining criteria, which intersects it with the other criteria without building them.
+	 * When a limit is given and an index is already in the order of the query, walking that index until the limit
+	 * is reached is used instead if it is expected to read fewer items.
+	 */
+	public List<Item> findItems(ItemQuery query) {
+		int limit = query.getLimit();
+		if (limit == 0 || query.getMinId() > query.getMaxId() || query.getMinStock() > query.getMaxStock()) {
+			return new ArrayList<>();
+		}
+		ItemQuery.Order order = query.getOrder();
+		Source best = new Source(Collections.singletonList(items), items.size(), null);
+		if (query.getLocation() != null && query.getType() != null) {
+			best = best.or(bucketSource(itemsByLocationAndType.getOrDefault(query.getLocation(), Collections.emptyMap()).get(query.getType())));
+		}
+		if (query.getLocation() != null) {
+			best = best.or(bucketSource(itemsByLocation.get(query.getLocation())));
+		}
+		if (query.getType() != null) {
+			best = best.or(bucketSource(itemsByType.get(query.getType())));
+		}
+		if (query.getProducer() != null) {
+			best = best.or(bucketSource(itemsByProducer.get(query.getProducer())));
+		}
+		Source ordered = null;
+		if (query.hasIdRange()) {
+			long ids = (long) query.getMaxId() - query.getMinId() + 1;
+			Source idRange = new Source(itemsByIdRange.subMap(query.getMinId(), true, query.getMaxId(), true).values(),
+					(int) Math.min(items.size(), ids), ItemQuery.Order.ITEM_ID);
+			best = best.or(idRange);
+			ordered = idRange;
+		}
+		if (query.getNamePrefix() != null) {
+			String from = ItemPages.fold(query.getNamePrefix());
+			Collection<List<Item>> prefixRange = itemsByFoldedProductName.subMap(from, true, from + Character.MAX_VALUE, true).values();
+			best = best.or(new Source(prefixRange, count(prefixRange, best.estimate), null));
+		}
+		if (query.hasStockRange()) {
+			boolean highestFirst = order == ItemQuery.Order.STOCK_HIGH_TO_LOW;
+			Collection<List<Item>> stockRange = stock.getItemsWithStockBetween(query.getMinStock(), query.getMaxStock(), highestFirst);
+			Source source = new Source(stockRange, count(stockRange, best.estimate),
+					highestFirst ? ItemQuery.Order.STOCK_HIGH_TO_LOW : ItemQuery.Order.STOCK_LOW_TO_HIGH);
+			best = best.or(source);
+			if (order == source.order) {
+				ordered = source;
+			}
+		}
+
+		if (best.order == order) {
+			return walk(best, query);
+		}
+		if (limit < Integer.MAX_VALUE) {
+			if (ordered == null || ordered.order != order) {
+				ordered = orderedSource(order);
+			}
+			long expectedReads = (long) limit * ordered.estimate / Math.max(1, best.estimate);
+			if (expectedReads < best.estimate) {
+				return walk(ordered, query);
+			}
+		}
+		List<Item> list = new ArrayList<>();
+		for (List<Item> bucket : best.buckets) {
+			for (Item item : bucket) {
+				if (query.matches(item)) {
+					list.add(item);
+				}
+			}
+		}
+		list.sort(order.comparator());
+		return list.size() > limit ? new ArrayList<>(list.subList(0, limit)) : list;
+	}
+
+	/**
+	 * Every item as a selection, to combine with the other selections.
+	 */
+	public ItemSelection selectAll() {
+		return bitmapIndex().all();
+	}
+
+	/**
+	 * Items in the location as a selection.
+	 */
+	public ItemSelection selectLocation(ItemLocation location) {
+		return bitmapIndex().location(location);
+	}
+
+	/**
+	 * Items of the type as a selection.
+	 */
+	public ItemSelection selectType(ItemType type) {
+		return bitmapIndex().type(type);
+	}
+
+	/**
+	 * Items of the producer as a selection, the producer must be given as stored (eg HUGO_BOSS).
+	 */
+	public ItemSelection selectProducer(String producer) {
+		return bitmapIndex().producer(producer);
+	}
+
+	/**
+	 * Items with min <= stock <= max as a selection.
+	 */
+	public ItemSelection selectStockBetween(int min, int max) {
+		return bitmapIndex().stockBetween(min, max);
+	}
+
+	/**
+	 * Items in the location, of the type and of the producer as three selections, in that order, taken together
+	 * so they can always be combined with each other.
+	 */
+	public List<ItemSelection> selectLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		return Arrays.asList(selectLocation(location), selectType(type), selectProducer(producer));
+	}
+
+	/**
+	 * Items whose product name starts with prefix ignoring case, ordered by product name.
+	 */
+	public List<Item> findItemsWithProductNameStartingWith(String prefix) {
+		return prefixRange(itemsByFoldedProductName, prefix);
+	}
+
+	/**
+	 * The first limit items whose product name starts with prefix ignoring case, ordered by product name.
+	 */
+	public List<Item> findItemsWithProductNameStartingWith(String prefix, int limit) {
+		return ItemPages.page(prefixBuckets(itemsByFoldedProductName, prefix), 0, limit);
+	}
+
+	/**
+	 * Items whose producer starts with prefix ignoring case, ordered by producer.
+	 */
+	public List<Item> findItemsWithProducerStartingWith(String prefix) {
+		return prefixRange(itemsByFoldedProducer, prefix);
+	}
+
+	/**
+	 * Items whose name contains text anywhere ignoring case, earliest and closest matches first.
+	 */
+	public List<Item> findItemsWithNameContaining(String text) {
+		return nameIndex().containing(text);
+	}
+
+	/**
+	 * Items with token as a whole word of their name ignoring case, words are the runs of letters and digits.
+	 */
+	public List<Item> findItemsWithNameToken(String token) {
+		return nameIndex().withToken(token);
+	}
+
+	/**
+	 * Items with a name word within maxEdits typos (0 to 2) of every word of the query, closest matches first.
+	 */
+	public List<Item> findItemsMatching(String query, int maxEdits) {
+		return nameIndex().matching(query, maxEdits);
+	}
+
+	/**
+	 * One page of the items sorted by item name, which puts them in producer order.
+	 */
+	public List<Item> findItemsSortedByProducer(int offset, int limit) {
+		return ItemPages.page(itemsByItemName.values(), offset, limit);
+	}
+
+	/**
+	 * One page of the items sorted by product name.
+	 */
+	public List<Item> findItemsSortedByProductName(int offset, int limit) {
+		return ItemPages.page(itemsByProductName.values(), offset, limit);
+	}
+
+	/**
+	 * One page of the items sorted by stock from high to low, findItemsSortedByStock(0, k) is the top k.
+	 */
+	public List<Item> findItemsSortedByStock(int offset, int limit) {
+		return ItemPages.page(stock.getItemsByStockDescending(), offset, limit);
+	}
+
+	/**
+	 * Read-only view of the distinct items, each group of equal items once, in the order they were first added.
+	 * Kept up to date on every write, so it is the same as findAllItems() with distinct() but without hashing the items.
+	 */
+	public List<Item> findDistinctItems() {
+		return Collections.unmodifiableList(distinctItems);
+	}
+
+	/**
+	 * Number of stored items equal to item, 0 if there are none.
+	 */
+	public int countCopies(Item item) {
+		int[] count = copies.get(item);
+		return count == null ? 0 : count[0];
+	}
+
+	/**
+	 * Sum of stock over all items.
+	 */
+	public int getTotalStock() {
+		return (int) stock.getSum();
+	}
+
+	/**
+	 * Average stock of the items in a location, empty if no items are stored there.
+	 */
+	public OptionalDouble getAverageStockPerLocation(ItemLocation location) {
+		StockStatistics statistics = stockByLocation.get(location);
+		return statistics == null ? OptionalDouble.empty() : statistics.getAverage();
+	}
+
+	/**
+	 * Average stock of the items of a type, empty if there are none.
+	 */
+	public OptionalDouble getAverageStockPerType(ItemType type) {
+		StockStatistics statistics = stockByType.get(type);
+		return statistics == null ? OptionalDouble.empty() : statistics.getAverage();
+	}
+
+	/**
+	 * Sum and number of items of a type as {sum, count}, read together. ShardedShopRepository combines the exact
+	 * totals of its shards with it.
+	 */
+	long[] getStockTotalsPerType(ItemType type) {
+		StockStatistics statistics = stockByType.get(type);
+		return statistics == null ? new long[2] : new long[]{statistics.getSum(), statistics.getCount()};
+	}
+
+	/**
+	 * First item with the highest stock, null if the repository is empty.
+	 */
+	public Item findItemWithMostInStock() {
+		return stock.getMost();
+	}
+
+	/**
+	 * First item with the lowest stock, null if the repository is empty.
+	 */
+	public Item findItemWithLeastInStock() {
+		return stock.getLeast();
+	}
+
+	/**
+	 * Number of changes made to the catalog so far. It goes up after every create, update and delete that
+	 * changed something, so a result read after getVersion() returned v is never older than version v.
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * The catalog to read from when one answer takes several calls, so all of them see the same version.
+	 * A repository that is changed in place returns itself, a copy-on-write one its current copy. For reads only.
+	 */
+	public ShopRepository snapshot() {
+		return this;
 	}
 
 	public Boolean create(Item item) {
-		validateOutputItem(item);
-		return items.add(item);
+		validateInputItem(item);
+		index(item);
+		boolean added = items.add(item);
+		changed();
+		return added;
 	}
 
 	public Boolean update(Item item) {
 		Item i = findItemById(item.getItemID());
+		validateInputItem(item);
 		delete(i.getItemID());
 		return create(item);
 	}
 
 	public Boolean delete(Integer itemId) {
-		return items.removeIf(e -> e.getItemID().equals(itemId));
+		if (itemsById.remove(itemId) == null) {
+			return false;
+		}
+		Iterator<Item> iterator = items.iterator();
+		while (iterator.hasNext()) {
+			Item item = iterator.next();
+			if (item.getItemID().equals(itemId)) {
+				iterator.remove();
+				unindex(item);
+			}
+		}
+		if (bitmapIndex != null) {
+			bitmapIndex.compactIfSparse();
+		}
+		changed();
+		return true;
+	}
+
+	/**
+	 * Adds every item of the batch, in order. All of them are validated before the first one is added,
+	 * so either the whole batch is added or none of it.
+	 */
+	public Boolean createAll(Collection<Item> batch) {
+		ItemBatches.validateAll(batch);
+		for (Item item : batch) {
+			index(item);
+			items.add(item);
+		}
+		if (!batch.isEmpty()) {
+			changed();
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces the items with the ids of the batch, like update does for one item. Every id must exist,
+	 * otherwise nothing is changed. When the batch holds an id more than once the last item wins.
+	 */
+	public Boolean updateAll(Collection<Item> batch) {
+		Map<Integer, Item> latest = ItemBatches.latestById(batch, itemsById::containsKey);
+		if (latest.isEmpty()) {
+			return true;
+		}
+		removeAll(new HashSet<>(latest.keySet()));
+		for (Item item : latest.values()) {
+			index(item);
+			items.add(item);
+		}
+		changed();
+		return true;
+	}
+
+	/**
+	 * Deletes every item with one of the ids in one pass over the catalog, ids that do not exist are skipped.
+	 * Returns whether anything was deleted.
+	 */
+	public Boolean deleteAll(Collection<Integer> itemIds) {
+		Set<Integer> ids = new HashSet<>(itemIds);
+		ids.retainAll(itemsById.keySet());
+		if (ids.isEmpty()) {
+			return false;
+		}
+		removeAll(ids);
+		changed();
+		return true;
 	}
 
 	//ex 2
 	public List<Item> getAllItems() {
-		List<Item> i = items
-				.stream()
-				.collect(Collectors.toList());
+		List<Item> i = new ArrayList<>(findAllItems());
 		validateOutputList(i);
 		return i;
 	}
 
 	//ex 3
 	public List<Item> getItemsInRange(int start, int end) {
-		List<Item> list = items.stream()
-				.sorted(Comparator.comparingInt(Item::getItemID))
-				.filter(item -> item.getItemID() >= start)
-				.filter(item -> item.getItemID() <= end)
-				.collect(Collectors.toList());
+		List<Item> list = findItemsInRange(start, end);
 		validateOutputList(list);
 		return list;
 	}
 
 	//ex 4
 	public List<Item> getItemsPerLocation(ItemLocation location) {
-		List<Item> list = items
-				.stream()
-				.filter(item -> item.getItemLocation().equals(location))
-				.collect(Collectors.toList());
+		List<Item> list = new ArrayList<>(findItemsPerLocation(location));
 		validateOutputList(list);
 		return list;
 	}
@@ -76,9 +566,7 @@ public class ShopRepository {
 
 	//ex 5
 	public List<Item> getItemsPerType(ItemType typeName) {
-		List<Item> list = items.stream()
-				.filter(item -> item.getItemType().equals(typeName))
-				.collect(Collectors.toList());
+		List<Item> list = new ArrayList<>(findItemsPerType(typeName));
 		validateOutputList(list);
 		return list;
 	}
@@ -87,10 +575,242 @@ public class ShopRepository {
 	//ex 6
 	public List<Item> getItemsPerProducer(String producer) {
 		final String formattedProducer = producer.replace(" ", "_");
-		List<Item> list = items.stream()
-				.filter(item -> item.getItemName().contains(formattedProducer))
-				.collect(Collectors.toList());
+		List<Item> list = new ArrayList<>(findItemsPerProducer(formattedProducer));
 		validateOutputList(list);
 		return list;
 	}
+
+	/**
+	 * Moves the version on, subclasses that do not write through create and delete call it after each change.
+	 */
+	protected final void changed() {
+		version.incrementAndGet();
+	}
+
+	private void index(Item item) {
+		itemsById.putIfAbsent(item.getItemID(), item);
+		bucket(itemsByIdRange, item.getItemID()).add(item);
+		bucket(itemsByLocation, item.getItemLocation()).add(item);
+		bucket(itemsByType, item.getItemType()).add(item);
+		bucket(itemsByLocationAndType.computeIfAbsent(item.getItemLocation(), l -> new EnumMap<>(ItemType.class)),
+				item.getItemType()).add(item);
+		bucket(itemsByProducer, item.getProducer()).add(item);
+		bucket(itemsByItemName, item.getItemName()).add(item);
+		bucket(itemsByProductName, item.getProductName()).add(item);
+		bucket(itemsByFoldedProductName, ItemPages.fold(item.getProductName())).add(item);
+		bucket(itemsByFoldedProducer, ItemPages.fold(item.getProducer())).add(item);
+		if (nameIndex != null) {
+			nameIndex.add(item);
+		}
+		if (bitmapIndex != null) {
+			bitmapIndex.add(item);
+		}
+		int[] count = copies.get(item);
+		if (count == null) {
+			copies.put(item, new int[]{1});
+			distinctItems.add(item);
+		} else {
+			count[0]++;
+		}
+		stock.add(item);
+		stockByLocation.computeIfAbsent(item.getItemLocation(), l -> new StockStatistics()).add(item);
+		stockByType.computeIfAbsent(item.getItemType(), t -> new StockStatistics()).add(item);
+	}
+
+	private void unindex(Item item) {
+		removeFromBucket(itemsByIdRange, item.getItemID(), item);
+		bucket(itemsByLocation, item.getItemLocation()).removeIf(e -> e == item);
+		bucket(itemsByType, item.getItemType()).removeIf(e -> e == item);
+		bucket(itemsByLocationAndType.get(item.getItemLocation()), item.getItemType()).removeIf(e -> e == item);
+		removeFromBucket(itemsByProducer, item.getProducer(), item);
+		removeFromBucket(itemsByItemName, item.getItemName(), item);
+		removeFromBucket(itemsByProductName, item.getProductName(), item);
+		removeFromBucket(itemsByFoldedProductName, ItemPages.fold(item.getProductName()), item);
+		removeFromBucket(itemsByFoldedProducer, ItemPages.fold(item.getProducer()), item);
+		if (nameIndex != null) {
+			nameIndex.remove(item);
+		}
+		if (bitmapIndex != null) {
+			bitmapIndex.remove(item);
+		}
+		int[] count = copies.get(item);
+		if (--count[0] == 0) {
+			copies.remove(item);
+			distinctItems.remove(item);
+		}
+		stock.remove(item);
+		stockByLocation.get(item.getItemLocation()).remove(item);
+		stockByType.get(item.getItemType()).remove(item);
+	}
+
+	/*
+	 * Removes the items with the ids, which must all exist. Every index bucket an item leaves is filtered once
+	 * for the whole batch instead of once per item. The name and bitmap indexes are dropped and rebuilt on their next use.
+	 */
+	private void removeAll(Set<Integer> ids) {
+		Set<Item> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+		items.removeIf(item -> ids.contains(item.getItemID()) && gone.add(item));
+		ids.forEach(itemsById::remove);
+
+		removeFromBuckets(itemsByIdRange, gone, Item::getItemID);
+		removeFromBuckets(itemsByLocation, gone, Item::getItemLocation);
+		removeFromBuckets(itemsByType, gone, Item::getItemType);
+		itemsByLocationAndType.values().forEach(perType -> removeFromBuckets(perType, gone, Item::getItemType));
+		removeFromBuckets(itemsByProducer, gone, Item::getProducer);
+		removeFromBuckets(itemsByItemName, gone, Item::getItemName);
+		removeFromBuckets(itemsByProductName, gone, Item::getProductName);
+		removeFromBuckets(itemsByFoldedProductName, gone, item -> ItemPages.fold(item.getProductName()));
+		removeFromBuckets(itemsByFoldedProducer, gone, item -> ItemPages.fold(item.getProducer()));
+		nameIndex = null;
+		bitmapIndex = null;
+		gone.forEach(copies::remove);
+		distinctItems.removeIf(gone::contains);
+		stock.removeAll(gone);
+		stockByLocation.values().forEach(statistics -> statistics.removeAll(gone));
+		stockByType.values().forEach(statistics -> statistics.removeAll(gone));
+	}
+
+	private static <K> void removeFromBuckets(Map<K, List<Item>> index, Set<Item> gone, Function<Item, K> key) {
+		Set<K> keys = new HashSet<>();
+		gone.forEach(item -> keys.add(key.apply(item)));
+		for (K k : keys) {
+			List<Item> bucket = index.get(k);
+			if (bucket != null && bucket.removeIf(gone::contains) && bucket.isEmpty()) {
+				index.remove(k);
+			}
+		}
+	}
+
+	private static <K> List<Item> bucket(Map<K, List<Item>> index, K key) {
+		return index.computeIfAbsent(key, k -> new ArrayList<>());
+	}
+
+	/**
+	 * Buckets of candidate items for a query, with the number of items in them
+	 * and the order they come in, null if it is not one of the query orders.
+	 */
+	private static final class Source {
+
+		private final Collection<List<Item>> buckets;
+		private final int estimate;
+		private final ItemQuery.Order order;
+
+		private Source(Collection<List<Item>> buckets, int estimate, ItemQuery.Order order) {
+			this.buckets = buckets;
+			this.estimate = estimate;
+			this.order = order;
+		}
+
+		private Source or(Source other) {
+			return other.estimate < estimate ? other : this;
+		}
+	}
+
+	private static Source bucketSource(List<Item> bucket) {
+		return bucket == null ? new Source(Collections.emptyList(), 0, null)
+				: new Source(Collections.singletonList(bucket), bucket.size(), null);
+	}
+
+	/* An index holding every item in the given order */
+	private Source orderedSource(ItemQuery.Order order) {
+		switch (order) {
+			case ITEM_ID:
+				return new Source(itemsByIdRange.values(), items.size(), order);
+			case PRODUCER:
+				return new Source(itemsByItemName.values(), items.size(), order);
+			case PRODUCT_NAME:
+				return new Source(itemsByProductName.values(), items.size(), order);
+			case STOCK_HIGH_TO_LOW:
+				return new Source(stock.getItemsByStockDescending(), items.size(), order);
+			default:
+				return new Source(stock.getItemsWithStockBetween(Integer.MIN_VALUE, Integer.MAX_VALUE, false), items.size(), order);
+		}
+	}
+
+	/* Reads the source in its order and stops at the limit of the query, the items of a bucket only differ in the tie-break */
+	private static List<Item> walk(Source source, ItemQuery query) {
+		List<Item> list = new ArrayList<>();
+		List<Item> matches = new ArrayList<>();
+		for (List<Item> bucket : source.buckets) {
+			for (Item item : bucket) {
+				if (query.matches(item)) {
+					matches.add(item);
+				}
+			}
+			matches.sort(query.getOrder().comparator());
+			for (Item item : matches) {
+				list.add(item);
+				if (list.size() == query.getLimit()) {
+					return list;
+				}
+			}
+			matches.clear();
+		}
+		return list;
+	}
+
+	/* Number of items in the buckets, counting stops once it is past cap */
+	private static int count(Collection<List<Item>> buckets, int cap) {
+		int count = 0;
+		for (List<Item> bucket : buckets) {
+			count += bucket.size();
+			if (count > cap) {
+				break;
+			}
+		}
+		return count;
+	}
+
+	/* Reads may build the index concurrently on a repository that is no longer written to, like a published snapshot */
+	private ItemNameIndex nameIndex() {
+		ItemNameIndex index = nameIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = nameIndex;
+				if (index == null) {
+					index = new ItemNameIndex(items);
+					nameIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	private ItemBitmapIndex bitmapIndex() {
+		ItemBitmapIndex index = bitmapIndex;
+		if (index == null) {
+			synchronized (this) {
+				index = bitmapIndex;
+				if (index == null) {
+					index = new ItemBitmapIndex(items);
+					bitmapIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	private static <K> void removeFromBucket(Map<K, List<Item>> index, K key, Item item) {
+		List<Item> bucket = index.get(key);
+		if (bucket != null && bucket.removeIf(e -> e == item) && bucket.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	/* Every key starting with the folded prefix sorts between the prefix and the prefix followed by the largest char */
+	private static List<Item> prefixRange(NavigableMap<String, List<Item>> index, String prefix) {
+		List<Item> list = new ArrayList<>();
+		prefixBuckets(index, prefix).forEach(list::addAll);
+		return list;
+	}
+
+	/* A view of the buckets in index order, read lazily so a limited read stops at its last bucket */
+	private static Collection<List<Item>> prefixBuckets(NavigableMap<String, List<Item>> index, String prefix) {
+		String from = ItemPages.fold(prefix);
+		return index.subMap(from, true, from + Character.MAX_VALUE, true).values();
+	}
+
+	private static List<Item> view(List<Item> bucket) {
+		return bucket == null ? Collections.emptyList() : Collections.unmodifiableList(bucket);
+	}
 }
@@ -0,0 +1,126 @@
+package com.visma.lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Running stock aggregates for a group of items, kept up to date on every add and remove.
+ *
+ * Sum and count answer totals and averages in O(1). Items are also kept ordered by stock, each stock value
+ * holding its items in the order they were added, so the first item with the most or least stock is found
+ * in O(log n) and a remove never forces a rescan.
+ */
+class StockStatistics {
+
+	private long sum;
+	private int count;
+	private final NavigableMap<Integer, List<Item>> itemsByStock = new TreeMap<>();
+
+	void add(Item item) {
+		sum += item.getStock();
+		count++;
+		itemsByStock.computeIfAbsent(item.getStock(), stock -> new ArrayList<>()).add(item);
+	}
+
+	/**
+	 * Removes one occurrence of item, an instance that was added twice stays in once.
+	 */
+	void remove(Item item) {
+		List<Item> items = itemsByStock.get(item.getStock());
+		if (items != null && removeOne(items, item)) {
+			sum -= item.getStock();
+			count--;
+			if (items.isEmpty()) {
+				itemsByStock.remove(item.getStock());
+			}
+		}
+	}
+
+	/**
+	 * Removes the items of the set that are in this group, going over each stock value they have once.
+	 */
+	void removeAll(Set<Item> gone) {
+		Set<Integer> stocks = new HashSet<>();
+		gone.forEach(item -> stocks.add(item.getStock()));
+		for (Integer value : stocks) {
+			List<Item> items = itemsByStock.get(value);
+			if (items != null) {
+				int before = items.size();
+				if (items.removeIf(gone::contains)) {
+					int removed = before - items.size();
+					sum -= (long) value * removed;
+					count -= removed;
+					if (items.isEmpty()) {
+						itemsByStock.remove(value);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean removeOne(List<Item> items, Item item) {
+		for (int i = 0; i < items.size(); i++) {
+			if (items.get(i) == item) {
+				items.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	long getSum() {
+		return sum;
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	OptionalDouble getAverage() {
+		return count == 0 ? OptionalDouble.empty() : OptionalDouble.of((double) sum / count);
+	}
+
+	/**
+	 * Items grouped by stock, highest stock first.
+	 */
+	Collection<List<Item>> getItemsByStockDescending() {
+		return itemsByStock.descendingMap().values();
+	}
+
+	/**
+	 * Items with min <= stock <= max grouped by stock, lowest or highest stock first.
+	 */
+	Collection<List<Item>> getItemsWithStockBetween(int min, int max, boolean highestFirst) {
+		if (min > max) {
+			return Collections.emptyList();
+		}
+		NavigableMap<Integer, List<Item>> range = itemsByStock.subMap(min, true, max, true);
+		return highestFirst ? range.descendingMap().values() : range.values();
+	}
+
+	/**
+	 * First added item with the highest stock, null if there are none.
+	 */
+	Item getMost() {
+		Map.Entry<Integer, List<Item>> entry = itemsByStock.lastEntry();
+		return entry == null ? null : entry.getValue().get(0);
+	}
+
+	/**
+	 * First added item with the lowest stock, null if there are none.
+	 */
+	Item getLeast() {
+		Map.Entry<Integer, List<Item>> entry = itemsByStock.firstEntry();
+		return entry == null ? null : entry.getValue().get(0);
+	}
+}
@@ -0,0 +1,315 @@
+package com.visma.lecture.service;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ShopRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade over a ShopService, every query returns a CompletableFuture that is completed on the executor.
+ *
+ * The same query with the same arguments asked again while it is still running, and before the repository changed,
+ * does not run a second time: the caller gets a future of the running one. Each caller gets a future of its own,
+ * so cancelling or completing one does not affect the others, but the result object is shared between them,
+ * so results must not be modified. Failures of the service, like NoItemFoundForCriteriaException, complete the
+ * future exceptionally.
+ *
+ * Wraps any ShopService, so a CachingShopService keeps its behaviour behind it.
+ */
+public class AsyncShopService {
+
+	private final ShopService shopService;
+	private final ShopRepository shopRepository;
+	private final Executor executor;
+	private final Map<List<Object>, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs the queries on virtual threads when the JDK has them (Java 21 and later), otherwise on a pool
+	 * of daemon threads, one per core. Every service created this way shares the one executor, which needs no shutdown.
+	 */
+	public AsyncShopService(ShopService shopService) {
+		this(shopService, DefaultExecutor.INSTANCE);
+	}
+
+	public AsyncShopService(ShopService shopService, Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("Executor must not be null.");
+		}
+		this.shopService = shopService;
+		this.shopRepository = shopService.getShopRepository();
+		this.executor = executor;
+	}
+
+	public CompletableFuture<Map<ItemLocation, List<Item>>> getMapOfAllItemsPerLocation() {
+		return async(shopService::getMapOfAllItemsPerLocation, "getMapOfAllItemsPerLocation");
+	}
+
+	public CompletableFuture<Map<ItemType, List<Item>>> getMapOfAllItemsPerType() {
+		return async(shopService::getMapOfAllItemsPerType, "getMapOfAllItemsPerType");
+	}
+
+	public CompletableFuture<Map<String, List<Item>>> getMapOfAllItemsPerProducer() {
+		return async(shopService::getMapOfAllItemsPerProducer, "getMapOfAllItemsPerProducer");
+	}
+
+	public CompletableFuture<Map<Boolean, List<Item>>> getMapOfAllItemsPerStock() {
+		return async(shopService::getMapOfAllItemsPerStock, "getMapOfAllItemsPerStock");
+	}
+
+	public CompletableFuture<Item> getItemById(int id) {
+		return async(() -> shopService.getItemById(id), "getItemById", id);
+	}
+
+	public CompletableFuture<Optional<Item>> findItemById(int id) {
+		return async(() -> shopService.findItemById(id), "findItemById", id);
+	}
+
+	public CompletableFuture<String> getStringOfAllProducers() {
+		return async(shopService::getStringOfAllProducers, "getStringOfAllProducers");
+	}
+
+	public CompletableFuture<List<ItemLocation>> getListOfAllLocationsWithMoreThanXInStock(int numberInStock) {
+		return async(() -> shopService.getListOfAllLocationsWithMoreThanXInStock(numberInStock),
+				"getListOfAllLocationsWithMoreThanXInStock", numberInStock);
+	}
+
+	public CompletableFuture<List<ItemLocation>> findLocationsWithMoreThanXInStock(int numberInStock) {
+		return async(() -> shopService.findLocationsWithMoreThanXInStock(numberInStock),
+				"findLocationsWithMoreThanXInStock", numberInStock);
+	}
+
+	public CompletableFuture<List<ItemLocation>> getListOfAllLocationsWithLessThanXInStock(int numberInStock) {
+		return async(() -> shopService.getListOfAllLocationsWithLessThanXInStock(numberInStock),
+				"getListOfAllLocationsWithLessThanXInStock", numberInStock);
+	}
+
+	public CompletableFuture<List<ItemLocation>> findLocationsWithLessThanXInStock(int numberInStock) {
+		return async(() -> shopService.findLocationsWithLessThanXInStock(numberInStock),
+				"findLocationsWithLessThanXInStock", numberInStock);
+	}
+
+	public CompletableFuture<List<Item>> getItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		return async(() -> shopService.getItemsInLocationXWithMoreThanYInStock(location, numberInStock),
+				"getItemsInLocationXWithMoreThanYInStock", location, numberInStock);
+	}
+
+	public CompletableFuture<List<Item>> getMostStockedItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		return async(() -> shopService.getMostStockedItemsInLocationXWithMoreThanYInStock(location, numberInStock, limit),
+				"getMostStockedItemsInLocationXWithMoreThanYInStock", location, numberInStock, limit);
+	}
+
+	public CompletableFuture<List<Item>> findItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		return async(() -> shopService.findItemsInLocationXWithMoreThanYInStock(location, numberInStock),
+				"findItemsInLocationXWithMoreThanYInStock", location, numberInStock);
+	}
+
+	public CompletableFuture<List<Item>> getItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		return async(() -> shopService.getItemsInLocationXWithLessThanYInStock(location, numberInStock),
+				"getItemsInLocationXWithLessThanYInStock", location, numberInStock);
+	}
+
+	public CompletableFuture<List<Item>> getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		return async(() -> shopService.getLeastStockedItemsInLocationXWithLessThanYInStock(location, numberInStock, limit),
+				"getLeastStockedItemsInLocationXWithLessThanYInStock", location, numberInStock, limit);
+	}
+
+	public CompletableFuture<List<Item>> findItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		return async(() -> shopService.findItemsInLocationXWithLessThanYInStock(location, numberInStock),
+				"findItemsInLocationXWithLessThanYInStock", location, numberInStock);
+	}
+
+	public CompletableFuture<List<Item>> getItemsWithNameStartingWith(String character) {
+		return async(() -> shopService.getItemsWithNameStartingWith(character), "getItemsWithNameStartingWith", character);
+	}
+
+	public CompletableFuture<List<Item>> getItemsWithNameStartingWith(String character, int limit) {
+		return async(() -> shopService.getItemsWithNameStartingWith(character, limit),
+				"getItemsWithNameStartingWith", character, limit);
+	}
+
+	public CompletableFuture<List<Item>> getItemsWithProducerStartingWith(String prefix) {
+		return async(() -> shopService.getItemsWithProducerStartingWith(prefix), "getItemsWithProducerStartingWith", prefix);
+	}
+
+	public CompletableFuture<List<Item>> getItemsWithNameContaining(String text) {
+		return async(() -> shopService.getItemsWithNameContaining(text), "getItemsWithNameContaining", text);
+	}
+
+	public CompletableFuture<List<Item>> searchItems(String query, int maxEdits) {
+		return async(() -> shopService.searchItems(query, maxEdits), "searchItems", query, maxEdits);
+	}
+
+	public CompletableFuture<Double> getAverageItemStockForLocationX(ItemLocation location) {
+		return async(() -> shopService.getAverageItemStockForLocationX(location), "getAverageItemStockForLocationX", location);
+	}
+
+	public CompletableFuture<OptionalDouble> findAverageItemStockForLocationX(ItemLocation location) {
+		return async(() -> shopService.findAverageItemStockForLocationX(location), "findAverageItemStockForLocationX", location);
+	}
+
+	/**
+	 * The average stock of every location, the locations are queried concurrently. Locations without items are empty.
+	 */
+	public CompletableFuture<Map<ItemLocation, OptionalDouble>> findAverageItemStockPerLocation() {
+		return all(ItemLocation.values(), this::findAverageItemStockForLocationX);
+	}
+
+	public CompletableFuture<Item> getItemWithMostInStock() {
+		return async(shopService::getItemWithMostInStock, "getItemWithMostInStock");
+	}
+
+	public CompletableFuture<Optional<Item>> findItemWithMostInStock() {
+		return async(shopService::findItemWithMostInStock, "findItemWithMostInStock");
+	}
+
+	public CompletableFuture<Item> getItemWithLeastInStock() {
+		return async(shopService::getItemWithLeastInStock, "getItemWithLeastInStock");
+	}
+
+	public CompletableFuture<Optional<Item>> findItemWithLeastInStock() {
+		return async(shopService::findItemWithLeastInStock, "findItemWithLeastInStock");
+	}
+
+	public CompletableFuture<List<Item>> getItemsInLocationXStockHigherThan(ItemLocation location, int stock) {
+		return async(() -> shopService.getItemsInLocationXStockHigherThan(location, stock),
+				"getItemsInLocationXStockHigherThan", location, stock);
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByProducer() {
+		return async(shopService::getItemsSortedByProducer, "getItemsSortedByProducer");
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByProducer(int offset, int limit) {
+		return async(() -> shopService.getItemsSortedByProducer(offset, limit), "getItemsSortedByProducer", offset, limit);
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByName() {
+		return async(shopService::getItemsSortedByName, "getItemsSortedByName");
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByName(int offset, int limit) {
+		return async(() -> shopService.getItemsSortedByName(offset, limit), "getItemsSortedByName", offset, limit);
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByStock() {
+		return async(shopService::getItemsSortedByStock, "getItemsSortedByStock");
+	}
+
+	public CompletableFuture<List<Item>> getItemsSortedByStock(int offset, int limit) {
+		return async(() -> shopService.getItemsSortedByStock(offset, limit), "getItemsSortedByStock", offset, limit);
+	}
+
+	public CompletableFuture<List<Item>> getAllDistinctItems() {
+		return async(shopService::getAllDistinctItems, "getAllDistinctItems");
+	}
+
+	public CompletableFuture<List<Item>> getListFromTwoSublistByIndexValues(int a, int b, int x, int y) {
+		return async(() -> shopService.getListFromTwoSublistByIndexValues(a, b, x, y),
+				"getListFromTwoSublistByIndexValues", a, b, x, y);
+	}
+
+	public CompletableFuture<List<Item>> getListOfItmesByLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		return async(() -> shopService.getListOfItmesByLocationTypeAndProducer(location, type, producer),
+				"getListOfItmesByLocationTypeAndProducer", location, type, producer);
+	}
+
+	public CompletableFuture<Integer> getTotalStock() {
+		return async(shopService::getTotalStock, "getTotalStock");
+	}
+
+	public CompletableFuture<List<Item>> getItemsAfter(int afterId, int limit) {
+		return async(() -> shopService.getItemsAfter(afterId, limit), "getItemsAfter", afterId, limit);
+	}
+
+	/* ItemQuery has no equals, so only calls with the same query object are coalesced */
+	public CompletableFuture<List<Item>> getItems(ItemQuery query) {
+		return async(() -> shopService.getItems(query), "getItems", query);
+	}
+
+	/**
+	 * Number of queries running or waiting for the executor.
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * Runs the query on the executor, or joins the same query still running against the same repository version.
+	 * The future is registered before the task is handed over, so a query that completes at once is still removed.
+	 */
+	@SuppressWarnings("unchecked")
+	private <V> CompletableFuture<V> async(Supplier<V> query, Object... arguments) {
+		List<Object> key = new ArrayList<>(arguments.length + 1);
+		key.add(shopRepository.getVersion());
+		key.addAll(Arrays.asList(arguments));
+
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> running = (CompletableFuture<V>) inFlight.putIfAbsent(key, future);
+		if (running != null) {
+			return running.thenApply(Function.identity());
+		}
+		future.whenComplete((result, failure) -> inFlight.remove(key, future));
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(query.get());
+				} catch (Throwable failure) {
+					future.completeExceptionally(failure);
+				}
+			});
+		} catch (RuntimeException rejected) {
+			future.completeExceptionally(rejected);
+		}
+		return future.thenApply(Function.identity());
+	}
+
+	private static <K extends Enum<K>, V> CompletableFuture<Map<K, V>> all(K[] keys, Function<K, CompletableFuture<V>> query) {
+		List<CompletableFuture<V>> futures = new ArrayList<>(keys.length);
+		for (K key : keys) {
+			futures.add(query.apply(key));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Map<K, V> results = new EnumMap<>(keys[0].getDeclaringClass());
+			for (int i = 0; i < keys.length; i++) {
+				results.put(keys[i], futures.get(i).join());
+			}
+			return results;
+		});
+	}
+
+	/* Holder of the shared default executor, created by the first service that uses it */
+	private static final class DefaultExecutor {
+
+		private static final Executor INSTANCE = create();
+
+		/* Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime, the build targets Java 8 */
+		private static Executor create() {
+			try {
+				return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (ReflectiveOperationException e) {
+				AtomicInteger threads = new AtomicInteger();
+				return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+					Thread thread = new Thread(runnable, "shop-async-" + threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.visma.lecture.service;
+
+/**
+ * Counters of a CachingShopService at one point in time.
+ */
+public final class CacheStats {
+
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final int size;
+
+	CacheStats(long hits, long misses, long evictions, long invalidations, int size) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.size = size;
+	}
+
+	/**
+	 * Lookups answered from the cache.
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Lookups that had to run the query, including the ones that failed.
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Results dropped to stay within the maximum size.
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Results dropped because the repository changed.
+	 */
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Results cached right now.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Share of lookups answered from the cache, 0 before the first lookup.
+	 */
+	public double getHitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+				+ ", invalidations=" + invalidations + ", size=" + size + "}";
+	}
+}
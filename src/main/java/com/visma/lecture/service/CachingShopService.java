@@ -0,0 +1,154 @@
+package com.visma.lecture.service;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ShopRepository;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * ShopService that keeps the results of the catalog-wide queries in a read-through cache.
+ *
+ * A query runs once, later calls with the same arguments get the same result until the repository changes,
+ * which is noticed through ShopRepository.getVersion() on every call. The cache holds at most maximumSize results
+ * and drops the least recently used one beyond that. Failed queries are not cached.
+ * Cached results are shared between callers, so the lists and maps returned here are read-only.
+ * Queries with many possible arguments, like the text searches, are answered from the indexes and are not cached.
+ */
+public class CachingShopService extends ShopService {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+	private final ShopRepository shopRepository;
+	private final ResultCache cache;
+
+	public CachingShopService(ShopRepository shopRepository) {
+		this(shopRepository, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public CachingShopService(ShopRepository shopRepository, int maximumSize) {
+		super(shopRepository);
+		this.shopRepository = shopRepository;
+		this.cache = new ResultCache(maximumSize);
+	}
+
+	public CacheStats getCacheStats() {
+		return cache.stats();
+	}
+
+	/**
+	 * Drops every cached result, they are dropped anyway when the repository changes.
+	 */
+	public void clearCache() {
+		cache.clear();
+	}
+
+	@Override
+	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocation() {
+		return cached(() -> readOnlyMap(super.getMapOfAllItemsPerLocation()), "ex 1");
+	}
+
+	@Override
+	public Map<ItemType, List<Item>> getMapOfAllItemsPerType() {
+		return cached(() -> readOnlyMap(super.getMapOfAllItemsPerType()), "ex 2");
+	}
+
+	@Override
+	public Map<String, List<Item>> getMapOfAllItemsPerProducer() {
+		return cached(() -> readOnlyMap(super.getMapOfAllItemsPerProducer()), "ex 3");
+	}
+
+	@Override
+	public Map<Boolean, List<Item>> getMapOfAllItemsPerStock() {
+		return cached(() -> readOnlyMap(super.getMapOfAllItemsPerStock()), "ex 4");
+	}
+
+	@Override
+	public String getStringOfAllProducers() {
+		return cached(super::getStringOfAllProducers, "ex 6");
+	}
+
+	@Override
+	public List<ItemLocation> getListOfAllLocationsWithMoreThanXInStock(int numberInStock) {
+		return cached(() -> Collections.unmodifiableList(super.getListOfAllLocationsWithMoreThanXInStock(numberInStock)),
+				"ex 7", numberInStock);
+	}
+
+	@Override
+	public List<ItemLocation> getListOfAllLocationsWithLessThanXInStock(int numberInStock) {
+		return cached(() -> Collections.unmodifiableList(super.getListOfAllLocationsWithLessThanXInStock(numberInStock)),
+				"ex 8", numberInStock);
+	}
+
+	@Override
+	public List<Item> getItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		return cached(() -> Collections.unmodifiableList(super.getItemsInLocationXWithMoreThanYInStock(location, numberInStock)),
+				"ex 9", location, numberInStock);
+	}
+
+	@Override
+	public List<Item> getItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		return cached(() -> Collections.unmodifiableList(super.getItemsInLocationXWithLessThanYInStock(location, numberInStock)),
+				"ex 10", location, numberInStock);
+	}
+
+	@Override
+	public double getAverageItemStockForLocationX(ItemLocation location) {
+		return cached(() -> super.getAverageItemStockForLocationX(location), "ex 12", location);
+	}
+
+	@Override
+	public Item getItemWithMostInStock() {
+		return cached(super::getItemWithMostInStock, "ex 13");
+	}
+
+	@Override
+	public Item getItemWithLeastInStock() {
+		return cached(super::getItemWithLeastInStock, "ex 14");
+	}
+
+	/* The listings without paging arguments call these with offset 0, so they are cached as well */
+	@Override
+	public List<Item> getItemsSortedByProducer(int offset, int limit) {
+		return cached(() -> Collections.unmodifiableList(super.getItemsSortedByProducer(offset, limit)),
+				"ex 16", offset, limit);
+	}
+
+	@Override
+	public List<Item> getItemsSortedByName(int offset, int limit) {
+		return cached(() -> Collections.unmodifiableList(super.getItemsSortedByName(offset, limit)),
+				"ex 17", offset, limit);
+	}
+
+	@Override
+	public List<Item> getItemsSortedByStock(int offset, int limit) {
+		return cached(() -> Collections.unmodifiableList(super.getItemsSortedByStock(offset, limit)),
+				"ex 18", offset, limit);
+	}
+
+	@Override
+	public List<Item> getAllDistinctItems() {
+		return cached(() -> Collections.unmodifiableList(super.getAllDistinctItems()), "ex 19");
+	}
+
+	@Override
+	public int getTotalStock() {
+		return cached(super::getTotalStock, "ex 22");
+	}
+
+	private <V> V cached(Supplier<V> query, Object... key) {
+		return cache.get(Arrays.asList(key), shopRepository.getVersion(), query);
+	}
+
+	private static <K> Map<K, List<Item>> readOnlyMap(Map<K, List<Item>> map) {
+		Map<K, List<Item>> copy = new LinkedHashMap<>();
+		map.forEach((key, items) -> copy.put(key, Collections.unmodifiableList(items)));
+		return Collections.unmodifiableMap(copy);
+	}
+}
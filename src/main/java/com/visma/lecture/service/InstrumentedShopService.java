@@ -0,0 +1,346 @@
+package com.visma.lecture.service;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.metrics.ShopMetrics;
+import com.visma.lecture.repository.ItemQuery;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * ShopService that records every call to another ShopService in ShopMetrics, as ShopService.methodName,
+ * with the parameter count appended for overloads, eg ShopService.getItemsSortedByStock/2.
+ *
+ * Wraps any ShopService, so a caching service keeps its behaviour. When the wrapped service reads an
+ * InstrumentedShopRepository sharing the same metrics, the items it read on the calling thread are recorded as rows read.
+ * While the metrics are disabled calls go straight to the wrapped service.
+ */
+public class InstrumentedShopService extends ShopService {
+
+	private final ShopService shopService;
+	private final ShopMetrics metrics;
+
+	public InstrumentedShopService(ShopService shopService, ShopMetrics metrics) {
+		super(shopService.getShopRepository());
+		if (metrics == null) {
+			throw new IllegalArgumentException("Metrics must not be null.");
+		}
+		this.shopService = shopService;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocation() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getMapOfAllItemsPerLocation",
+						shopService::getMapOfAllItemsPerLocation)
+				: shopService.getMapOfAllItemsPerLocation();
+	}
+
+	@Override
+	public Map<ItemType, List<Item>> getMapOfAllItemsPerType() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getMapOfAllItemsPerType", shopService::getMapOfAllItemsPerType)
+				: shopService.getMapOfAllItemsPerType();
+	}
+
+	@Override
+	public Map<String, List<Item>> getMapOfAllItemsPerProducer() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getMapOfAllItemsPerProducer",
+						shopService::getMapOfAllItemsPerProducer)
+				: shopService.getMapOfAllItemsPerProducer();
+	}
+
+	@Override
+	public Map<Boolean, List<Item>> getMapOfAllItemsPerStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getMapOfAllItemsPerStock", shopService::getMapOfAllItemsPerStock)
+				: shopService.getMapOfAllItemsPerStock();
+	}
+
+	@Override
+	public Item getItemById(int id) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemById", () -> shopService.getItemById(id))
+				: shopService.getItemById(id);
+	}
+
+	@Override
+	public Optional<Item> findItemById(int id) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findItemById", () -> shopService.findItemById(id))
+				: shopService.findItemById(id);
+	}
+
+	@Override
+	public String getStringOfAllProducers() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getStringOfAllProducers", shopService::getStringOfAllProducers)
+				: shopService.getStringOfAllProducers();
+	}
+
+	@Override
+	public List<ItemLocation> getListOfAllLocationsWithMoreThanXInStock(int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getListOfAllLocationsWithMoreThanXInStock",
+						() -> shopService.getListOfAllLocationsWithMoreThanXInStock(numberInStock))
+				: shopService.getListOfAllLocationsWithMoreThanXInStock(numberInStock);
+	}
+
+	@Override
+	public List<ItemLocation> findLocationsWithMoreThanXInStock(int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findLocationsWithMoreThanXInStock",
+						() -> shopService.findLocationsWithMoreThanXInStock(numberInStock))
+				: shopService.findLocationsWithMoreThanXInStock(numberInStock);
+	}
+
+	@Override
+	public List<ItemLocation> getListOfAllLocationsWithLessThanXInStock(int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getListOfAllLocationsWithLessThanXInStock",
+						() -> shopService.getListOfAllLocationsWithLessThanXInStock(numberInStock))
+				: shopService.getListOfAllLocationsWithLessThanXInStock(numberInStock);
+	}
+
+	@Override
+	public List<ItemLocation> findLocationsWithLessThanXInStock(int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findLocationsWithLessThanXInStock",
+						() -> shopService.findLocationsWithLessThanXInStock(numberInStock))
+				: shopService.findLocationsWithLessThanXInStock(numberInStock);
+	}
+
+	@Override
+	public List<Item> getItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsInLocationXWithMoreThanYInStock",
+						() -> shopService.getItemsInLocationXWithMoreThanYInStock(location, numberInStock))
+				: shopService.getItemsInLocationXWithMoreThanYInStock(location, numberInStock);
+	}
+
+	@Override
+	public List<Item> findItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findItemsInLocationXWithMoreThanYInStock",
+						() -> shopService.findItemsInLocationXWithMoreThanYInStock(location, numberInStock))
+				: shopService.findItemsInLocationXWithMoreThanYInStock(location, numberInStock);
+	}
+
+	@Override
+	public List<Item> getMostStockedItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getMostStockedItemsInLocationXWithMoreThanYInStock",
+						() -> shopService.getMostStockedItemsInLocationXWithMoreThanYInStock(location, numberInStock, limit))
+				: shopService.getMostStockedItemsInLocationXWithMoreThanYInStock(location, numberInStock, limit);
+	}
+
+	@Override
+	public List<Item> getItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsInLocationXWithLessThanYInStock",
+						() -> shopService.getItemsInLocationXWithLessThanYInStock(location, numberInStock))
+				: shopService.getItemsInLocationXWithLessThanYInStock(location, numberInStock);
+	}
+
+	@Override
+	public List<Item> findItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findItemsInLocationXWithLessThanYInStock",
+						() -> shopService.findItemsInLocationXWithLessThanYInStock(location, numberInStock))
+				: shopService.findItemsInLocationXWithLessThanYInStock(location, numberInStock);
+	}
+
+	@Override
+	public List<Item> getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getLeastStockedItemsInLocationXWithLessThanYInStock",
+						() -> shopService.getLeastStockedItemsInLocationXWithLessThanYInStock(location, numberInStock, limit))
+				: shopService.getLeastStockedItemsInLocationXWithLessThanYInStock(location, numberInStock, limit);
+	}
+
+	@Override
+	public List<Item> getItemsWithNameStartingWith(String character) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsWithNameStartingWith/1",
+						() -> shopService.getItemsWithNameStartingWith(character))
+				: shopService.getItemsWithNameStartingWith(character);
+	}
+
+	@Override
+	public List<Item> getItemsWithNameStartingWith(String character, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsWithNameStartingWith/2",
+						() -> shopService.getItemsWithNameStartingWith(character, limit))
+				: shopService.getItemsWithNameStartingWith(character, limit);
+	}
+
+	@Override
+	public List<Item> getItemsWithProducerStartingWith(String prefix) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsWithProducerStartingWith",
+						() -> shopService.getItemsWithProducerStartingWith(prefix))
+				: shopService.getItemsWithProducerStartingWith(prefix);
+	}
+
+	@Override
+	public List<Item> getItemsWithNameContaining(String text) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsWithNameContaining",
+						() -> shopService.getItemsWithNameContaining(text))
+				: shopService.getItemsWithNameContaining(text);
+	}
+
+	@Override
+	public List<Item> searchItems(String query, int maxEdits) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.searchItems", () -> shopService.searchItems(query, maxEdits))
+				: shopService.searchItems(query, maxEdits);
+	}
+
+	@Override
+	public double getAverageItemStockForLocationX(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getAverageItemStockForLocationX",
+						() -> shopService.getAverageItemStockForLocationX(location))
+				: shopService.getAverageItemStockForLocationX(location);
+	}
+
+	@Override
+	public OptionalDouble findAverageItemStockForLocationX(ItemLocation location) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findAverageItemStockForLocationX",
+						() -> shopService.findAverageItemStockForLocationX(location))
+				: shopService.findAverageItemStockForLocationX(location);
+	}
+
+	@Override
+	public Item getItemWithMostInStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemWithMostInStock", shopService::getItemWithMostInStock)
+				: shopService.getItemWithMostInStock();
+	}
+
+	@Override
+	public Optional<Item> findItemWithMostInStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findItemWithMostInStock", shopService::findItemWithMostInStock)
+				: shopService.findItemWithMostInStock();
+	}
+
+	@Override
+	public Item getItemWithLeastInStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemWithLeastInStock", shopService::getItemWithLeastInStock)
+				: shopService.getItemWithLeastInStock();
+	}
+
+	@Override
+	public Optional<Item> findItemWithLeastInStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.findItemWithLeastInStock", shopService::findItemWithLeastInStock)
+				: shopService.findItemWithLeastInStock();
+	}
+
+	@Override
+	public List<Item> getItemsInLocationXStockHigherThan(ItemLocation location, int stock) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsInLocationXStockHigherThan",
+						() -> shopService.getItemsInLocationXStockHigherThan(location, stock))
+				: shopService.getItemsInLocationXStockHigherThan(location, stock);
+	}
+
+	@Override
+	public List<Item> getItemsSortedByProducer() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByProducer/0", shopService::getItemsSortedByProducer)
+				: shopService.getItemsSortedByProducer();
+	}
+
+	@Override
+	public List<Item> getItemsSortedByProducer(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByProducer/2",
+						() -> shopService.getItemsSortedByProducer(offset, limit))
+				: shopService.getItemsSortedByProducer(offset, limit);
+	}
+
+	@Override
+	public List<Item> getItemsSortedByName() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByName/0", shopService::getItemsSortedByName)
+				: shopService.getItemsSortedByName();
+	}
+
+	@Override
+	public List<Item> getItemsSortedByName(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByName/2",
+						() -> shopService.getItemsSortedByName(offset, limit))
+				: shopService.getItemsSortedByName(offset, limit);
+	}
+
+	@Override
+	public List<Item> getItemsSortedByStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByStock/0", shopService::getItemsSortedByStock)
+				: shopService.getItemsSortedByStock();
+	}
+
+	@Override
+	public List<Item> getItemsSortedByStock(int offset, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsSortedByStock/2",
+						() -> shopService.getItemsSortedByStock(offset, limit))
+				: shopService.getItemsSortedByStock(offset, limit);
+	}
+
+	@Override
+	public List<Item> getAllDistinctItems() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getAllDistinctItems", shopService::getAllDistinctItems)
+				: shopService.getAllDistinctItems();
+	}
+
+	@Override
+	public List<Item> getListFromTwoSublistByIndexValues(int a, int b, int x, int y) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getListFromTwoSublistByIndexValues",
+						() -> shopService.getListFromTwoSublistByIndexValues(a, b, x, y))
+				: shopService.getListFromTwoSublistByIndexValues(a, b, x, y);
+	}
+
+	@Override
+	public List<Item> getListOfItmesByLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getListOfItmesByLocationTypeAndProducer",
+						() -> shopService.getListOfItmesByLocationTypeAndProducer(location, type, producer))
+				: shopService.getListOfItmesByLocationTypeAndProducer(location, type, producer);
+	}
+
+	@Override
+	public int getTotalStock() {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getTotalStock", shopService::getTotalStock)
+				: shopService.getTotalStock();
+	}
+
+	@Override
+	public List<Item> getItemsAfter(int afterId, int limit) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItemsAfter", () -> shopService.getItemsAfter(afterId, limit))
+				: shopService.getItemsAfter(afterId, limit);
+	}
+
+	@Override
+	public List<Item> getItems(ItemQuery query) {
+		return metrics.isEnabled()
+				? metrics.callService("ShopService.getItems", () -> shopService.getItems(query))
+				: shopService.getItems(query);
+	}
+}
@@ -0,0 +1,90 @@
+package com.visma.lecture.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collector;
+
+/**
+ * Collectors for the listing methods of ShopService.
+ */
+public final class ItemCollectors {
+
+	private ItemCollectors() {
+	}
+
+	/**
+	 * Collects the first k elements in the given order without sorting the whole stream.
+	 * Keeps a heap of at most k elements, so a stream of n elements costs O(n log k) and k elements of memory.
+	 * Elements that compare equal keep their encounter order, the result is the same as sorted(order).limit(k).
+	 */
+	public static <T> Collector<T, ?, List<T>> top(Comparator<? super T> order, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must not be negative.");
+		}
+		return Collector.of(
+				() -> new Heap<T>(order, k),
+				Heap::add,
+				Heap::merge,
+				Heap::toList);
+	}
+
+	private static final class Heap<T> {
+
+		private final Comparator<Ranked<T>> rank;
+		private final int k;
+		/* Worst element first, so it is the one to drop when a better element arrives */
+		private final PriorityQueue<Ranked<T>> queue;
+		private long encountered;
+
+		private Heap(Comparator<? super T> order, int k) {
+			this.rank = Comparator.<Ranked<T>, T>comparing(ranked -> ranked.element, order)
+					.thenComparingLong(ranked -> ranked.sequence);
+			this.k = k;
+			this.queue = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)), rank.reversed());
+		}
+
+		private void add(T element) {
+			offer(new Ranked<>(element, encountered++));
+		}
+
+		private void offer(Ranked<T> ranked) {
+			if (queue.size() < k) {
+				queue.add(ranked);
+			} else if (k > 0 && rank.compare(ranked, queue.peek()) < 0) {
+				queue.poll();
+				queue.add(ranked);
+			}
+		}
+
+		/* The right-hand heap holds later elements of the stream, its sequence numbers continue after ours */
+		private Heap<T> merge(Heap<T> other) {
+			long offset = encountered;
+			for (Ranked<T> ranked : other.queue) {
+				offer(new Ranked<>(ranked.element, offset + ranked.sequence));
+			}
+			encountered += other.encountered;
+			return this;
+		}
+
+		private List<T> toList() {
+			List<Ranked<T>> ranked = new ArrayList<>(queue);
+			ranked.sort(rank);
+			List<T> list = new ArrayList<>(ranked.size());
+			ranked.forEach(r -> list.add(r.element));
+			return list;
+		}
+	}
+
+	private static final class Ranked<T> {
+
+		private final T element;
+		private final long sequence;
+
+		private Ranked(T element, long sequence) {
+			this.element = element;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.visma.lecture.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded LRU cache of results that were computed against one version of a repository.
+ *
+ * Every lookup passes the current repository version. When it differs from the version the cached results were
+ * computed against, all of them are dropped at once, one write invalidates every result since any result may
+ * depend on the item that changed. Results are computed outside the lock, so a slow query does not hold up
+ * lookups of other keys, and a result computed while the version moved on is returned but not kept.
+ * Thread-safe.
+ */
+final class ResultCache {
+
+	private final int maximumSize;
+	private final Map<Object, Object> results;
+	private long version;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long invalidations;
+
+	ResultCache(int maximumSize) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be at least 1.");
+		}
+		this.maximumSize = maximumSize;
+		this.results = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * The cached result for key at the given version, or the result of loader, which is kept when the version is
+	 * still current. Exceptions of the loader are passed on and nothing is kept.
+	 */
+	@SuppressWarnings("unchecked")
+	<V> V get(Object key, long currentVersion, Supplier<V> loader) {
+		synchronized (this) {
+			moveTo(currentVersion);
+			Object result = results.get(key);
+			if (result != null) {
+				hits++;
+				return (V) result;
+			}
+			misses++;
+		}
+		V result = loader.get();
+		synchronized (this) {
+			if (version == currentVersion && result != null) {
+				results.put(key, result);
+				evictEldest();
+			}
+		}
+		return result;
+	}
+
+	synchronized CacheStats stats() {
+		return new CacheStats(hits, misses, evictions, invalidations, results.size());
+	}
+
+	synchronized void clear() {
+		invalidations += results.size();
+		results.clear();
+	}
+
+	/* Newer versions drop every result, a lookup that read an older version than the cache has leaves it alone */
+	private void moveTo(long currentVersion) {
+		if (currentVersion > version) {
+			clear();
+			version = currentVersion;
+		}
+	}
+
+	private void evictEldest() {
+		Iterator<Object> eldest = results.keySet().iterator();
+		while (results.size() > maximumSize) {
+			eldest.next();
+			eldest.remove();
+			evictions++;
+		}
+	}
+}
@@ -4,20 +4,28 @@ import com.visma.lecture.common.domain.Item;
 import com.visma.lecture.common.domain.support.ItemLocation;
 import com.visma.lecture.common.domain.support.ItemType;
 import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ItemSelection;
 import com.visma.lecture.repository.ShopRepository;
 import lombok.NonNull;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.visma.lecture.Validators.Validator.*;
 
 /**
  * Service class for shop
  *
+ * An answer that takes several repository calls reads them all from one ShopRepository.snapshot(), so against a
+ * ConcurrentShopRepository it never mixes two versions of the catalog.
+ *
  * @author Leo-Andreas Ervik
  */
 public class ShopService {
@@ -28,14 +36,24 @@ public class ShopService {
 		this.shopRepository = shopRepository;
 	}
 
+	/* For the facades in this package that need the repository version, like AsyncShopService */
+	ShopRepository getShopRepository() {
+		return shopRepository;
+	}
+
 	/**
 	 * ex 1		Gets a Map of items grouped by Location
 	 * @return Map
 	 */
 	public Map<ItemLocation, List<Item>> getMapOfAllItemsPerLocation(){
-		Map<ItemLocation, List<Item>> collection = shopRepository.getAllItems()
-				.stream()
-				.collect(Collectors.groupingBy(Item::getItemLocation));
+		ShopRepository catalog = shopRepository.snapshot();
+		Map<ItemLocation, List<Item>> collection = new EnumMap<>(ItemLocation.class);
+		for (ItemLocation location : ItemLocation.values()) {
+			List<Item> items = catalog.findItemsPerLocation(location);
+			if (!items.isEmpty()) {
+				collection.put(location, new ArrayList<>(items));
+			}
+		}
 
 		validateOutputMap(collection);
 		return collection;
@@ -46,9 +64,14 @@ public class ShopService {
 	 * @return Map
 	 */
 	public Map<ItemType, List<Item>> getMapOfAllItemsPerType() {
-		Map<ItemType, List<Item>> collection = shopRepository.getAllItems()
-				.stream()
-				.collect(Collectors.groupingBy(Item::getItemType));
+		ShopRepository catalog = shopRepository.snapshot();
+		Map<ItemType, List<Item>> collection = new EnumMap<>(ItemType.class);
+		for (ItemType type : ItemType.values()) {
+			List<Item> items = catalog.findItemsPerType(type);
+			if (!items.isEmpty()) {
+				collection.put(type, new ArrayList<>(items));
+			}
+		}
 
 		validateOutputMap(collection);
 		return collection;
@@ -59,11 +82,11 @@ public class ShopService {
 	 * @return Map
 	 */
 	public Map<String, List<Item>> getMapOfAllItemsPerProducer() {
-
-		Map<String, List<Item>> collection = shopRepository.getAllItems()
-				.stream()
-				.collect(Collectors.groupingBy(e -> e.getItemName()
-						.substring(0, e.getItemName().indexOf(" "))));
+		ShopRepository catalog = shopRepository.snapshot();
+		Map<String, List<Item>> collection = new HashMap<>();
+		for (String producer : catalog.findProducers()) {
+			collection.put(producer, new ArrayList<>(catalog.findItemsPerProducer(producer)));
+		}
 
 		validateOutputMap(collection);
 		return collection;
@@ -76,7 +99,7 @@ public class ShopService {
 	 */
 	public Map<Boolean, List<Item>> getMapOfAllItemsPerStock() {
 
-		Map<Boolean, List<Item>> collection = shopRepository.getAllItems()
+		Map<Boolean, List<Item>> collection = allItems()
 				.stream()
 				.collect(Collectors.partitioningBy(item -> item.getStock() > 1500)
 				);
@@ -91,27 +114,31 @@ public class ShopService {
 	 * @return Item
 	 */
 	public Item getItemById(int id) {
-		validateInputInteger(id);
+		Item item = findItemById(id).orElse(null);
 
-		Item item = shopRepository.getAllItems()
-				.stream()
-				.filter(e -> e.getItemID().equals(id))
-				.findFirst()
-				.orElseThrow(() ->
-						new NoItemFoundForCriteriaException("No items were found for the given search criteria."));
 		validateOutputItem(item);
 		return item;
 	}
 
+	/**
+	 * ex 5 	Find an Item by Id, empty instead of an exception when there is none
+	 * @param id
+	 * @return Optional of Item
+	 */
+	public Optional<Item> findItemById(int id) {
+		validateInputInteger(id);
+
+		return Optional.ofNullable(shopRepository.findItemById(id));
+	}
+
 	/**
 	 * ex 6 Gets a string of All producers divided by "X"
 	 * @return String
 	 */
 	public String getStringOfAllProducers() {
-		String producers = shopRepository.getAllItems()
+		String producers = allItems()
 				.stream()
-				.map(Item::getItemName)
-				.map(e -> e.substring(0, e.indexOf(" ")))
+				.map(Item::getProducer)
 				.collect(Collectors.joining("X"));
 		validateOutputString(producers);
 		return producers;
@@ -123,19 +150,23 @@ public class ShopService {
 	 * @return List of Items
 	 */
 	public List<ItemLocation> getListOfAllLocationsWithMoreThanXInStock(int numberInStock) {
-		validateInputInteger(numberInStock);
-
-		List<ItemLocation> locations = shopRepository.getAllItems()
-				.stream()
-				.filter(e -> e.getStock() > numberInStock)
-				.map(Item::getItemLocation)
-				.distinct()
-				.collect(Collectors.toList());
+		List<ItemLocation> locations = findLocationsWithMoreThanXInStock(numberInStock);
 
 		validateOutputList(locations);
 		return locations;
 	}
 
+	/**
+	 * ex 7 	Find all locations with more than X in stock of any type of item, empty when there are none
+	 * @param numberInStock
+	 * @return List of locations
+	 */
+	public List<ItemLocation> findLocationsWithMoreThanXInStock(int numberInStock) {
+		validateInputInteger(numberInStock);
+
+		return locationsWithAny(ItemQuery.builder().stockAbove(numberInStock));
+	}
+
 
 	/**
 	 * ex 8 	Get List of all locations with less than X in stock
@@ -143,53 +174,126 @@ public class ShopService {
 	 * @return List of items
 	 */
 	public List<ItemLocation> getListOfAllLocationsWithLessThanXInStock(int numberInStock) {
-		validateInputInteger(numberInStock);
-		List<ItemLocation> locations = shopRepository.getAllItems()
-				.stream()
-				.filter(e -> e.getStock() < numberInStock)
-				.map(Item::getItemLocation)
-				.distinct()
-				.collect(Collectors.toList());
+		List<ItemLocation> locations = findLocationsWithLessThanXInStock(numberInStock);
 
 		validateOutputList(locations);
 		return locations;
 	}
 
 	/**
-	 * ex 9 	Get list of items in location X with more than Y in stock
+	 * ex 8 	Find all locations with less than X in stock, empty when there are none
+	 * @param numberInStock
+	 * @return List of locations
+	 */
+	public List<ItemLocation> findLocationsWithLessThanXInStock(int numberInStock) {
+		validateInputInteger(numberInStock);
+
+		return locationsWithAny(ItemQuery.builder().stockBelow(numberInStock));
+	}
+
+	/**
+	 * ex 9 	Get list of items in location X with more than Y in stock, ordered by itemID
 	 * @param location
 	 * @param numberInStock
 	 * @return List of items
 	 */
 	public List<Item> getItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
+		List<Item> items = findItemsInLocationXWithMoreThanYInStock(location, numberInStock);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * ex 9 	Find the items in location X with more than Y in stock, ordered by itemID, empty when there are none
+	 * @param location
+	 * @param numberInStock
+	 * @return List of items
+	 */
+	public List<Item> findItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock) {
 		validateInputInteger(numberInStock);
 		validateInputLocation(location);
 
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.filter(item -> item.getItemLocation().equals(location))
-				.filter(item -> item.getStock() > numberInStock)
-				.collect(Collectors.toList());
+		return shopRepository.findItems(ItemQuery.builder()
+				.location(location)
+				.stockAbove(numberInStock)
+				.orderBy(ItemQuery.Order.ITEM_ID)
+				.build());
+	}
+
+	/**
+	 * ex 9 	Get the limit items in location X with more than Y in stock that have the most in stock, ordered by
+	 * 			stock high to low instead of by itemID like getItemsInLocationXWithMoreThanYInStock
+	 * @param location
+	 * @param numberInStock
+	 * @param limit maximum number of items to return
+	 * @return List of items
+	 */
+	public List<Item> getMostStockedItemsInLocationXWithMoreThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		validateInputInteger(numberInStock);
+		validateInputLocation(location);
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItems(ItemQuery.builder()
+				.location(location)
+				.stockAbove(numberInStock)
+				.orderBy(ItemQuery.Order.STOCK_HIGH_TO_LOW)
+				.limit(limit)
+				.build());
 
 		validateOutputList(items);
 		return items;
 	}
 
 	/**
-	 * ex 10 	Get a list of items in location X with less than Y in stock
+	 * ex 10 	Get a list of items in location X with less than Y in stock, ordered by itemID
 	 * @param location
 	 * @param numberInStock
 	 * @return List of Items
 	 */
 	public List<Item> getItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
+		List<Item> items = findItemsInLocationXWithLessThanYInStock(location, numberInStock);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * ex 10 	Find the items in location X with less than Y in stock, ordered by itemID, empty when there are none
+	 * @param location
+	 * @param numberInStock
+	 * @return List of Items
+	 */
+	public List<Item> findItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock) {
 		validateInputInteger(numberInStock);
 		validateInputLocation(location);
 
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.filter(item -> item.getItemLocation().equals(location))
-				.filter(item -> item.getStock() < numberInStock)
-				.collect(Collectors.toList());
+		return shopRepository.findItems(ItemQuery.builder()
+				.location(location)
+				.stockBelow(numberInStock)
+				.orderBy(ItemQuery.Order.ITEM_ID)
+				.build());
+	}
+
+	/**
+	 * ex 10 	Get the limit items in location X with less than Y in stock that have the least in stock, ordered by
+	 * 			stock low to high instead of by itemID like getItemsInLocationXWithLessThanYInStock
+	 * @param location
+	 * @param numberInStock
+	 * @param limit maximum number of items to return
+	 * @return List of Items
+	 */
+	public List<Item> getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation location, int numberInStock, int limit) {
+		validateInputInteger(numberInStock);
+		validateInputLocation(location);
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItems(ItemQuery.builder()
+				.location(location)
+				.stockBelow(numberInStock)
+				.orderBy(ItemQuery.Order.STOCK_LOW_TO_HIGH)
+				.limit(limit)
+				.build());
 
 		validateOutputList(items);
 		return items;
@@ -197,21 +301,71 @@ public class ShopService {
 
 
 	/**
-	 * ex 11 Get a list of items with name starting with "X".
+	 * ex 11 Get a list of items with name starting with "X", ignoring case, ordered by name.
 	 * @return List of items
 	 */
 	public List<Item> getItemsWithNameStartingWith(String character) {
 
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.filter(item -> item
-						.getItemName()
-						.toUpperCase()
-						.substring(item
-								.getItemName()
-								.indexOf(" ")+1)
-						.startsWith(character))
-				.collect(Collectors.toList());
+		List<Item> items = shopRepository.findItemsWithProductNameStartingWith(character);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * ex 11 Get the first limit items with name starting with "X", ignoring case, ordered by name like the list of
+	 * all of them. The repository stops reading its name index after limit items.
+	 * @param limit maximum number of items to return
+	 * @return List of items
+	 */
+	public List<Item> getItemsWithNameStartingWith(String character, int limit) {
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItemsWithProductNameStartingWith(character, limit);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * Get a list of items with producer starting with "X", ignoring case, ordered by producer.
+	 * @param prefix start of the producer, spaces match the underscores of stored producers (eg HUGO B)
+	 * @return List of items
+	 */
+	public List<Item> getItemsWithProducerStartingWith(String prefix) {
+		validateInputString(prefix);
+
+		List<Item> items = shopRepository.findItemsWithProducerStartingWith(prefix.replace(" ", "_"));
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * Get a list of items with a name containing "X" anywhere, ignoring case, best matches first.
+	 * @param text
+	 * @return List of items
+	 */
+	public List<Item> getItemsWithNameContaining(String text) {
+		validateInputString(text);
+
+		List<Item> items = shopRepository.findItemsWithNameContaining(text);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * Search items by the words of their name, allowing up to maxEdits typos (0 to 2) per word, best matches first.
+	 * @param query one or more words, every word has to match
+	 * @param maxEdits
+	 * @return List of items
+	 */
+	public List<Item> searchItems(String query, int maxEdits) {
+		validateInputString(query);
+		validateInputEditDistance(maxEdits);
+
+		List<Item> items = shopRepository.findItemsMatching(query, maxEdits);
 
 		validateOutputList(items);
 		return items;
@@ -223,47 +377,63 @@ public class ShopService {
 	 * @return double
 	 */
 	public double getAverageItemStockForLocationX(ItemLocation location) {
-		validateInputLocation(location);
-		double average = shopRepository.getAllItems()
-				.stream()
-				.filter(item -> item.getItemLocation().equals(location))
-				.mapToInt(Item::getStock)
-				.average()
-				.getAsDouble();
+		double average = findAverageItemStockForLocationX(location)
+				.orElseThrow(() -> new NoItemFoundForCriteriaException("No items were found for the given search criteria."));
 
 		validateOutputDouble(average);
 		return average;
 	}
 
+	/**
+	 * ex 12 	Find average stock count for items in location X, empty when there are none
+	 * @param location
+	 * @return OptionalDouble
+	 */
+	public OptionalDouble findAverageItemStockForLocationX(ItemLocation location) {
+		validateInputLocation(location);
+
+		return shopRepository.getAverageStockPerLocation(location);
+	}
+
 
 	/**
 	 * ex 13 	Get item with the highest number in stock
 	 * @return Item
 	 */
 	public Item getItemWithMostInStock() {
-		Item item = shopRepository.getAllItems()
-				.stream()
-				.max(Comparator.comparingInt(Item::getStock))
-				.get();
+		Item item = findItemWithMostInStock().orElse(null);
 
 		validateOutputItem(item);
 		return item;
 	}
 
+	/**
+	 * ex 13 	Find item with the highest number in stock, empty when there are no items
+	 * @return Optional of Item
+	 */
+	public Optional<Item> findItemWithMostInStock() {
+		return Optional.ofNullable(shopRepository.findItemWithMostInStock());
+	}
+
 	/**
 	 * ex 14 	Get item with the lowest number in stock
 	 * @return List of items
 	 */
 	public Item getItemWithLeastInStock() {
-		Item item = shopRepository.getAllItems()
-				.stream()
-				.min(Comparator.comparingInt(Item::getStock))
-				.get();
+		Item item = findItemWithLeastInStock().orElse(null);
 
 		validateOutputItem(item);
 		return item;
 	}
 
+	/**
+	 * ex 14 	Find item with the lowest number in stock, empty when there are no items
+	 * @return Optional of Item
+	 */
+	public Optional<Item> findItemWithLeastInStock() {
+		return Optional.ofNullable(shopRepository.findItemWithLeastInStock());
+	}
+
 	/**
 	 * ex 15 	I can not see the difference between this exercise and ex 9
 	 * 			so i am here calling the method in ex 9.
@@ -281,10 +451,20 @@ public class ShopService {
 	 * @return List of items
 	 */
 	public List<Item> getItemsSortedByProducer() {
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.sorted(Comparator.comparing(Item::getItemName))
-				.collect(Collectors.toList());
+		return getItemsSortedByProducer(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * ex 16	getting one page of the list sorted by producer
+	 * @param offset number of items to skip
+	 * @param limit maximum number of items to return
+	 * @return List of items
+	 */
+	public List<Item> getItemsSortedByProducer(int offset, int limit) {
+		validateInputOffset(offset);
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItemsSortedByProducer(offset, limit);
 
 		validateOutputList(items);
 		return items;
@@ -295,11 +475,20 @@ public class ShopService {
 	 * @return List of items
 	 */
 	public List<Item> getItemsSortedByName() {
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.sorted(Comparator.comparing(item -> item.getItemName()
-						.substring(item.getItemName().indexOf(" "))))
-				.collect(Collectors.toList());
+		return getItemsSortedByName(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * ex 17	getting one page of the list sorted by name
+	 * @param offset number of items to skip
+	 * @param limit maximum number of items to return
+	 * @return List of items
+	 */
+	public List<Item> getItemsSortedByName(int offset, int limit) {
+		validateInputOffset(offset);
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItemsSortedByProductName(offset, limit);
 
 		validateOutputList(items);
 		return items;
@@ -311,10 +500,20 @@ public class ShopService {
 	 * @return List of items
 	 */
 	public List<Item> getItemsSortedByStock() {
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.sorted(Comparator.comparingInt(Item::getStock).reversed())
-				.collect(Collectors.toList());
+		return getItemsSortedByStock(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * ex 18	Get one page of the list sorted by stock-value high to low, offset 0 and limit k gives the top k.
+	 * @param offset number of items to skip
+	 * @param limit maximum number of items to return
+	 * @return List of items
+	 */
+	public List<Item> getItemsSortedByStock(int offset, int limit) {
+		validateInputOffset(offset);
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItemsSortedByStock(offset, limit);
 
 		validateOutputList(items);
 		return items;
@@ -322,13 +521,11 @@ public class ShopService {
 
 	/**
 	 * ex 19	Get a list of distinct items.
+	 * 			The repository keeps them deduplicated as items are added, so this is a copy of its list.
 	 * @return List of items
 	 */
 	public List<Item> getAllDistinctItems() {
-		List<Item> items = shopRepository.getAllItems()
-				.stream()
-				.distinct()
-				.collect(Collectors.toList());
+		List<Item> items = new ArrayList<>(shopRepository.findDistinctItems());
 
 		validateOutputList(items);
 		return items;
@@ -346,18 +543,28 @@ public class ShopService {
 	 * @return List of items
 	 */
 	public List<Item> getListFromTwoSublistByIndexValues(int a, int b, int x, int y){
-		List<Item> items = Stream.concat(
-				shopRepository.getItemsInRange(a, b).stream(),
-				shopRepository.getItemsInRange(x, y).stream()).collect(Collectors.toList());
+		List<Item> items = shopRepository.findItemsInRanges(a, b, x, y);
 
 		validateOutputList(items);
+		/* Both sublists must have items. Sublist 1 comes first and, when it is empty, no id at all is between a and b,
+		   so it has items exactly when the first item is between a and b. The same goes for sublist 2 and the last item */
+		if (!isBetween(items.get(0), a, b) || !isBetween(items.get(items.size() - 1), x, y)) {
+			throw new NoItemFoundForCriteriaException("No items were found for the given search criteria.");
+		}
 		return items;
 	}
 
+	private static boolean isBetween(Item item, int start, int end) {
+		return item.getItemID() >= start && item.getItemID() <= end;
+	}
+
 
 	/**
 	 * ex 21	Get list of items with three parameters: location, type and producer
 	 * 			Without duplicates
+	 * 			The union is taken on the bitmap selections of the repository, items come in the order they were added.
+	 * 			The three selections are read in one repository call, so a concurrent write can not split them.
+	 * 			distinct() still drops items that are equal but stored twice.
 	 * @param location
 	 * @param type
 	 * @param producer
@@ -365,9 +572,15 @@ public class ShopService {
 	 */
 	public List<Item> getListOfItmesByLocationTypeAndProducer(ItemLocation location, ItemType type, String producer) {
 
-		List<Item> items = Stream.of(shopRepository.getItemsPerLocation(location),
-				shopRepository.getItemsPerType(type), shopRepository.getItemsPerProducer(producer))
-				.flatMap(List::stream)
+		List<ItemSelection> selections = shopRepository.selectLocationTypeAndProducer(location, type, producer.replace(" ", "_"));
+		ItemSelection byLocation = selections.get(0);
+		ItemSelection byType = selections.get(1);
+		ItemSelection byProducer = selections.get(2);
+		validateOutputCount(byLocation.size());
+		validateOutputCount(byType.size());
+		validateOutputCount(byProducer.size());
+
+		List<Item> items = byLocation.or(byType).or(byProducer).toList().stream()
 				.distinct()
 				.collect(Collectors.toList());
 
@@ -380,12 +593,63 @@ public class ShopService {
 	 * @return int value
 	 */
 	public int getTotalStock() {
-		int totalStock = shopRepository.getAllItems()
-				.stream()
-				.mapToInt(Item::getStock)
-				.sum();
+		int totalStock = shopRepository.getTotalStock();
 
 		validateOutputInt(totalStock);
 		return totalStock;
 	}
+
+	/**
+	 * Get one page of all items ordered by id. Start with afterId 0 and pass the id of the last item
+	 * of a page to get the next one, the page never splits items that share an id.
+	 * @param afterId id of the last item of the previous page
+	 * @param limit number of items on the page, more if the last id is shared by several items
+	 * @return List of items
+	 */
+	public List<Item> getItemsAfter(int afterId, int limit) {
+		validateInputInteger(limit);
+
+		List<Item> items = shopRepository.findItemsAfter(afterId, limit);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * Get the items matching a query, see ItemQuery for the criteria, order and limit.
+	 * @param query
+	 * @return List of items
+	 */
+	public List<Item> getItems(ItemQuery query) {
+		List<Item> items = shopRepository.findItems(query);
+
+		validateOutputList(items);
+		return items;
+	}
+
+	/**
+	 * Locations, in declaration order, that have at least one item matching the criteria.
+	 * @param criteria query without a location, one item per location is enough
+	 * @return List of locations
+	 */
+	private List<ItemLocation> locationsWithAny(ItemQuery.Builder criteria) {
+		ShopRepository catalog = shopRepository.snapshot();
+		List<ItemLocation> locations = new ArrayList<>();
+		for (ItemLocation location : ItemLocation.values()) {
+			if (!catalog.findItems(criteria.location(location).limit(1).build()).isEmpty()) {
+				locations.add(location);
+			}
+		}
+		return locations;
+	}
+
+	/**
+	 * All items as a read-only view, validated the same way as ShopRepository.getAllItems() but without the copy.
+	 * @return List of items
+	 */
+	private List<Item> allItems() {
+		List<Item> items = shopRepository.findAllItems();
+		validateOutputList(items);
+		return items;
+	}
 }
@@ -0,0 +1,154 @@
+package lecture.repository;
+
+import com.visma.lecture.common.database.Database;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ColumnarShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ColumnarShopRepositoryTest {
+
+	private List<Item> items;
+	private ColumnarShopRepository shopRepository;
+
+	@Before
+	public void setUp() throws Exception {
+		items = new ShopTestUtil().getItems();
+		shopRepository = new ColumnarShopRepository(items);
+	}
+
+	@Test
+	public void findItemById() throws Exception {
+		assertThat(shopRepository.findItemById(2001), is(items.get(0)));
+		assertThat(shopRepository.findItemById(1), nullValue());
+	}
+
+	@Test
+	public void createUpdateAndDelete() throws Exception {
+		assertEquals(3, shopRepository.selectType(ItemType.ELECTRONICS).size());
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		shopRepository.update(new Item(2001, "Producer10 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 10));
+
+		assertThat(shopRepository.findItemById(3000).getItemLocation(), is(ItemLocation.DRAMMEN));
+		assertThat(shopRepository.findItemById(2001).getStock(), is(10));
+		assertThat(shopRepository.delete(2002), is(true));
+		assertThat(shopRepository.delete(2002), is(false));
+		assertEquals(10, shopRepository.getAllItems().size());
+		assertEquals(1, shopRepository.selectType(ItemType.ELECTRONICS).size());
+		assertEquals(2, shopRepository.selectLocation(ItemLocation.DRAMMEN).or(shopRepository.selectStockBetween(10, 10)).size());
+	}
+
+	@Test
+	public void batchWritesMatchShopRepository() throws Exception {
+		ShopRepository rows = new ShopRepository(new ShopTestUtil().getItems());
+		List<Item> created = Arrays.asList(
+				new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3),
+				new Item(3001, "Producer9 Test10", ItemLocation.OSLO, ItemType.CLOTHING, 4));
+		List<Item> updated = Arrays.asList(
+				new Item(2002, "Producer2 Test2", ItemLocation.HAMAR, ItemType.ELECTRONICS, 9),
+				new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 30));
+		for (ShopRepository repository : Arrays.asList(rows, shopRepository)) {
+			repository.createAll(created);
+			repository.updateAll(updated);
+			repository.deleteAll(Arrays.asList(2001, 2005, 7));
+		}
+
+		assertEquals(rows.findAllItems(), shopRepository.findAllItems());
+		assertEquals(rows.getTotalStock(), shopRepository.getTotalStock());
+		assertEquals(rows.selectLocation(ItemLocation.DRAMMEN).toList(), shopRepository.selectLocation(ItemLocation.DRAMMEN).toList());
+		assertEquals(3, shopRepository.getVersion());
+	}
+
+	@Test
+	public void distinctItemsMatchShopRepository() throws Exception {
+		ShopRepository rows = new ShopRepository(new ShopTestUtil().getItems());
+		assertEquals(rows.findDistinctItems(), shopRepository.findDistinctItems());
+		assertEquals(2, shopRepository.countCopies(items.get(1)));
+		assertEquals(0, shopRepository.countCopies(new Item(2002, "Producer2 Test2", ItemLocation.OSLO, ItemType.ELECTRONICS, 2)));
+	}
+
+	@Test
+	public void aggregatesMatchShopRepository() throws Exception {
+		ShopRepository rows = new ShopRepository(new ArrayList<>(Database.itemTable));
+		ColumnarShopRepository columns = new ColumnarShopRepository(Database.itemTable);
+
+		assertEquals(rows.getTotalStock(), columns.getTotalStock());
+		assertEquals(rows.findItemWithMostInStock(), columns.findItemWithMostInStock());
+		assertEquals(rows.findItemWithLeastInStock(), columns.findItemWithLeastInStock());
+		for (ItemLocation location : ItemLocation.values()) {
+			assertEquals(rows.getAverageStockPerLocation(location), columns.getAverageStockPerLocation(location));
+		}
+	}
+
+	@Test
+	public void shopServiceGivesSameResults() throws Exception {
+		ShopService rows = new ShopService(new ShopRepository(new ShopTestUtil().getItems()));
+		ShopService columns = new ShopService(shopRepository);
+
+		assertEquals(rows.getMapOfAllItemsPerLocation(), columns.getMapOfAllItemsPerLocation());
+		assertEquals(rows.getMapOfAllItemsPerType(), columns.getMapOfAllItemsPerType());
+		assertEquals(rows.getMapOfAllItemsPerProducer(), columns.getMapOfAllItemsPerProducer());
+		assertEquals(rows.getMapOfAllItemsPerStock(), columns.getMapOfAllItemsPerStock());
+		assertEquals(rows.getStringOfAllProducers(), columns.getStringOfAllProducers());
+		assertEquals(rows.getItemsWithNameStartingWith("T"), columns.getItemsWithNameStartingWith("T"));
+		assertEquals(rows.getItemsWithNameStartingWith("T", 3), columns.getItemsWithNameStartingWith("T", 3));
+		assertEquals(rows.getItemsWithProducerStartingWith("producer1"), columns.getItemsWithProducerStartingWith("producer1"));
+		assertEquals(rows.getItemsSortedByProducer(), columns.getItemsSortedByProducer());
+		assertEquals(rows.getItemsSortedByName(), columns.getItemsSortedByName());
+		assertEquals(rows.getItemsSortedByStock(), columns.getItemsSortedByStock());
+		assertEquals(rows.getItemsSortedByStock(2, 3), columns.getItemsSortedByStock(2, 3));
+		assertEquals(rows.getItemsAfter(2001, 2), columns.getItemsAfter(2001, 2));
+		assertEquals(rows.getAllDistinctItems(), columns.getAllDistinctItems());
+		assertEquals(rows.getListOfAllLocationsWithMoreThanXInStock(10), columns.getListOfAllLocationsWithMoreThanXInStock(10));
+		assertEquals(rows.getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, 100, 3),
+				columns.getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, 100, 3));
+		assertEquals(rows.getListFromTwoSublistByIndexValues(2001, 2002, 2006, 2008),
+				columns.getListFromTwoSublistByIndexValues(2001, 2002, 2006, 2008));
+		assertEquals(rows.getListFromTwoSublistByIndexValues(2002, 2008, 2001, 2003),
+				columns.getListFromTwoSublistByIndexValues(2002, 2008, 2001, 2003));
+		assertEquals(rows.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.ELECTRONICS, "Producer2"),
+				columns.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.ELECTRONICS, "Producer2"));
+		assertEquals(rows.getItemsWithNameContaining("es"), columns.getItemsWithNameContaining("es"));
+		assertEquals(rows.searchItems("test1", 1), columns.searchItems("test1", 1));
+		assertEquals(rows.getTotalStock(), columns.getTotalStock());
+	}
+
+	@Test
+	public void batchWithAnInvalidLastItemChangesNothing() throws Exception {
+		List<Item> before = new ArrayList<>(shopRepository.findAllItems());
+		try {
+			shopRepository.createAll(Arrays.asList(
+					new Item(1, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2, "Producer1 Test2", null, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		try {
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2002, "Producer1 Test2", ItemLocation.OSLO, null, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		assertThat(shopRepository.findItemById(1), nullValue());
+		assertEquals(items.get(0), shopRepository.findItemById(2001));
+		assertEquals(0, shopRepository.getVersion());
+	}
+}
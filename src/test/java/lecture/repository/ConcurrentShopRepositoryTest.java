@@ -0,0 +1,189 @@
+package lecture.repository;
+
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ConcurrentShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrentShopRepositoryTest {
+
+	private static final int WRITERS = 8;
+	private static final int ITEMS_PER_WRITER = 200;
+
+	private List<Item> items;
+	private ConcurrentShopRepository shopRepository;
+
+	@Before
+	public void setUp() throws Exception {
+		items = new ShopTestUtil().getItems();
+		shopRepository = new ConcurrentShopRepository(items);
+	}
+
+	@Test
+	public void behavesLikeShopRepository() throws Exception {
+		assertThat(shopRepository.findItemById(2001), is(items.get(0)));
+		assertEquals(6, shopRepository.getItemsPerLocation(ItemLocation.OSLO).size());
+
+		shopRepository.update(new Item(2001, "Producer10 Test1", ItemLocation.HAMAR, ItemType.BEVERAGE, 10));
+		assertThat(shopRepository.findItemById(2001).getStock(), is(10));
+		assertEquals(5, shopRepository.getItemsPerLocation(ItemLocation.OSLO).size());
+
+		assertThat(shopRepository.delete(2001), is(true));
+		assertThat(shopRepository.delete(2001), is(false));
+		assertThat(shopRepository.findItemById(2001), nullValue());
+	}
+
+	@Test
+	public void snapshotIsNotChangedByLaterWrites() throws Exception {
+		ShopRepository snapshot = shopRepository.snapshot();
+		shopRepository.delete(2001);
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3));
+
+		assertThat(snapshot.findItemById(2001), is(items.get(0)));
+		assertThat(snapshot.findItemById(3000), nullValue());
+		assertEquals(6, snapshot.findItemsPerLocation(ItemLocation.OSLO).size());
+		assertEquals(11, snapshot.findAllItems().size());
+	}
+
+	@Test
+	public void emptyAndRejectedBatchesKeepTheSnapshot() throws Exception {
+		ShopRepository snapshot = shopRepository.snapshot();
+		assertThat(shopRepository.createAll(new ArrayList<>()), is(true));
+		assertThat(shopRepository.updateAll(new ArrayList<>()), is(true));
+		try {
+			shopRepository.updateAll(Arrays.asList(new Item(1, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3)));
+			fail();
+		} catch (NoItemFoundForCriteriaException e) {
+			assertSame(snapshot, shopRepository.snapshot());
+		}
+
+		assertSame(snapshot, shopRepository.snapshot());
+		assertEquals(0, shopRepository.getVersion());
+	}
+
+	@Test
+	public void readViewIsNotChangedByLaterWrites() throws Exception {
+		List<Item> before = shopRepository.findAllItems();
+		shopRepository.delete(2001);
+
+		assertEquals(11, before.size());
+		assertEquals(10, shopRepository.findAllItems().size());
+	}
+
+	/**
+	 * Writers create, update and delete their own ids while readers query the repository.
+	 * Every acknowledged write must be visible at the end and no reader may fail.
+	 */
+	@Test
+	public void concurrentWritesAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicBoolean writing = new AtomicBoolean(true);
+		List<Future<?>> writers = new ArrayList<>();
+		List<Future<?>> readers = new ArrayList<>();
+
+		for (int w = 0; w < WRITERS; w++) {
+			final int firstId = 10000 * (w + 1);
+			writers.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < ITEMS_PER_WRITER; i++) {
+					shopRepository.create(new Item(firstId + i, "Writer Item", ItemLocation.DRAMMEN, ItemType.CLOTHING, 0));
+				}
+				for (int i = 0; i < ITEMS_PER_WRITER; i++) {
+					shopRepository.update(new Item(firstId + i, "Writer Item", ItemLocation.DRAMMEN, ItemType.CLOTHING, i + 1));
+				}
+				for (int i = 0; i < ITEMS_PER_WRITER; i += 2) {
+					shopRepository.delete(firstId + i);
+				}
+				return null;
+			}));
+		}
+		for (int r = 0; r < 2; r++) {
+			readers.add(executor.submit(() -> {
+				start.await();
+				while (writing.get()) {
+					List<Item> snapshot = shopRepository.findItemsPerLocation(ItemLocation.DRAMMEN);
+					snapshot.forEach(item -> assertTrue(item.getStock() >= 0));
+					shopRepository.findAllItems().stream().mapToInt(Item::getStock).sum();
+				}
+				return null;
+			}));
+		}
+
+		start.countDown();
+		for (Future<?> writer : writers) {
+			writer.get(60, TimeUnit.SECONDS);
+		}
+		writing.set(false);
+		for (Future<?> reader : readers) {
+			reader.get(60, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		assertEquals(WRITERS * ITEMS_PER_WRITER / 2, shopRepository.findItemsPerLocation(ItemLocation.DRAMMEN).size());
+		assertEquals(11 + WRITERS * ITEMS_PER_WRITER / 2, shopRepository.findAllItems().size());
+		for (int w = 0; w < WRITERS; w++) {
+			for (int i = 0; i < ITEMS_PER_WRITER; i++) {
+				Item item = shopRepository.findItemById(10000 * (w + 1) + i);
+				if (i % 2 == 0) {
+					assertThat(item, nullValue());
+				} else {
+					assertThat(item.getStock(), is(i + 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ex 21 combines a location, a type and a producer selection, which must come from the same snapshot
+	 * even while a writer keeps publishing new ones.
+	 */
+	@Test
+	public void selectionsOfOneQueryCombineDuringWrites() throws Exception {
+		ShopService shopService = new ShopService(shopRepository);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		Future<?> writer = executor.submit(() -> {
+			while (writing.get()) {
+				shopRepository.create(new Item(9000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 1));
+				shopRepository.delete(9000);
+			}
+			return null;
+		});
+
+		try {
+			for (int i = 0; i < 2000; i++) {
+				List<Item> items = shopService.getListOfItmesByLocationTypeAndProducer(ItemLocation.HAMAR, ItemType.BEVERAGE, "Producer1");
+				assertEquals(8, items.size());
+			}
+		} finally {
+			writing.set(false);
+			writer.get(60, TimeUnit.SECONDS);
+			executor.shutdown();
+		}
+	}
+}
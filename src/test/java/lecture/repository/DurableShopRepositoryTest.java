@@ -0,0 +1,230 @@
+package lecture.repository;
+
+import com.visma.lecture.common.database.ItemLog;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.DurableShopRepository;
+import lecture.util.ShopTestUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DurableShopRepositoryTest {
+
+	private static final int ACKNOWLEDGED_BEFORE_KILL = 300;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void mutationsSurviveRestart() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			new ShopTestUtil().getItems().forEach(shopRepository::create);
+			shopRepository.update(new Item(2001, "Producer10 Test1", ItemLocation.HAMAR, ItemType.BEVERAGE, 10));
+			shopRepository.delete(2002);
+		}
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(9, shopRepository.getAllItems().size());
+			assertThat(shopRepository.findItemById(2001).getStock(), is(10));
+			assertThat(shopRepository.findItemById(2002), nullValue());
+			assertEquals(6, shopRepository.getItemsPerLocation(ItemLocation.HAMAR).size());
+		}
+	}
+
+	@Test
+	public void replayedItemsOfOneNameShareItsStrings() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3));
+			shopRepository.create(new Item(3001, "Producer9 Test9", ItemLocation.HAMAR, ItemType.CLOTHING, 4));
+		}
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			Item first = shopRepository.findItemById(3000);
+			Item second = shopRepository.findItemById(3001);
+			assertSame(first.getItemName(), second.getItemName());
+			assertSame(first.getProducer(), second.getProducer());
+			assertSame(first.getProductName(), second.getProductName());
+		}
+	}
+
+	@Test
+	public void rejectedItemsAreNeverLogged() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		char[] longName = new char[70000];
+		Arrays.fill(longName, 'x');
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3));
+			try {
+				shopRepository.create(new Item(3001, "Producer9 " + new String(longName), ItemLocation.OSLO, ItemType.CLOTHING, 3));
+				fail();
+			} catch (IllegalArgumentException expected) {
+			}
+			try {
+				shopRepository.createAll(Arrays.asList(
+						new Item(3002, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3),
+						new Item(3003, "Producer9 Test9", null, ItemType.CLOTHING, 3)));
+				fail();
+			} catch (IllegalArgumentException expected) {
+			}
+			shopRepository.compact();
+		}
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(1, shopRepository.getAllItems().size());
+			assertThat(shopRepository.findItemById(3001), nullValue());
+			assertThat(shopRepository.findItemById(3002), nullValue());
+		}
+	}
+
+	@Test
+	public void compactionKeepsStateAndRemovesOldFiles() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory, 2048)) {
+			for (int id = 1; id <= 500; id++) {
+				shopRepository.create(new Item(id, "Producer" + id + " Test", ItemLocation.OSLO, ItemType.CLOTHING, id));
+			}
+			for (int id = 1; id <= 500; id += 2) {
+				shopRepository.delete(id);
+			}
+		}
+
+		try (Stream<Path> files = Files.list(directory)) {
+			List<String> names = files.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+			assertEquals(names.toString(), 1, names.stream().filter(name -> name.endsWith(".wal")).count());
+			assertEquals(names.toString(), 1, names.stream().filter(name -> name.endsWith(".items")).count());
+		}
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory, 2048)) {
+			assertEquals(250, shopRepository.getAllItems().size());
+			assertThat(shopRepository.findItemById(1), nullValue());
+			assertThat(shopRepository.findItemById(500).getStock(), is(500));
+		}
+	}
+
+	@Test
+	public void tornLogTailIsDiscarded() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			new ShopTestUtil().getItems().forEach(shopRepository::create);
+		}
+		Files.write(directory.resolve("log-0.wal"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(11, shopRepository.getAllItems().size());
+			shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		}
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(12, shopRepository.getAllItems().size());
+		}
+	}
+
+	@Test
+	public void batchesAreReplayedWholeOrNotAtAll() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			shopRepository.createAll(new ShopTestUtil().getItems());
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer10 Test1", ItemLocation.HAMAR, ItemType.BEVERAGE, 10),
+					new Item(2003, "Producer3 Test3", ItemLocation.HAMAR, ItemType.CLOTHING, 30)));
+			shopRepository.deleteAll(Arrays.asList(2002, 2004, 1));
+		}
+		try (ItemLog log = ItemLog.open(directory.resolve("log-0.wal"), entry -> {})) {
+			log.appendBegin();
+			log.appendCreate(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+			log.appendDelete(2001);
+		}
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(8, shopRepository.getAllItems().size());
+			assertThat(shopRepository.findItemById(2001).getStock(), is(10));
+			assertThat(shopRepository.findItemById(2003).getStock(), is(30));
+			assertThat(shopRepository.findItemById(3000), nullValue());
+			shopRepository.create(new Item(3001, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		}
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory)) {
+			assertEquals(9, shopRepository.getAllItems().size());
+			assertThat(shopRepository.findItemById(3001), notNullValue());
+		}
+	}
+
+	/**
+	 * Kills a writing JVM without warning and checks that every create it acknowledged is recovered.
+	 */
+	@Test
+	public void acknowledgedWritesSurviveKill() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process writer = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				Writer.class.getName(), directory.toString())
+				.redirectErrorStream(true)
+				.start();
+
+		List<Integer> acknowledged = new ArrayList<>();
+		try (BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream()))) {
+			String line;
+			while (acknowledged.size() < ACKNOWLEDGED_BEFORE_KILL && (line = out.readLine()) != null) {
+				if (line.startsWith("ACK ")) {
+					acknowledged.add(Integer.parseInt(line.substring(4)));
+				}
+			}
+			writer.destroyForcibly();
+			assertTrue(writer.waitFor(30, TimeUnit.SECONDS));
+		}
+		assertEquals(ACKNOWLEDGED_BEFORE_KILL, acknowledged.size());
+
+		try (DurableShopRepository shopRepository = new DurableShopRepository(directory, 4096)) {
+			for (Integer id : acknowledged) {
+				assertThat("item " + id, shopRepository.findItemById(id), notNullValue());
+			}
+		}
+	}
+
+	/**
+	 * Child process for acknowledgedWritesSurviveKill, creates items from four threads until it is killed.
+	 */
+	public static class Writer {
+
+		public static void main(String[] args) throws Exception {
+			DurableShopRepository shopRepository = new DurableShopRepository(new File(args[0]).toPath(), 4096);
+			AtomicInteger ids = new AtomicInteger();
+			for (int t = 0; t < 4; t++) {
+				new Thread(() -> {
+					while (true) {
+						int id = ids.incrementAndGet();
+						shopRepository.create(new Item(id, "Producer" + id + " Test", ItemLocation.OSLO, ItemType.BEVERAGE, id));
+						synchronized (System.out) {
+							System.out.println("ACK " + id);
+							System.out.flush();
+						}
+					}
+				}).start();
+			}
+		}
+	}
+}
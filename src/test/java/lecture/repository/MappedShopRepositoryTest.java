@@ -0,0 +1,182 @@
+package lecture.repository;
+
+import com.visma.lecture.common.database.Database;
+import com.visma.lecture.common.database.ItemFile;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.MappedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedShopRepositoryTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private List<Item> items;
+	private Path path;
+	private ItemFile file;
+	private MappedShopRepository shopRepository;
+
+	@Before
+	public void setUp() throws Exception {
+		items = new ShopTestUtil().getItems();
+		path = folder.getRoot().toPath().resolve("catalog.items");
+		file = ItemFile.create(path, items);
+		shopRepository = new MappedShopRepository(file);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.close();
+	}
+
+	@Test
+	public void findItemById() throws Exception {
+		assertThat(shopRepository.findItemById(2001), is(items.get(0)));
+		assertThat(shopRepository.findItemById(1), nullValue());
+	}
+
+	@Test
+	public void findItemByIdFollowsWrites() throws Exception {
+		assertThat(shopRepository.findItemById(2002), is(items.get(1)));
+		shopRepository.delete(2002);
+		assertThat(shopRepository.findItemById(2002), nullValue());
+
+		Item created = new Item(2002, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3);
+		shopRepository.create(created);
+		shopRepository.create(new Item(2002, "Producer9 Test10", ItemLocation.OSLO, ItemType.CLOTHING, 4));
+		assertThat(shopRepository.findItemById(2002), is(created));
+
+		Item updated = new Item(2001, "Producer1 Test1", ItemLocation.HAMAR, ItemType.BEVERAGE, 9);
+		shopRepository.updateAll(Arrays.asList(updated));
+		assertThat(shopRepository.findItemById(2001), is(updated));
+	}
+
+	@Test
+	public void batchWritesSurviveReopen() throws Exception {
+		shopRepository.createAll(Arrays.asList(
+				new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3),
+				new Item(3001, "Producer9 Test10", ItemLocation.OSLO, ItemType.CLOTHING, 4)));
+		shopRepository.updateAll(Arrays.asList(new Item(2002, "Producer2 Test2", ItemLocation.HAMAR, ItemType.ELECTRONICS, 9)));
+		shopRepository.deleteAll(Arrays.asList(2001, 3001));
+		shopRepository.flush();
+		file.close();
+
+		file = ItemFile.open(path);
+		MappedShopRepository reopened = new MappedShopRepository(file);
+		assertEquals(10, reopened.getAllItems().size());
+		assertThat(reopened.findItemById(2002).getItemLocation(), is(ItemLocation.HAMAR));
+		assertThat(reopened.findItemById(3001), nullValue());
+		assertEquals(1, reopened.getItemsPerProducer("Producer9").size());
+	}
+
+	@Test
+	public void changesSurviveReopen() throws Exception {
+		assertEquals(3, shopRepository.selectType(ItemType.ELECTRONICS).size());
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		shopRepository.update(new Item(2001, "Producer10 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 10));
+		shopRepository.delete(2002);
+		assertEquals(1, shopRepository.selectType(ItemType.ELECTRONICS).size());
+		assertEquals(1, shopRepository.selectProducer("Producer9").size());
+		shopRepository.flush();
+		file.close();
+
+		file = ItemFile.open(path);
+		MappedShopRepository reopened = new MappedShopRepository(file);
+		assertThat(reopened.findItemById(3000).getItemName(), is("Producer9 Test9"));
+		assertThat(reopened.findItemById(2001).getStock(), is(10));
+		assertThat(reopened.findItemById(2002), nullValue());
+		assertEquals(10, reopened.getAllItems().size());
+	}
+
+	@Test
+	public void getItemsPerProducerMatchesWholeProducer() throws Exception {
+		assertEquals(1, shopRepository.getItemsPerProducer("Producer1").size());
+		assertEquals(2, shopRepository.getItemsPerProducer("Producer11").size());
+	}
+
+	@Test
+	public void shopServiceGivesSameResults() throws Exception {
+		file.close();
+		file = ItemFile.create(path, Database.itemTable);
+		ShopService rows = new ShopService(new ShopRepository(new ArrayList<>(Database.itemTable)));
+		ShopService mapped = new ShopService(new MappedShopRepository(file));
+
+		assertEquals(rows.getMapOfAllItemsPerLocation(), mapped.getMapOfAllItemsPerLocation());
+		assertEquals(rows.getMapOfAllItemsPerProducer(), mapped.getMapOfAllItemsPerProducer());
+		assertEquals(rows.getItemsSortedByName(), mapped.getItemsSortedByName());
+		assertEquals(rows.getItemsWithNameStartingWith("j"), mapped.getItemsWithNameStartingWith("j"));
+		assertEquals(rows.getItemsWithNameStartingWith("j", 2), mapped.getItemsWithNameStartingWith("j", 2));
+		assertEquals(rows.getItemsAfter(0, 10), mapped.getItemsAfter(0, 10));
+		assertEquals(rows.getAverageItemStockForLocationX(ItemLocation.HAMAR),
+				mapped.getAverageItemStockForLocationX(ItemLocation.HAMAR), 0.0);
+		assertEquals(rows.getItemWithMostInStock(), mapped.getItemWithMostInStock());
+		assertEquals(rows.getItemWithLeastInStock(), mapped.getItemWithLeastInStock());
+		assertEquals(rows.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.CLOTHING, "HUGO BOSS"),
+				mapped.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.CLOTHING, "HUGO BOSS"));
+		assertEquals(rows.getItemsWithNameContaining("es"), mapped.getItemsWithNameContaining("es"));
+		assertEquals(rows.searchItems("trousrs", 1), mapped.searchItems("trousrs", 1));
+		assertEquals(rows.getTotalStock(), mapped.getTotalStock());
+	}
+
+	@Test
+	public void batchWithAnInvalidLastItemChangesNothing() throws Exception {
+		List<Item> before = new ArrayList<>(shopRepository.findAllItems());
+		try {
+			shopRepository.createAll(Arrays.asList(
+					new Item(1, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2, "Producer1 Test2", null, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		try {
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2002, "Producer1 Test2", ItemLocation.OSLO, null, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		char[] longName = new char[70000];
+		Arrays.fill(longName, 'x');
+		try {
+			shopRepository.createAll(Arrays.asList(
+					new Item(1, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2, "Producer1 " + new String(longName), ItemLocation.OSLO, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		try {
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2002, "Producer1 " + new String(longName), ItemLocation.OSLO, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		assertThat(shopRepository.findItemById(1), nullValue());
+		assertEquals(items.get(0), shopRepository.findItemById(2001));
+		assertEquals(0, shopRepository.getVersion());
+	}
+}
@@ -0,0 +1,281 @@
+package lecture.repository;
+
+import com.visma.lecture.common.database.Database;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ShardedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ShardedShopRepositoryTest {
+
+	private ForkJoinPool pool;
+	private ShopRepository rows;
+	private List<ShardedShopRepository> sharded;
+
+	@Before
+	public void setUp() throws Exception {
+		pool = new ForkJoinPool(2);
+		rows = new ShopRepository(new ArrayList<>(Database.itemTable));
+		sharded = Arrays.asList(
+				new ShardedShopRepository(Database.itemTable),
+				new ShardedShopRepository(Database.itemTable, pool));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		pool.shutdown();
+	}
+
+	@Test
+	public void snapshotIsNotChangedByLaterWrites() throws Exception {
+		Item first = Database.itemTable.get(0);
+		for (ShardedShopRepository shopRepository : sharded) {
+			ShopRepository snapshot = shopRepository.snapshot();
+			shopRepository.delete(first.getItemID());
+
+			assertThat(snapshot.findItemById(first.getItemID()), is(first));
+			assertEquals(rows.findAllItems().size(), snapshot.findAllItems().size());
+			assertEquals(rows.getTotalStock(), snapshot.getTotalStock());
+		}
+	}
+
+	@Test
+	public void orderedQueriesMatchShopRepository() throws Exception {
+		for (ShardedShopRepository shards : sharded) {
+			assertEquals(rows.findItemsInRange(10, 40), shards.findItemsInRange(10, 40));
+			assertEquals(rows.findItemsInRanges(30, 40, 10, 35, 5, 1), shards.findItemsInRanges(30, 40, 10, 35, 5, 1));
+			assertEquals(rows.findItemsAfter(20, 7), shards.findItemsAfter(20, 7));
+			assertEquals(rows.findItemsSortedByProducer(5, 10), shards.findItemsSortedByProducer(5, 10));
+			assertEquals(names(rows.findItemsSortedByProductName(0, Integer.MAX_VALUE)), names(shards.findItemsSortedByProductName(0, Integer.MAX_VALUE)));
+			assertEquals(ids(rows.findItemsSortedByStock(0, 10)), ids(shards.findItemsSortedByStock(0, 10)));
+			assertEquals(names(rows.findItemsWithProductNameStartingWith("s")), names(shards.findItemsWithProductNameStartingWith("s")));
+			assertEquals(names(rows.findItemsWithProductNameStartingWith("s", 4)), names(shards.findItemsWithProductNameStartingWith("s", 4)));
+			assertEquals(rows.findItemsWithNameContaining("an"), shards.findItemsWithNameContaining("an"));
+			assertEquals(rows.findItemsMatching("hugo bos", 1), shards.findItemsMatching("hugo bos", 1));
+			ItemQuery query = ItemQuery.builder().type(ItemType.CLOTHING).orderBy(ItemQuery.Order.STOCK_HIGH_TO_LOW).limit(5).build();
+			assertEquals(rows.findItems(query), shards.findItems(query));
+		}
+	}
+
+	@Test
+	public void unorderedQueriesHoldTheSameItems() throws Exception {
+		for (ShardedShopRepository shards : sharded) {
+			assertEquals(sorted(rows.findAllItems()), sorted(shards.findAllItems()));
+			assertEquals(sorted(rows.findItemsPerType(ItemType.ELECTRONICS)), sorted(shards.findItemsPerType(ItemType.ELECTRONICS)));
+			assertEquals(sorted(rows.findDistinctItems()), sorted(shards.findDistinctItems()));
+			assertEquals(rows.findProducers(), shards.findProducers());
+			assertEquals(sorted(rows.selectType(ItemType.BEVERAGE).or(rows.selectLocation(ItemLocation.HAMAR)).toList()),
+					sorted(shards.selectType(ItemType.BEVERAGE).or(shards.selectLocation(ItemLocation.HAMAR)).toList()));
+			assertEquals(rows.getTotalStock(), shards.getTotalStock());
+			assertEquals(rows.findItemWithMostInStock().getStock(), shards.findItemWithMostInStock().getStock());
+			assertEquals(rows.findItemWithLeastInStock().getStock(), shards.findItemWithLeastInStock().getStock());
+			for (ItemType type : ItemType.values()) {
+				assertEquals(rows.getAverageStockPerType(type).orElse(-1), shards.getAverageStockPerType(type).orElse(-1), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void locationQueriesReadOneShard() throws Exception {
+		ShardedShopRepository shards = sharded.get(0);
+		for (ItemLocation location : ItemLocation.values()) {
+			assertEquals(rows.findItemsPerLocation(location), shards.findItemsPerLocation(location));
+			assertEquals(rows.getAverageStockPerLocation(location), shards.getAverageStockPerLocation(location));
+			ItemQuery query = ItemQuery.builder().location(location).stockAbove(10).build();
+			assertEquals(rows.findItems(query), shards.findItems(query));
+		}
+	}
+
+	@Test
+	public void updateOfAnUnknownIdFailsLikeShopRepository() throws Exception {
+		Item unknown = new Item(99999, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3);
+		for (ShopRepository repository : Arrays.asList(rows, sharded.get(0))) {
+			try {
+				repository.update(unknown);
+				fail();
+			} catch (NullPointerException e) {
+				assertThat(repository.findItemById(99999), nullValue());
+				assertEquals(0, repository.getVersion());
+			}
+		}
+	}
+
+	@Test
+	public void writesFollowTheLocation() throws Exception {
+		ShardedShopRepository shards = new ShardedShopRepository(new ShopTestUtil().getItems());
+		shards.create(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		shards.update(new Item(2001, "Producer1 Test1", ItemLocation.HAMAR, ItemType.BEVERAGE, 10));
+
+		assertThat(shards.findItemById(2001).getItemLocation(), is(ItemLocation.HAMAR));
+		assertEquals(5, shards.findItemsPerLocation(ItemLocation.OSLO).size());
+		assertEquals(6, shards.findItemsPerLocation(ItemLocation.HAMAR).size());
+		assertEquals(2, shards.countCopies(new Item(2002, "Producer2 Test2", ItemLocation.OSLO, ItemType.ELECTRONICS, 1)));
+
+		assertThat(shards.delete(2002), is(true));
+		assertThat(shards.delete(2002), is(false));
+		assertThat(shards.findItemById(2002), nullValue());
+		assertEquals(3, shards.getVersion());
+	}
+
+	@Test
+	public void batchWritesMatchShopRepository() throws Exception {
+		ShopRepository single = new ShopRepository(new ShopTestUtil().getItems());
+		ShardedShopRepository shards = new ShardedShopRepository(new ShopTestUtil().getItems());
+		List<Item> created = Arrays.asList(
+				new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3),
+				new Item(3001, "Producer9 Test10", ItemLocation.OSLO, ItemType.CLOTHING, 4));
+		List<Item> updated = Arrays.asList(
+				new Item(2002, "Producer2 Test2", ItemLocation.HAMAR, ItemType.ELECTRONICS, 9),
+				new Item(2004, "Producer4 Test4", ItemLocation.HAMAR, ItemType.BEVERAGE, 8),
+				new Item(3000, "Producer9 Test9", ItemLocation.SARPSBORG, ItemType.CLOTHING, 30));
+		for (ShopRepository repository : Arrays.asList(single, shards)) {
+			repository.createAll(created);
+			repository.updateAll(updated);
+			repository.deleteAll(Arrays.asList(2001, 2005, 7));
+		}
+
+		assertEquals(sorted(single.findAllItems()), sorted(shards.findAllItems()));
+		assertEquals(sorted(single.findItemsPerLocation(ItemLocation.HAMAR)), sorted(shards.findItemsPerLocation(ItemLocation.HAMAR)));
+		assertEquals(single.getTotalStock(), shards.getTotalStock());
+	}
+
+	@Test
+	public void writesToDifferentLocationsAreNotLost() throws Exception {
+		ShardedShopRepository shards = new ShardedShopRepository(new ArrayList<>(), pool);
+		ExecutorService executor = Executors.newFixedThreadPool(ItemLocation.values().length);
+		List<Future<?>> writers = new ArrayList<>();
+		for (ItemLocation location : ItemLocation.values()) {
+			int firstId = 1000 * (location.ordinal() + 1);
+			writers.add(executor.submit(() -> {
+				for (int i = 0; i < 100; i++) {
+					shards.create(new Item(firstId + i, "Writer Item", location, ItemType.CLOTHING, 1));
+					shards.findItemsSortedByStock(0, 5);
+				}
+				shards.delete(firstId);
+			}));
+		}
+		for (Future<?> writer : writers) {
+			writer.get();
+		}
+		executor.shutdown();
+
+		assertEquals(99 * ItemLocation.values().length, shards.findAllItems().size());
+		for (ItemLocation location : ItemLocation.values()) {
+			assertEquals(99, shards.findItemsPerLocation(location).size());
+		}
+	}
+
+	/**
+	 * Every write rebuilds the selections for the new version, the three of ex 21 must still come from one of them.
+	 */
+	@Test
+	public void selectionsOfOneQueryCombineDuringWrites() throws Exception {
+		ShardedShopRepository shards = new ShardedShopRepository(new ShopTestUtil().getItems(), pool);
+		ShopService shopService = new ShopService(shards);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		Future<?> writer = executor.submit(() -> {
+			while (writing.get()) {
+				shards.create(new Item(9000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 1));
+				shards.delete(9000);
+			}
+			return null;
+		});
+
+		try {
+			for (int i = 0; i < 2000; i++) {
+				List<Item> items = shopService.getListOfItmesByLocationTypeAndProducer(ItemLocation.HAMAR, ItemType.BEVERAGE, "Producer1");
+				assertEquals(8, items.size());
+			}
+		} finally {
+			writing.set(false);
+			writer.get(60, TimeUnit.SECONDS);
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * The sum and count of a shard are read together, an average during writes is the one before or after a write.
+	 */
+	@Test
+	public void averagePerTypeDuringWritesIsExact() throws Exception {
+		ShardedShopRepository shards = new ShardedShopRepository(new ShopTestUtil().getItems(), pool);
+		Item added = new Item(9000, "Producer9 Test9", ItemLocation.HAMAR, ItemType.CLOTHING, 1000);
+		double before = shards.getAverageStockPerType(ItemType.CLOTHING).getAsDouble();
+		shards.create(added);
+		double after = shards.getAverageStockPerType(ItemType.CLOTHING).getAsDouble();
+		shards.delete(9000);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		Future<?> writer = executor.submit(() -> {
+			while (writing.get()) {
+				shards.create(added);
+				shards.delete(9000);
+			}
+			return null;
+		});
+
+		try {
+			for (int i = 0; i < 20000; i++) {
+				double average = shards.getAverageStockPerType(ItemType.CLOTHING).getAsDouble();
+				assertThat(average == before || average == after, is(true));
+			}
+		} finally {
+			writing.set(false);
+			writer.get(60, TimeUnit.SECONDS);
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shopServiceGivesSameResults() throws Exception {
+		ShopService single = new ShopService(rows);
+		ShopService shards = new ShopService(sharded.get(1));
+
+		assertEquals(single.getMapOfAllItemsPerLocation(), shards.getMapOfAllItemsPerLocation());
+		assertEquals(single.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10),
+				shards.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10));
+		assertEquals(single.getListOfAllLocationsWithLessThanXInStock(10), shards.getListOfAllLocationsWithLessThanXInStock(10));
+		assertEquals(names(single.getItemsSortedByProducer()), names(shards.getItemsSortedByProducer()));
+		assertEquals(names(single.getItemsWithNameStartingWith("S")), names(shards.getItemsWithNameStartingWith("S")));
+		assertEquals(single.getItemsAfter(0, 10), shards.getItemsAfter(0, 10));
+		assertEquals(single.getTotalStock(), shards.getTotalStock());
+	}
+
+	private static List<Item> sorted(List<Item> items) {
+		return items.stream().sorted(ItemQuery.Order.ITEM_ID.comparator()).collect(Collectors.toList());
+	}
+
+	/* Items with the same name can come in another order, from different shards */
+	private static List<String> names(List<Item> items) {
+		return items.stream().map(Item::getProductName).collect(Collectors.toList());
+	}
+
+	private static List<Integer> ids(List<Item> items) {
+		return items.stream().map(Item::getItemID).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,52 @@
+package lecture.repository;
+
+import com.visma.lecture.repository.ColumnarShopRepository;
+import com.visma.lecture.repository.ConcurrentShopRepository;
+import com.visma.lecture.repository.InstrumentedShopRepository;
+import com.visma.lecture.repository.MappedShopRepository;
+import com.visma.lecture.repository.ShardedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.fail;
+
+/**
+ * The backends extend ShopRepository over an empty item list, so a method one of them does not override answers
+ * from that empty list instead of from the backend.
+ */
+public class ShopRepositoryBackendsTest {
+
+	/* Built only on other overridable methods, or like snapshot not reading the base indexes at all */
+	private static final Set<String> DERIVED = new HashSet<>(Arrays.asList(
+			"findItemsInRanges", "selectLocationTypeAndProducer", "getAllItems", "getItemsInRange",
+			"getItemsPerLocation", "getItemsPerType", "getItemsPerProducer", "getVersion", "update", "snapshot"));
+
+	private static final List<Class<? extends ShopRepository>> BACKENDS = Arrays.asList(
+			ColumnarShopRepository.class, MappedShopRepository.class, ShardedShopRepository.class,
+			ConcurrentShopRepository.class, InstrumentedShopRepository.class);
+
+	@Test
+	public void backendsOverrideEveryMethodThatReadsTheBaseIndexes() throws Exception {
+		for (Class<? extends ShopRepository> backend : BACKENDS) {
+			for (Method method : ShopRepository.class.getDeclaredMethods()) {
+				int modifiers = method.getModifiers();
+				if (Modifier.isPrivate(modifiers) || Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+						|| method.isSynthetic() || DERIVED.contains(method.getName())) {
+					continue;
+				}
+				try {
+					backend.getDeclaredMethod(method.getName(), method.getParameterTypes());
+				} catch (NoSuchMethodException e) {
+					fail(backend.getSimpleName() + " answers " + method.getName() + " from the empty base repository");
+				}
+			}
+		}
+	}
+}
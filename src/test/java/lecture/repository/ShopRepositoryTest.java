@@ -1,8 +1,12 @@
 package lecture.repository;
 
+import com.visma.lecture.common.database.Database;
 import com.visma.lecture.common.domain.Item;
 import com.visma.lecture.common.domain.support.ItemLocation;
 import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ItemQuery;
+import com.visma.lecture.repository.ItemSelection;
 import com.visma.lecture.repository.ShopRepository;
 import lecture.util.ShopTestUtil;
 import org.junit.Before;
@@ -10,13 +14,21 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.nullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * @author Leo-Andreas Ervik
@@ -47,6 +59,21 @@ public class ShopRepositoryTest {
 		assertThat(shopRepository.findItemById(1), nullValue());
 	}
 	
+	@Test
+	public void findItemByIdReturnsFirstOfDuplicateIds() throws Exception {
+		assertThat(shopRepository.findItemById(2002) == items.get(1), is(true));
+	}
+
+	@Test
+	public void findItemByIdFollowsCreateAndDelete() throws Exception {
+		shopRepository.delete(2002);
+		assertThat(shopRepository.findItemById(2002), nullValue());
+
+		Item item = new Item(2002, "Producer2 Test3", ItemLocation.HAMAR, ItemType.CLOTHING, 5);
+		shopRepository.create(item);
+		assertThat(shopRepository.findItemById(2002), is(item));
+	}
+	
 	@Test
 	public void add() throws Exception {
 		Integer size = items.size();
@@ -66,6 +93,24 @@ public class ShopRepositoryTest {
 		assertThat(shopRepository.findItemById(2001).getItemName(), is("Producer10 Test1"));
 	}
 
+	@Test
+	public void invalidItemsAreNeverIndexed() throws Exception {
+		try {
+			shopRepository.create(new Item(2, "A C", null, ItemType.CLOTHING, 1));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(shopRepository.findItemById(2), nullValue());
+		}
+		try {
+			shopRepository.update(new Item(2001, "Producer10 Test1", ItemLocation.OSLO, null, 10));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(shopRepository.findItemById(2001), is(items.get(0)));
+		}
+		assertThat(shopRepository.findAllItems().size(), is(11));
+		assertEquals(0, shopRepository.getVersion());
+	}
+
 	@Test
 	public void remove() throws Exception {
 		Boolean remove = shopRepository.delete(2001);
@@ -91,6 +136,41 @@ public class ShopRepositoryTest {
 		assertEquals(4, itemsInRange.size());
 	}
 
+	@Test
+	public void itemsInRangeFollowMutations() throws Exception {
+		shopRepository.delete(2002);
+		shopRepository.create(new Item(2000, "Producer0 Test0", ItemLocation.OSLO, ItemType.BEVERAGE, 1));
+
+		List<Item> itemsInRange = shopRepository.findItemsInRange(2000, 2003);
+		assertEquals(3, itemsInRange.size());
+		assertThat(itemsInRange.get(0).getItemID(), is(2000));
+		assertEquals(0, shopRepository.findItemsInRange(2003, 2000).size());
+	}
+
+	@Test
+	public void itemsInSeveralRanges() throws Exception {
+		List<Item> itemsInRanges = shopRepository.findItemsInRanges(2009, 2010, 2001, 2002);
+		assertEquals(5, itemsInRanges.size());
+		assertThat(itemsInRanges.get(0).getItemID(), is(2009));
+		assertThat(itemsInRanges.get(4).getItemID(), is(2002));
+	}
+
+	@Test
+	public void overlappingAndEmptyRangesKeepTheirOwnItems() throws Exception {
+		ShopRepository shopRepository = new ShopRepository(new ShopTestUtil().getItems());
+
+		assertEquals(Arrays.asList(2005, 2006, 2007, 2008, 2001, 2002, 2002, 2006, 2007, 2002, 2002, 2003),
+				ids(shopRepository.findItemsInRanges(2005, 2008, 2001, 2002, 2010, 2009, 2006, 2007, 2002, 2003, 3000, 3005)));
+	}
+
+	@Test
+	public void adjacentRangesKeepTheirOwnItems() throws Exception {
+		ShopRepository shopRepository = new ShopRepository(new ShopTestUtil().getItems());
+
+		assertEquals(Arrays.asList(2004, 2005, 2006, 2001, 2002, 2002, 2003, 2007, 2008, 2009, 2010),
+				ids(shopRepository.findItemsInRanges(2004, 2006, 2001, 2003, 2007, Integer.MAX_VALUE, Integer.MIN_VALUE, 2000)));
+	}
+
 	//Oppg 4
 	@Test
 	public void getItemsPerLocation() throws Exception {
@@ -115,4 +195,425 @@ public class ShopRepositoryTest {
 		List<Item> itemsFromHugoBoss = shopRepository.getItemsPerProducer(producer);
 		assertEquals(1, itemsFromHugoBoss.size());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void getItemsPerProducerMatchesWholeProducer() throws Exception {
+		assertEquals(1, shopRepository.getItemsPerProducer("Producer1").size());
+		assertEquals(2, shopRepository.getItemsPerProducer("Producer11").size());
+	}
+
+	@Test
+	public void getItemsPerLocationAndType() throws Exception {
+		List<Item> items = shopRepository.findItemsPerLocationAndType(ItemLocation.HAMAR, ItemType.CLOTHING);
+		assertEquals(3, items.size());
+		assertEquals(0, shopRepository.findItemsPerLocationAndType(ItemLocation.DRAMMEN, ItemType.CLOTHING).size());
+	}
+
+	@Test
+	public void locationAndTypeIndexesFollowUpdate() throws Exception {
+		shopRepository.update(new Item(2004, "Producer4 Test4", ItemLocation.DRAMMEN, ItemType.CLOTHING, 1));
+
+		assertEquals(4, shopRepository.getItemsPerLocation(ItemLocation.HAMAR).size());
+		assertEquals(1, shopRepository.getItemsPerLocation(ItemLocation.DRAMMEN).size());
+		assertEquals(3, shopRepository.getItemsPerType(ItemType.BEVERAGE).size());
+		assertEquals(1, shopRepository.findItemsPerLocationAndType(ItemLocation.DRAMMEN, ItemType.CLOTHING).size());
+	}
+
+	@Test
+	public void stockAggregatesFollowMutations() throws Exception {
+		assertEquals(307, shopRepository.getTotalStock());
+		assertThat(shopRepository.findItemWithMostInStock().getItemID(), is(2007));
+		assertThat(shopRepository.findItemWithLeastInStock().getItemID(), is(2001));
+		assertEquals(24.0, shopRepository.getAverageStockPerLocation(ItemLocation.OSLO).getAsDouble(), 0.0);
+		assertEquals(35.5, shopRepository.getAverageStockPerType(ItemType.BEVERAGE).getAsDouble(), 0.0);
+
+		shopRepository.delete(2007);
+		shopRepository.delete(2001);
+		shopRepository.update(new Item(2010, "Producer13 Xest17", ItemLocation.OSLO, ItemType.BEVERAGE, 0));
+
+		assertEquals(136, shopRepository.getTotalStock());
+		assertThat(shopRepository.findItemWithMostInStock().getItemID(), is(2009));
+		assertThat(shopRepository.findItemWithLeastInStock().getItemID(), is(2010));
+		assertEquals(73.0 / 5, shopRepository.getAverageStockPerLocation(ItemLocation.OSLO).getAsDouble(), 0.0);
+		assertFalse(shopRepository.getAverageStockPerLocation(ItemLocation.DRAMMEN).isPresent());
+	}
+
+	@Test
+	public void stockAggregatesCountAnInstanceCreatedTwice() throws Exception {
+		ShopRepository repository = new ShopRepository(new ArrayList<>());
+		Item twice = new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 10);
+		repository.create(twice);
+		repository.create(twice);
+		repository.create(new Item(3001, "Producer9 Test10", ItemLocation.DRAMMEN, ItemType.CLOTHING, 10));
+		assertEquals(30, repository.getTotalStock());
+
+		repository.delete(3000);
+
+		assertEquals(10, repository.getTotalStock());
+		assertEquals(10.0, repository.getAverageStockPerLocation(ItemLocation.DRAMMEN).getAsDouble(), 0.0);
+		assertEquals(10.0, repository.getAverageStockPerType(ItemType.CLOTHING).getAsDouble(), 0.0);
+		assertThat(repository.findItemWithMostInStock().getItemID(), is(3001));
+	}
+
+	@Test
+	public void selectionsDropEveryRowOfADeletedInstance() throws Exception {
+		ShopRepository repository = new ShopRepository(new ArrayList<>());
+		repository.selectAll();
+		Item twice = new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 10);
+		Item other = new Item(3001, "Producer9 Test10", ItemLocation.DRAMMEN, ItemType.CLOTHING, 10);
+		repository.create(twice);
+		repository.create(other);
+		repository.create(twice);
+		assertEquals(Arrays.asList(twice, other, twice), repository.selectLocation(ItemLocation.DRAMMEN).toList());
+
+		repository.delete(3000);
+
+		assertEquals(Arrays.asList(other), repository.selectAll().toList());
+		assertEquals(Arrays.asList(other), repository.selectLocation(ItemLocation.DRAMMEN).toList());
+		assertEquals(Arrays.asList(other), repository.selectProducer("Producer9").toList());
+		assertEquals(Arrays.asList(other), repository.selectStockBetween(10, 10).toList());
+	}
+
+	@Test
+	public void distinctItemsFollowMutations() throws Exception {
+		Item duplicate = new Item(2002, "Producer2 Test2", ItemLocation.OSLO, ItemType.ELECTRONICS, 1);
+		assertEquals(10, shopRepository.findDistinctItems().size());
+		assertEquals(shopRepository.findAllItems().stream().distinct().collect(Collectors.toList()), shopRepository.findDistinctItems());
+		assertEquals(2, shopRepository.countCopies(duplicate));
+		assertEquals(1, shopRepository.countCopies(shopRepository.findItemById(2001)));
+
+		shopRepository.create(new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 1));
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.DRAMMEN, ItemType.CLOTHING, 3));
+		assertEquals(2, shopRepository.countCopies(shopRepository.findItemById(2001)));
+		assertEquals(Arrays.asList(2001, 2002, 2003), ids(shopRepository.findDistinctItems().subList(0, 3)));
+		assertEquals(Integer.valueOf(3000), shopRepository.findDistinctItems().get(10).getItemID());
+
+		shopRepository.delete(2002);
+		shopRepository.update(new Item(2003, "Producer3 Test3", ItemLocation.HAMAR, ItemType.CLOTHING, 5));
+		shopRepository.deleteAll(Arrays.asList(2001, 2004));
+		assertEquals(0, shopRepository.countCopies(duplicate));
+		assertEquals(shopRepository.findAllItems().stream().distinct().collect(Collectors.toList()), shopRepository.findDistinctItems());
+		assertEquals(Arrays.asList(2005, 2006, 2007, 2008, 2010, 2009, 3000, 2003), ids(shopRepository.findDistinctItems()));
+	}
+
+	@Test
+	public void findItemsSortedByStockPagesFromHighest() throws Exception {
+		assertEquals(Arrays.asList(2007, 2010, 2009), ids(shopRepository.findItemsSortedByStock(0, 3)));
+		assertEquals(Arrays.asList(2009, 2008), ids(shopRepository.findItemsSortedByStock(2, 2)));
+		assertEquals(11, shopRepository.findItemsSortedByStock(0, Integer.MAX_VALUE).size());
+		assertEquals(0, shopRepository.findItemsSortedByStock(11, 5).size());
+	}
+
+	@Test
+	public void sortedListingsMatchSortingAllItems() throws Exception {
+		shopRepository.delete(2007);
+		shopRepository.update(new Item(2003, "Producer0 Test3", ItemLocation.OSLO, ItemType.CLOTHING, 80));
+		shopRepository.create(new Item(2011, "Producer2 Aest2", ItemLocation.HAMAR, ItemType.BEVERAGE, 1));
+
+		assertEquals(sorted(Comparator.comparing(Item::getItemName)), shopRepository.findItemsSortedByProducer(0, 20));
+		assertEquals(sorted(Comparator.comparing(Item::getProductName)), shopRepository.findItemsSortedByProductName(0, 20));
+		assertEquals(sorted(Comparator.comparingInt(Item::getStock).reversed()), shopRepository.findItemsSortedByStock(0, 20));
+		assertEquals(sorted(Comparator.comparing(Item::getProductName)).subList(3, 7), shopRepository.findItemsSortedByProductName(3, 4));
+	}
+
+	@Test
+	public void findItemsAfterWalksIdsWithoutSplittingDuplicates() throws Exception {
+		assertEquals(Arrays.asList(2001, 2002, 2002), ids(shopRepository.findItemsAfter(0, 2)));
+		assertEquals(Arrays.asList(2003, 2004), ids(shopRepository.findItemsAfter(2002, 2)));
+		assertEquals(Arrays.asList(2009, 2010), ids(shopRepository.findItemsAfter(2008, 5)));
+		assertEquals(0, shopRepository.findItemsAfter(2010, 5).size());
+	}
+
+	@Test
+	public void prefixIndexesFollowMutations() throws Exception {
+		assertEquals(Arrays.asList(2010), ids(shopRepository.findItemsWithProductNameStartingWith("x")));
+		assertEquals(11, shopRepository.findItemsWithProductNameStartingWith("").size());
+
+		shopRepository.update(new Item(2010, "Producer13 Test17", ItemLocation.OSLO, ItemType.BEVERAGE, 70));
+		shopRepository.create(new Item(2011, "Acme Xylophone", ItemLocation.HAMAR, ItemType.ELECTRONICS, 3));
+
+		assertEquals(Arrays.asList(2011), ids(shopRepository.findItemsWithProductNameStartingWith("XY")));
+		assertEquals(Arrays.asList(2010), ids(shopRepository.findItemsWithProductNameStartingWith("test17")));
+		assertEquals(Arrays.asList(2011), ids(shopRepository.findItemsWithProducerStartingWith("ac")));
+		assertEquals(0, shopRepository.findItemsWithProducerStartingWith("Producer3 ").size());
+	}
+
+	@Test
+	public void findItemsWithNameContainingRanksEarlierMatchesFirst() throws Exception {
+		assertEquals(Arrays.asList(2009), ids(shopRepository.findItemsWithNameContaining("R12 t")));
+		assertEquals(Arrays.asList(2001, 2007, 2008, 2009), ids(shopRepository.findItemsWithNameContaining("test1")));
+		assertEquals(Arrays.asList(2010), ids(shopRepository.findItemsWithNameContaining("xe")));
+		assertEquals(11, shopRepository.findItemsWithNameContaining("producer").size());
+		assertEquals(0, shopRepository.findItemsWithNameContaining("producer1 test12").size());
+	}
+
+	@Test
+	public void findItemsWithNameTokenMatchesWholeWords() throws Exception {
+		assertEquals(Arrays.asList(2007, 2008), ids(shopRepository.findItemsWithNameToken("PRODUCER11")));
+		assertEquals(0, shopRepository.findItemsWithNameToken("Producer").size());
+	}
+
+	@Test
+	public void findItemsMatchingAllowsTypos() throws Exception {
+		assertEquals(Arrays.asList(2001), ids(shopRepository.findItemsMatching("tes1", 1)));
+		assertEquals(Arrays.asList(2008), ids(shopRepository.findItemsMatching("producr11 tst15", 1)));
+		assertEquals(0, shopRepository.findItemsMatching("tset1", 1).size());
+		assertEquals(2001, (int) shopRepository.findItemsMatching("tset1", 2).get(0).getItemID());
+	}
+
+	@Test
+	public void nameIndexFollowsMutations() throws Exception {
+		assertEquals(Arrays.asList(2010), ids(shopRepository.findItemsWithNameContaining("xest")));
+
+		shopRepository.update(new Item(2010, "Producer13 Zebra", ItemLocation.OSLO, ItemType.BEVERAGE, 70));
+		shopRepository.delete(2001);
+
+		assertEquals(Arrays.asList(2010), ids(shopRepository.findItemsMatching("zebar", 2)));
+		assertEquals(0, shopRepository.findItemsWithNameContaining("xest").size());
+		assertEquals(0, shopRepository.findItemsMatching("test1", 0).size());
+		assertEquals(Arrays.asList(2002, 2002), ids(shopRepository.findItemsMatching("test1", 1).subList(0, 2)));
+	}
+
+	@Test
+	public void findItemsCombinesCriteria() throws Exception {
+		ItemQuery query = ItemQuery.builder()
+				.location(ItemLocation.HAMAR)
+				.type(ItemType.CLOTHING)
+				.stockAbove(1)
+				.orderBy(ItemQuery.Order.STOCK_LOW_TO_HIGH)
+				.build();
+		assertEquals(Arrays.asList(2008, 2007), ids(shopRepository.findItems(query)));
+
+		assertEquals(Arrays.asList(2001, 2009), ids(shopRepository.findItems(ItemQuery.builder()
+				.idRange(2000, 2009).namePrefix("TEST1").location(ItemLocation.OSLO).build())));
+		assertEquals(Arrays.asList(2002, 2002), ids(shopRepository.findItems(ItemQuery.builder()
+				.producer("Producer2").limit(5).build())));
+		assertEquals(0, shopRepository.findItems(ItemQuery.builder().stockRange(10, 5).build()).size());
+	}
+
+	@Test
+	public void findItemsMatchesScanForEveryPlan() throws Exception {
+		ShopRepository repository = new ShopRepository(new ArrayList<>(Database.itemTable));
+		repository.delete(10);
+		repository.update(new Item(20, "HUGO_BOSS JACKET", ItemLocation.OSLO, ItemType.CLOTHING, 500));
+		repository.create(new Item(1000, "VOLT TROUSERS", ItemLocation.HAMAR, ItemType.CLOTHING, 500));
+
+		Random random = new Random(7);
+		List<String> producers = new ArrayList<>(repository.findProducers());
+		ItemQuery.Order[] orders = ItemQuery.Order.values();
+		for (int i = 0; i < 2000; i++) {
+			ItemQuery.Builder builder = ItemQuery.builder();
+			if (random.nextInt(3) == 0) {
+				int start = random.nextInt(60);
+				builder.idRange(start, start + random.nextInt(30));
+			}
+			if (random.nextInt(3) == 0) {
+				builder.location(ItemLocation.values()[random.nextInt(ItemLocation.values().length)]);
+			}
+			if (random.nextInt(3) == 0) {
+				builder.type(ItemType.values()[random.nextInt(ItemType.values().length)]);
+			}
+			if (random.nextInt(4) == 0) {
+				builder.producer(producers.get(random.nextInt(producers.size())));
+			}
+			if (random.nextInt(4) == 0) {
+				builder.namePrefix(random.nextBoolean() ? "J" : "tro");
+			}
+			if (random.nextInt(3) == 0) {
+				int min = random.nextInt(10000);
+				builder.stockRange(min, min + random.nextInt(15000));
+			}
+			if (random.nextBoolean()) {
+				builder.limit(random.nextInt(10));
+			}
+			ItemQuery query = builder.orderBy(orders[random.nextInt(orders.length)]).build();
+
+			List<Item> scanned = repository.findAllItems().stream()
+					.filter(query::matches)
+					.sorted(query.getOrder().comparator())
+					.limit(query.getLimit())
+					.collect(Collectors.toList());
+			assertEquals(scanned, repository.findItems(query));
+		}
+	}
+
+	@Test
+	public void selectionsCombineCriteria() throws Exception {
+		ItemSelection hamarClothing = shopRepository.selectLocation(ItemLocation.HAMAR)
+				.and(shopRepository.selectType(ItemType.CLOTHING));
+		assertEquals(Arrays.asList(2006, 2007, 2008), ids(hamarClothing.toList()));
+		assertEquals(Arrays.asList(2007, 2008), ids(hamarClothing.andNot(shopRepository.selectStockBetween(0, 50)).toList()));
+		assertEquals(Arrays.asList(2002, 2002, 2008, 2010, 2009),
+				ids(shopRepository.selectProducer("Producer2")
+						.or(shopRepository.selectStockBetween(60, 70)).toList()));
+		assertEquals(11, shopRepository.selectAll().size());
+		assertTrue(shopRepository.selectProducer("Nobody").isEmpty());
+	}
+
+	@Test
+	public void selectionsFollowMutations() throws Exception {
+		ItemSelection before = shopRepository.selectLocation(ItemLocation.OSLO);
+		shopRepository.delete(2001);
+		shopRepository.create(new Item(3000, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5));
+
+		assertEquals(Arrays.asList(2002, 2002, 2003, 2010, 2009), ids(before.toList()));
+		assertEquals(Arrays.asList(2002, 2002, 2003, 2010, 2009, 3000),
+				ids(shopRepository.selectLocation(ItemLocation.OSLO).toList()));
+		assertEquals(Arrays.asList(3000), ids(shopRepository.selectStockBetween(2, 10).toList()));
+		assertEquals(Arrays.asList(2002, 2002, 2003, 2010, 2009), ids(before.and(shopRepository.selectAll()).toList()));
+	}
+
+	@Test
+	public void selectionsMatchScanAcrossContainersAndCompaction() throws Exception {
+		List<Item> generated = new ArrayList<>();
+		Random random = new Random(17);
+		for (int id = 0; id < 70000; id++) {
+			generated.add(new Item(id, "P" + random.nextInt(3) + " Name" + id,
+					ItemLocation.values()[random.nextInt(ItemLocation.values().length)],
+					ItemType.values()[random.nextInt(ItemType.values().length)], random.nextInt(200)));
+		}
+		ShopRepository repository = new ShopRepository(new ArrayList<>(generated));
+		assertSelectionsMatchScan(repository, random);
+
+		ShopRepository small = new ShopRepository(new ArrayList<>(generated.subList(0, 6000)));
+		ItemSelection old = small.selectAll();
+		for (int id = 0; id < 6000; id += 3) {
+			small.delete(id);
+			small.delete(id + 1);
+		}
+		assertEquals(2000, small.selectAll().size());
+		assertSelectionsMatchScan(small, random);
+
+		expected.expect(IllegalArgumentException.class);
+		old.and(small.selectAll());
+	}
+
+	@Test
+	public void batchWritesMatchSingleWrites() throws Exception {
+		ShopRepository batched = new ShopRepository(new ArrayList<>(Database.itemTable));
+		ShopRepository single = new ShopRepository(new ArrayList<>(Database.itemTable));
+		batched.findItemsWithNameContaining("tro");
+		single.findItemsWithNameContaining("tro");
+		batched.selectAll();
+
+		List<Item> created = new ArrayList<>();
+		for (int id = 1000; id < 1100; id++) {
+			created.add(new Item(id, "VOLT TROUSERS" + id, ItemLocation.values()[id % ItemLocation.values().length], ItemType.CLOTHING, id));
+		}
+		List<Item> updated = Arrays.asList(
+				new Item(20, "HUGO_BOSS JACKET", ItemLocation.OSLO, ItemType.CLOTHING, 500),
+				new Item(1050, "VOLT SHIRT", ItemLocation.HAMAR, ItemType.CLOTHING, 3),
+				new Item(20, "HUGO_BOSS COAT", ItemLocation.DRAMMEN, ItemType.CLOTHING, 7));
+		List<Integer> deleted = Arrays.asList(1, 2, 3, 1010, 1011, 1011, 5000);
+
+		batched.createAll(created);
+		batched.updateAll(updated);
+		assertTrue(batched.deleteAll(deleted));
+		created.forEach(single::create);
+		updated.forEach(single::update);
+		deleted.forEach(single::delete);
+
+		assertEquals(single.findAllItems(), batched.findAllItems());
+		assertEquals(3, batched.getVersion());
+		for (ItemLocation location : ItemLocation.values()) {
+			assertEquals(single.findItemsPerLocation(location), batched.findItemsPerLocation(location));
+			assertEquals(single.getAverageStockPerLocation(location), batched.getAverageStockPerLocation(location));
+			assertEquals(single.selectLocation(location).toList(), batched.selectLocation(location).toList());
+		}
+		for (ItemType type : ItemType.values()) {
+			assertEquals(single.findItemsPerLocationAndType(ItemLocation.OSLO, type),
+					batched.findItemsPerLocationAndType(ItemLocation.OSLO, type));
+			assertEquals(single.getAverageStockPerType(type), batched.getAverageStockPerType(type));
+		}
+		for (String producer : single.findProducers()) {
+			assertEquals(single.findItemsPerProducer(producer), batched.findItemsPerProducer(producer));
+		}
+		assertEquals(single.findProducers(), batched.findProducers());
+		for (ItemQuery.Order order : ItemQuery.Order.values()) {
+			ItemQuery query = ItemQuery.builder().orderBy(order).build();
+			assertEquals(single.findItems(query), batched.findItems(query));
+		}
+		assertEquals(single.findItemsSortedByStock(0, 20), batched.findItemsSortedByStock(0, 20));
+		assertEquals(single.findItemsWithProductNameStartingWith("tro"), batched.findItemsWithProductNameStartingWith("tro"));
+		assertEquals(single.findItemsWithNameContaining("tro"), batched.findItemsWithNameContaining("tro"));
+		assertEquals(single.findItemsInRange(0, 1100), batched.findItemsInRange(0, 1100));
+		assertEquals(single.getTotalStock(), batched.getTotalStock());
+		assertEquals(single.findItemWithMostInStock(), batched.findItemWithMostInStock());
+		assertEquals(single.findItemWithLeastInStock(), batched.findItemWithLeastInStock());
+	}
+
+	@Test
+	public void batchWritesAreAllOrNothing() throws Exception {
+		List<Item> before = new ArrayList<>(shopRepository.findAllItems());
+		try {
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(1, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (NoItemFoundForCriteriaException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		try {
+			shopRepository.createAll(Arrays.asList(new Item(3000, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5), null));
+			fail();
+		} catch (NoItemFoundForCriteriaException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		assertFalse(shopRepository.deleteAll(Arrays.asList(1, 2)));
+		assertEquals(0, shopRepository.getVersion());
+		assertEquals(1, shopRepository.getItemsInRange(2000, 2001).size());
+	}
+
+	@Test
+	public void batchWithAnInvalidLastItemChangesNothing() throws Exception {
+		List<Item> before = new ArrayList<>(shopRepository.findAllItems());
+		try {
+			shopRepository.createAll(Arrays.asList(
+					new Item(1, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2, "Producer1 Test2", null, ItemType.BEVERAGE, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		try {
+			shopRepository.updateAll(Arrays.asList(
+					new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 5),
+					new Item(2002, "Producer1 Test2", ItemLocation.OSLO, null, 5)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(before, shopRepository.findAllItems());
+		}
+		assertThat(shopRepository.findItemById(1), nullValue());
+		assertEquals(items.get(0), shopRepository.findItemById(2001));
+		assertEquals(0, shopRepository.getVersion());
+	}
+
+	private static void assertSelectionsMatchScan(ShopRepository repository, Random random) {
+		for (ItemLocation location : ItemLocation.values()) {
+			for (ItemType type : ItemType.values()) {
+				int min = random.nextInt(200);
+				int max = min + random.nextInt(100);
+				String producer = "P" + random.nextInt(3);
+				ItemSelection selection = repository.selectLocation(location)
+						.or(repository.selectType(type))
+						.and(repository.selectStockBetween(min, max))
+						.andNot(repository.selectProducer(producer));
+				List<Item> scanned = repository.findAllItems().stream()
+						.filter(item -> item.getItemLocation() == location || item.getItemType() == type)
+						.filter(item -> item.getStock() >= min && item.getStock() <= max)
+						.filter(item -> !item.getProducer().equals(producer))
+						.collect(Collectors.toList());
+				assertEquals(scanned, selection.toList());
+				assertEquals(scanned.size(), selection.size());
+			}
+		}
+	}
+
+	private List<Item> sorted(Comparator<Item> order) {
+		return shopRepository.findAllItems().stream().sorted(order).collect(Collectors.toList());
+	}
+
+	private static List<Integer> ids(List<Item> items) {
+		return items.stream().map(Item::getItemID).collect(Collectors.toList());
+	}
+}
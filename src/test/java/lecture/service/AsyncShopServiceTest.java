@@ -0,0 +1,130 @@
+package lecture.service;
+
+import com.visma.lecture.common.database.Database;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.AsyncShopService;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncShopServiceTest {
+
+	/* Tasks wait here until the test runs them, so queries stay in flight */
+	private final List<Runnable> tasks = new ArrayList<>();
+
+	private ShopRepository shopRepository;
+	private ShopService shopService;
+	private AsyncShopService held;
+
+	@Before
+	public void setUp() throws Exception {
+		shopRepository = new ShopRepository(new ShopTestUtil().getItems());
+		shopService = new ShopService(shopRepository);
+		held = new AsyncShopService(shopService, tasks::add);
+	}
+
+	@Test
+	public void resultsMatchShopService() throws Exception {
+		ShopService sync = new ShopService(new ShopRepository(new ArrayList<>(Database.itemTable)));
+		AsyncShopService async = new AsyncShopService(sync);
+
+		assertEquals(sync.getMapOfAllItemsPerLocation(), async.getMapOfAllItemsPerLocation().get());
+		assertEquals(sync.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10),
+				async.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10).get());
+		assertEquals(sync.getItemsSortedByStock(0, 5), async.getItemsSortedByStock(0, 5).get());
+		assertEquals(sync.searchItems("hugo bos", 1), async.searchItems("hugo bos", 1).get());
+		assertEquals(Integer.valueOf(sync.getTotalStock()), async.getTotalStock().get());
+	}
+
+	@Test
+	public void averagePerLocationHasEveryLocation() throws Exception {
+		Map<ItemLocation, OptionalDouble> averages = new AsyncShopService(shopService).findAverageItemStockPerLocation().get();
+
+		assertEquals(ItemLocation.values().length, averages.size());
+		assertEquals(shopService.getAverageItemStockForLocationX(ItemLocation.OSLO), averages.get(ItemLocation.OSLO).getAsDouble(), 0.0);
+		assertFalse(averages.get(ItemLocation.DRAMMEN).isPresent());
+	}
+
+	@Test
+	public void servicesWithoutAnExecutorShareOne() throws Exception {
+		for (int i = 0; i < 3 * Runtime.getRuntime().availableProcessors(); i++) {
+			assertEquals(Integer.valueOf(shopService.getTotalStock()), new AsyncShopService(shopService).getTotalStock().get());
+		}
+
+		long threads = Thread.getAllStackTraces().keySet().stream()
+				.filter(thread -> thread.getName().startsWith("shop-async-"))
+				.count();
+		assertTrue(threads <= Runtime.getRuntime().availableProcessors());
+	}
+
+	@Test
+	public void identicalQueriesInFlightRunOnce() throws Exception {
+		CompletableFuture<Integer> first = held.getTotalStock();
+		CompletableFuture<Integer> second = held.getTotalStock();
+		held.getItemsSortedByStock(0, 3);
+		held.getItemsSortedByStock(0, 4);
+
+		assertEquals(3, tasks.size());
+		assertEquals(3, held.getInFlightCount());
+		tasks.forEach(Runnable::run);
+
+		assertEquals(Integer.valueOf(307), first.get());
+		assertEquals(Integer.valueOf(307), second.get());
+		assertEquals(0, held.getInFlightCount());
+		held.getTotalStock();
+		assertEquals(4, tasks.size());
+	}
+
+	@Test
+	public void writesStartANewQuery() throws Exception {
+		CompletableFuture<Integer> before = held.getTotalStock();
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3));
+		CompletableFuture<Integer> after = held.getTotalStock();
+		tasks.forEach(Runnable::run);
+
+		assertEquals(2, tasks.size());
+		assertEquals(Integer.valueOf(310), after.get());
+		assertTrue(before.isDone());
+	}
+
+	@Test
+	public void cancellingOneCallerLeavesTheOthers() throws Exception {
+		CompletableFuture<Integer> first = held.getTotalStock();
+		CompletableFuture<Integer> second = held.getTotalStock();
+		first.cancel(true);
+		tasks.forEach(Runnable::run);
+
+		assertTrue(first.isCancelled());
+		assertEquals(Integer.valueOf(307), second.get());
+	}
+
+	@Test
+	public void failuresCompleteTheFutureExceptionally() throws Exception {
+		CompletableFuture<Item> missing = held.getItemById(1000);
+		tasks.forEach(Runnable::run);
+		try {
+			missing.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NoItemFoundForCriteriaException);
+		}
+		assertEquals(0, held.getInFlightCount());
+	}
+}
@@ -0,0 +1,143 @@
+package lecture.service;
+
+import com.visma.lecture.common.database.Database;
+import com.visma.lecture.common.domain.Item;
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ColumnarShopRepository;
+import com.visma.lecture.repository.ConcurrentShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.CacheStats;
+import com.visma.lecture.service.CachingShopService;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class CachingShopServiceTest {
+
+	@Rule
+	public ExpectedException expected = ExpectedException.none();
+
+	private ShopRepository shopRepository;
+	private CachingShopService shopService;
+
+	@Before
+	public void setUp() throws Exception {
+		shopRepository = new ShopRepository(new ShopTestUtil().getItems());
+		shopService = new CachingShopService(shopRepository);
+	}
+
+	@Test
+	public void repeatedQueriesAreHits() throws Exception {
+		assertSame(shopService.getMapOfAllItemsPerLocation(), shopService.getMapOfAllItemsPerLocation());
+		assertEquals(shopService.getStringOfAllProducers(), shopService.getStringOfAllProducers());
+		shopService.getItemsSortedByStock();
+		shopService.getItemsSortedByStock(0, Integer.MAX_VALUE);
+
+		CacheStats stats = shopService.getCacheStats();
+		assertEquals(3, stats.getHits());
+		assertEquals(3, stats.getMisses());
+		assertEquals(3, stats.getSize());
+		assertEquals(0.5, stats.getHitRate(), 0.0);
+	}
+
+	@Test
+	public void resultsMatchShopService() throws Exception {
+		ShopService uncached = new ShopService(new ShopRepository(new ArrayList<>(Database.itemTable)));
+		CachingShopService cached = new CachingShopService(new ShopRepository(new ArrayList<>(Database.itemTable)));
+
+		for (int round = 0; round < 2; round++) {
+			assertEquals(uncached.getMapOfAllItemsPerLocation(), cached.getMapOfAllItemsPerLocation());
+			assertEquals(uncached.getMapOfAllItemsPerType(), cached.getMapOfAllItemsPerType());
+			assertEquals(uncached.getMapOfAllItemsPerProducer(), cached.getMapOfAllItemsPerProducer());
+			assertEquals(uncached.getMapOfAllItemsPerStock(), cached.getMapOfAllItemsPerStock());
+			assertEquals(uncached.getListOfAllLocationsWithMoreThanXInStock(10), cached.getListOfAllLocationsWithMoreThanXInStock(10));
+			assertEquals(uncached.getItemsInLocationXStockHigherThan(ItemLocation.OSLO, 100),
+					cached.getItemsInLocationXStockHigherThan(ItemLocation.OSLO, 100));
+			assertEquals(uncached.getAverageItemStockForLocationX(ItemLocation.OSLO),
+					cached.getAverageItemStockForLocationX(ItemLocation.OSLO), 0.0);
+			assertEquals(uncached.getItemsSortedByProducer(), cached.getItemsSortedByProducer());
+			assertEquals(uncached.getItemsSortedByName(2, 5), cached.getItemsSortedByName(2, 5));
+			assertEquals(uncached.getAllDistinctItems(), cached.getAllDistinctItems());
+			assertEquals(uncached.getTotalStock(), cached.getTotalStock());
+		}
+	}
+
+	@Test
+	public void writesInvalidateEveryResult() throws Exception {
+		assertEquals(1, shopService.getMapOfAllItemsPerType().get(ItemType.CLOTHING).stream()
+				.filter(item -> item.getItemLocation() == ItemLocation.OSLO).count());
+		int total = shopService.getTotalStock();
+
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.OSLO, ItemType.CLOTHING, 3));
+		assertEquals(2, shopService.getMapOfAllItemsPerType().get(ItemType.CLOTHING).stream()
+				.filter(item -> item.getItemLocation() == ItemLocation.OSLO).count());
+		assertEquals(total + 3, shopService.getTotalStock());
+
+		shopRepository.delete(3000);
+		assertEquals(total, shopService.getTotalStock());
+		assertEquals(4, shopService.getCacheStats().getInvalidations());
+		assertEquals(0, shopService.getCacheStats().getHits());
+	}
+
+	@Test
+	public void writesThroughEveryBackendInvalidate() throws Exception {
+		List<ShopRepository> repositories = Arrays.asList(
+				new ConcurrentShopRepository(new ShopTestUtil().getItems()),
+				new ColumnarShopRepository(new ShopTestUtil().getItems()));
+		for (ShopRepository repository : repositories) {
+			CachingShopService service = new CachingShopService(repository);
+			assertEquals(10, service.getAllDistinctItems().size());
+			repository.update(new Item(2001, "Producer1 Test1", ItemLocation.OSLO, ItemType.BEVERAGE, 1000));
+			assertEquals(Integer.valueOf(2001), service.getItemWithMostInStock().getItemID());
+			repository.delete(2001);
+			assertEquals(9, service.getAllDistinctItems().size());
+		}
+	}
+
+	@Test
+	public void leastRecentlyUsedResultIsEvicted() throws Exception {
+		CachingShopService small = new CachingShopService(shopRepository, 2);
+		small.getTotalStock();
+		small.getStringOfAllProducers();
+		small.getTotalStock();
+		small.getAllDistinctItems();
+		small.getTotalStock();
+		small.getStringOfAllProducers();
+
+		CacheStats stats = small.getCacheStats();
+		assertEquals(2, stats.getHits());
+		assertEquals(2, stats.getEvictions());
+		assertEquals(2, stats.getSize());
+	}
+
+	@Test
+	public void failedQueriesAreNotCached() throws Exception {
+		try {
+			shopService.getListOfAllLocationsWithMoreThanXInStock(1000);
+			fail();
+		} catch (NoItemFoundForCriteriaException e) {
+			assertEquals(0, shopService.getCacheStats().getSize());
+		}
+		shopRepository.create(new Item(3000, "Producer9 Test9", ItemLocation.HAMAR, ItemType.CLOTHING, 2000));
+		assertEquals(Arrays.asList(ItemLocation.HAMAR), shopService.getListOfAllLocationsWithMoreThanXInStock(1000));
+	}
+
+	@Test
+	public void cachedResultsAreReadOnly() throws Exception {
+		expected.expect(UnsupportedOperationException.class);
+		shopService.getMapOfAllItemsPerLocation().get(ItemLocation.OSLO).clear();
+	}
+}
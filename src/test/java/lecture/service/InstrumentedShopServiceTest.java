@@ -0,0 +1,157 @@
+package lecture.service;
+
+import com.visma.lecture.common.domain.support.ItemLocation;
+import com.visma.lecture.common.exception.InvalidCriteriaException;
+import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.metrics.MethodSnapshot;
+import com.visma.lecture.metrics.ShopMetrics;
+import com.visma.lecture.repository.InstrumentedShopRepository;
+import com.visma.lecture.repository.ShopRepository;
+import com.visma.lecture.service.InstrumentedShopService;
+import com.visma.lecture.service.ShopService;
+import lecture.util.ShopTestUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstrumentedShopServiceTest {
+
+	private ShopMetrics metrics;
+	private ShopService plain;
+	private InstrumentedShopService shopService;
+
+	@Before
+	public void setUp() throws Exception {
+		metrics = new ShopMetrics();
+		ShopRepository shopRepository = new InstrumentedShopRepository(new ShopRepository(new ShopTestUtil().getItems()), metrics);
+		plain = new ShopService(new ShopRepository(new ShopTestUtil().getItems()));
+		shopService = new InstrumentedShopService(new ShopService(shopRepository), metrics);
+	}
+
+	@Test
+	public void resultsMatchShopService() {
+		assertEquals(plain.getMapOfAllItemsPerLocation(), shopService.getMapOfAllItemsPerLocation());
+		assertEquals(plain.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10),
+				shopService.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10));
+		assertEquals(plain.getItemsSortedByStock(0, 5), shopService.getItemsSortedByStock(0, 5));
+		assertEquals(plain.getTotalStock(), shopService.getTotalStock());
+	}
+
+	@Test
+	public void countsCallsAndErrorsByType() {
+		shopService.getItemById(2001);
+		try {
+			shopService.getItemById(1000);
+			fail();
+		} catch (NoItemFoundForCriteriaException expected) {
+		}
+		try {
+			shopService.getItemById(-1);
+			fail();
+		} catch (InvalidCriteriaException expected) {
+		}
+
+		MethodSnapshot getItemById = metrics.getMethod("ShopService.getItemById").get();
+		assertEquals(3, getItemById.getCalls());
+		assertEquals(1, getItemById.getNoItemFound());
+		assertEquals(1, getItemById.getInvalidCriteria());
+		assertEquals(0, getItemById.getOtherErrors());
+		assertEquals(1, getItemById.getRowsReturned());
+		assertEquals(2, metrics.getMethod("ShopRepository.findItemById").get().getCalls());
+	}
+
+	@Test
+	public void overloadsAreRecordedApart() {
+		shopService.getItemsSortedByStock();
+		shopService.getItemsSortedByStock(0, 5);
+
+		assertEquals(11, metrics.getMethod("ShopService.getItemsSortedByStock/0").get().getRowsReturned());
+		assertEquals(5, metrics.getMethod("ShopService.getItemsSortedByStock/2").get().getRowsReturned());
+	}
+
+	@Test
+	public void rowsReadAreTheRowsTheRepositoryReturned() {
+		List<?> items = shopService.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10);
+
+		long repositoryRows = 0;
+		for (MethodSnapshot method : metrics.getMethods()) {
+			if (method.getMethod().startsWith("ShopRepository.")) {
+				assertEquals(method.getRowsRead(), method.getRowsReturned());
+				repositoryRows += method.getRowsReturned();
+			}
+		}
+		MethodSnapshot service = metrics.getMethod("ShopService.getItemsInLocationXWithMoreThanYInStock").get();
+		assertEquals(items.size(), service.getRowsReturned());
+		assertEquals(repositoryRows, service.getRowsRead());
+	}
+
+	@Test
+	public void percentilesAreOrdered() {
+		for (int i = 0; i < 1000; i++) {
+			shopService.getTotalStock();
+		}
+
+		MethodSnapshot total = metrics.getMethod("ShopService.getTotalStock").get();
+		assertEquals(1000, total.getCalls());
+		assertTrue(total.getP50Nanos() > 0);
+		assertTrue(total.getP50Nanos() <= total.getP90Nanos());
+		assertTrue(total.getP90Nanos() <= total.getP99Nanos());
+		assertTrue(total.getP99Nanos() <= total.getP999Nanos());
+		assertTrue(total.getP999Nanos() <= total.getMaxNanos());
+		assertTrue(total.getMeanNanos() <= total.getMaxNanos());
+	}
+
+	@Test
+	public void recordsNothingWhileDisabled() {
+		metrics.setEnabled(false);
+		shopService.getTotalStock();
+		shopService.findItemById(1000);
+
+		assertTrue(metrics.getMethods().isEmpty());
+
+		metrics.setEnabled(true);
+		shopService.getTotalStock();
+		assertEquals(1, metrics.getMethod("ShopService.getTotalStock").get().getCalls());
+
+		metrics.reset();
+		assertFalse(metrics.getMethod("ShopService.getTotalStock").isPresent());
+	}
+
+	@Test
+	public void reporterReceivesEveryMethod() {
+		shopService.getTotalStock();
+		List<MethodSnapshot> reported = new ArrayList<>();
+
+		metrics.report(reported::addAll);
+
+		assertEquals(metrics.getMethods().size(), reported.size());
+		assertTrue(reported.stream().anyMatch(method -> method.getMethod().equals("ShopService.getTotalStock")));
+	}
+
+	@Test
+	public void isReadableOverJmx() throws Exception {
+		shopService.getTotalStock();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = metrics.registerMBean("test");
+		try {
+			assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+			CompositeData[] methods = (CompositeData[]) server.getAttribute(name, "Methods");
+			assertEquals(metrics.getMethods().size(), methods.length);
+			assertTrue(((Long) methods[0].get("calls")) > 0);
+		} finally {
+			metrics.unregisterMBean("test");
+		}
+		assertFalse(server.isRegistered(name));
+	}
+}
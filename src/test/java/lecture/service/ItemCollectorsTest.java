@@ -0,0 +1,41 @@
+package lecture.service;
+
+import com.visma.lecture.service.ItemCollectors;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemCollectorsTest {
+
+	@Test
+	public void topMatchesSortAndLimit() throws Exception {
+		List<Integer> numbers = IntStream.range(0, 1000).map(i -> (i * 7919) % 101).boxed().collect(Collectors.toList());
+		Comparator<Integer> order = Comparator.reverseOrder();
+
+		assertEquals(numbers.stream().sorted(order).limit(10).collect(Collectors.toList()),
+				numbers.stream().collect(ItemCollectors.top(order, 10)));
+		assertEquals(numbers.stream().sorted(order).limit(10).collect(Collectors.toList()),
+				numbers.parallelStream().collect(ItemCollectors.top(order, 10)));
+	}
+
+	@Test
+	public void topKeepsEncounterOrderOfTies() throws Exception {
+		List<String> words = Arrays.asList("bb", "a", "cc", "d", "ee", "f");
+		Comparator<String> byLength = Comparator.comparingInt(String::length);
+
+		assertEquals(Arrays.asList("a", "d", "f", "bb"), words.stream().collect(ItemCollectors.top(byLength, 4)));
+		assertEquals(Arrays.asList("a", "d", "f", "bb"), words.parallelStream().collect(ItemCollectors.top(byLength, 4)));
+	}
+
+	@Test
+	public void topOfZeroIsEmpty() throws Exception {
+		assertEquals(Collections.emptyList(), Arrays.asList(1, 2, 3).stream().collect(ItemCollectors.top(Comparator.naturalOrder(), 0)));
+	}
+}
@@ -4,7 +4,9 @@ import com.visma.lecture.common.database.Database;
 import com.visma.lecture.common.domain.Item;
 import com.visma.lecture.common.domain.support.ItemLocation;
 import com.visma.lecture.common.domain.support.ItemType;
+import com.visma.lecture.common.exception.InvalidCriteriaException;
 import com.visma.lecture.common.exception.NoItemFoundForCriteriaException;
+import com.visma.lecture.repository.ItemQuery;
 import com.visma.lecture.repository.ShopRepository;
 import com.visma.lecture.service.ShopService;
 import lecture.util.ShopTestUtil;
@@ -13,8 +15,11 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 
@@ -75,6 +80,18 @@ public class ShopServiceTest {
 		assertTrue(map.containsKey("Producer2"));
 	}
 
+	/**
+	 * ex 3		Test that an item name without a space is grouped under the whole name.
+	 * @throws Exception
+	 */
+	@Test
+	public void getMapPerProducerWithNameWithoutSpace() throws Exception {
+		shopRepository.create(new Item(3000, "GENERIC", ItemLocation.OSLO, ItemType.BEVERAGE, 5));
+		Map<String, List<Item>> map = shopService.getMapOfAllItemsPerProducer();
+		assertEquals(1, map.get("GENERIC").size());
+		assertTrue(shopService.getStringOfAllProducers().endsWith("XGENERIC"));
+	}
+
 	/**
 	 * ex 4		Test if the Map returns expected size per key.
 	 * @throws Exception
@@ -106,6 +123,58 @@ public class ShopServiceTest {
 		shopService.getItemById(1000);
 	}
 
+	/**
+	 * ex 5 	find gives the same item as get, and empty instead of an exception
+	 * @throws Exception
+	 */
+	@Test
+	public void findAnItemById() throws Exception {
+		assertEquals(shopService.getItemById(2001), shopService.findItemById(2001).get());
+		assertFalse(shopService.findItemById(1000).isPresent());
+	}
+
+	/**
+	 * ex 7-14 	Test that the find methods give empty results where the get methods throw
+	 * @throws Exception
+	 */
+	@Test
+	public void findWithoutResultsIsEmpty() throws Exception {
+		assertEquals(shopService.getListOfAllLocationsWithMoreThanXInStock(10), shopService.findLocationsWithMoreThanXInStock(10));
+		assertTrue(shopService.findLocationsWithMoreThanXInStock(1000).isEmpty());
+		assertTrue(shopService.findLocationsWithLessThanXInStock(1).isEmpty());
+		assertTrue(shopService.findItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 1000).isEmpty());
+		assertTrue(shopService.findItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, 1).isEmpty());
+		assertFalse(shopService.findAverageItemStockForLocationX(ItemLocation.DRAMMEN).isPresent());
+		assertEquals(shopService.getItemWithMostInStock(), shopService.findItemWithMostInStock().get());
+
+		ShopService emptyShopService = new ShopService(new ShopRepository(new ArrayList<>()));
+		assertFalse(emptyShopService.findItemWithMostInStock().isPresent());
+		assertFalse(emptyShopService.findItemWithLeastInStock().isPresent());
+	}
+
+	/**
+	 * ex 12 	an empty location throws like the other get methods
+	 * @throws Exception
+	 */
+	@Test
+	public void getAverageItemStockForEmptyLocation() throws Exception {
+		expected.expect(NoItemFoundForCriteriaException.class);
+		shopService.getAverageItemStockForLocationX(ItemLocation.DRAMMEN);
+	}
+
+	@Test
+	public void findStillRejectsInvalidInput() throws Exception {
+		expected.expect(InvalidCriteriaException.class);
+		shopService.findItemsInLocationXWithMoreThanYInStock(null, 10);
+	}
+
+	@Test
+	public void exceptionsCanSkipTheStackTrace() throws Exception {
+		assertEquals(0, new NoItemFoundForCriteriaException("No items", false).getStackTrace().length);
+		assertEquals(0, new InvalidCriteriaException("Invalid", false).getStackTrace().length);
+		assertTrue(new NoItemFoundForCriteriaException("No items").getStackTrace().length > 0);
+	}
+
 	/**
 	 * ex 6 	Create a string of all producers separated by: X
 	 * @throws Exception
@@ -263,6 +332,128 @@ public class ShopServiceTest {
 		assertTrue(items.get(0).getItemID() == 2007);
 	}
 
+	@Test
+	public void getTopItemsByStock() throws Exception {
+		List<Item> items = shopService.getItemsSortedByStock(1, 2);
+		assertEquals(2, items.size());
+		assertTrue(items.get(0).getItemID() == 2010);
+		assertTrue(items.get(1).getItemID() == 2009);
+	}
+
+	/**
+	 * ex 9 and ex 10 list items by itemID. In OSLO 2010 was added before 2009, so this is not the order they were added in.
+	 */
+	@Test
+	public void itemsInLocationAreOrderedByItemId() throws Exception {
+		assertEquals(Arrays.asList(2009, 2010), ids(shopService.getItemsInLocationXWithMoreThanYInStock(ItemLocation.OSLO, 10)));
+		assertEquals(Arrays.asList(2001, 2002, 2002, 2003, 2009, 2010),
+				ids(shopService.getItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, 100)));
+	}
+
+	@Test
+	public void getMostStockedItemsInLocationWithMoreThanYInStock() throws Exception {
+		List<Item> items = shopService.getMostStockedItemsInLocationXWithMoreThanYInStock(ItemLocation.HAMAR, 1, 1);
+		assertEquals(1, items.size());
+		assertTrue(items.get(0).getItemID() == 2007);
+	}
+
+	@Test
+	public void getLeastStockedItemsInLocationWithLessThanYInStock() throws Exception {
+		List<Item> items = shopService.getLeastStockedItemsInLocationXWithLessThanYInStock(ItemLocation.OSLO, 100, 3);
+		assertEquals(3, items.size());
+		assertTrue(items.get(0).getItemID() == 2001);
+		assertTrue(items.get(2).getItemID() == 2002);
+	}
+
+	@Test
+	public void getItemsWithNameStartingWithIsOrderedByName() throws Exception {
+		List<Item> items = shopService.getItemsWithNameStartingWith("tEsT1");
+		assertEquals(4, items.size());
+		assertTrue(items.get(0).getItemID() == 2001);
+		assertTrue(items.get(3).getItemID() == 2009);
+	}
+
+	@Test
+	public void getItemsWithProducerStartingWith() throws Exception {
+		assertEquals(5, shopService.getItemsWithProducerStartingWith("producer1").size());
+		assertEquals(2, shopService.getItemsWithProducerStartingWith("PRODUCER11").size());
+		assertEquals(2, bigShopService.getItemsWithProducerStartingWith("hugo b").size());
+	}
+
+	@Test
+	public void getItemsWithNameContaining() throws Exception {
+		assertEquals(4, bigShopService.getItemsWithNameContaining("trouser").size());
+		assertEquals(6, bigShopService.getItemsWithNameContaining("_&_").size());
+	}
+
+	@Test
+	public void searchItemsWithTypo() throws Exception {
+		List<Item> items = bigShopService.searchItems("h&m trousrs", 1);
+		assertTrue(items.get(0).getItemID() == 37);
+	}
+
+	@Test
+	public void searchItemsRejectsTooManyEdits() throws Exception {
+		expected.expect(InvalidCriteriaException.class);
+		expected.expectMessage("Edit distance must be between 0 and 2.");
+		shopService.searchItems("test", 3);
+	}
+
+	@Test
+	public void getFirstItemsWithNameStartingWith() throws Exception {
+		List<Item> items = shopService.getItemsWithNameStartingWith("test1", 2);
+		assertEquals(2, items.size());
+		assertTrue(items.get(0).getItemID() == 2001);
+		assertTrue(items.get(1).getItemID() == 2007);
+	}
+
+	@Test
+	public void firstItemsWithNameStartingWithFollowTheOrderOfAllOfThem() throws Exception {
+		ShopService shopService = new ShopService(new ShopRepository(new ArrayList<>(Arrays.asList(
+				new Item(3001, "Producer1 Bz", ItemLocation.OSLO, ItemType.CLOTHING, 1),
+				new Item(3002, "Producer1 beta", ItemLocation.OSLO, ItemType.CLOTHING, 1),
+				new Item(3003, "Producer1 bA", ItemLocation.OSLO, ItemType.CLOTHING, 1)))));
+
+		assertEquals(Arrays.asList(3003, 3002, 3001), ids(shopService.getItemsWithNameStartingWith("b")));
+		assertEquals(Arrays.asList(3003, 3002), ids(shopService.getItemsWithNameStartingWith("b", 2)));
+	}
+
+	@Test
+	public void getItemsAfterPagesThroughAllItems() throws Exception {
+		List<Item> first = shopService.getItemsAfter(0, 4);
+		List<Item> second = shopService.getItemsAfter(first.get(first.size() - 1).getItemID(), 4);
+		List<Item> third = shopService.getItemsAfter(second.get(second.size() - 1).getItemID(), 4);
+		assertEquals(4, first.size());
+		assertEquals(4, second.size());
+		assertEquals(3, third.size());
+		assertTrue(third.get(2).getItemID() == 2010);
+	}
+
+	@Test
+	public void getItemsByQuery() throws Exception {
+		List<Item> items = shopService.getItems(ItemQuery.builder()
+				.type(ItemType.BEVERAGE)
+				.stockRange(50, 100)
+				.orderBy(ItemQuery.Order.PRODUCT_NAME)
+				.build());
+		assertEquals(2, items.size());
+		assertTrue(items.get(0).getItemID() == 2009);
+	}
+
+	@Test
+	public void getItemsSortedByStockRejectsANegativeOffset() throws Exception {
+		expected.expect(InvalidCriteriaException.class);
+		expected.expectMessage("Offset must not be negative.");
+		shopService.getItemsSortedByStock(-1, 5);
+	}
+
+	@Test
+	public void getItemsSortedByStockPagePastTheEnd() throws Exception {
+		expected.expect(NoItemFoundForCriteriaException.class);
+		expected.expectMessage("No items were found for the given search criteria.");
+		shopService.getItemsSortedByStock(11, 5);
+	}
+
 
 	/**
 	 * ex 19	Getting a list of all items but without duplicates,
@@ -288,6 +479,18 @@ public class ShopServiceTest {
 		assertEquals(6, items.size());
 	}
 
+	@Test
+	public void getListOfTwoOverlappingSubLists() throws Exception {
+		List<Item> items = shopService.getListFromTwoSublistByIndexValues(2001, 2003, 2002, 2002);
+		assertEquals(Arrays.asList(2001, 2002, 2002, 2003, 2002, 2002), ids(items));
+	}
+
+	@Test
+	public void getListOfTwoSubListsWithAnEmptyOne() throws Exception {
+		expected.expect(NoItemFoundForCriteriaException.class);
+		shopService.getListFromTwoSublistByIndexValues(2001, 2002, 3000, 3005);
+	}
+
 
 	/**
 	 * ex 21	Get list of items with three sub-lists containing all
@@ -304,6 +507,13 @@ public class ShopServiceTest {
 		assertEquals(6, items.size());
 	}
 
+	@Test
+	public void getListOfItemsByLocationTypeAndUnknownProducer() throws Exception {
+		expected.expect(NoItemFoundForCriteriaException.class);
+		expected.expectMessage("No items were found for one of the given search criteria.");
+		shopService.getListOfItmesByLocationTypeAndProducer(ItemLocation.OSLO, ItemType.ELECTRONICS, "Producer99");
+	}
+
 
 	/**
 	 * ex 22	Get total stock for all items.
@@ -315,4 +525,8 @@ public class ShopServiceTest {
 		int totalStock = shopService.getTotalStock();
 		assertEquals(307, totalStock);
 	}
-}
\ No newline at end of file
+
+	private static List<Integer> ids(List<Item> items) {
+		return items.stream().map(Item::getItemID).collect(Collectors.toList());
+	}
+}